@@ -17,6 +17,7 @@
 
 package net.uncontended.precipice;
 
+
 public class CompletionContext<Result extends Failable, V> implements Completable<Result, V>, ExecutionContext,
         ResultView<Result, V> {
 
@@ -17,6 +17,8 @@
 
 package net.uncontended.precipice;
 
+import net.uncontended.precipice.timeout.Deadline;
+
 /**
  * A context representing the execution of a task that was allowed by a guard rail.
  */
@@ -35,4 +37,14 @@ public interface ExecutionContext {
      * @return number of permits
      */
     long permitCount();
+
+    /**
+     * Returns the absolute nano time deadline that applies to this task, or {@link Deadline#NONE} if there
+     * is no deadline. Implementations that do not track deadlines can rely on the default.
+     *
+     * @return the deadline nano time
+     */
+    default long deadlineNanos() {
+        return Deadline.NONE;
+    }
 }
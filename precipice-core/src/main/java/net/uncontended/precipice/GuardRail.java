@@ -23,11 +23,13 @@ import net.uncontended.precipice.time.Clock;
 
 import java.util.ArrayList;
 import java.util.Map;
+import java.util.concurrent.Executor;
 
 public class GuardRail<Result extends Enum<Result> & Failable, Rejected extends Enum<Rejected>> {
 
     private final String name;
     private final Clock clock;
+    private final Executor callbackExecutor;
     private final PrecipiceFunction<Result, ExecutionContext> releaseFunction;
     private final WritableCounts<Result> resultCounts;
     private final WritableCounts<Rejected> rejectedCounts;
@@ -39,6 +41,7 @@ public class GuardRail<Result extends Enum<Result> & Failable, Rejected extends
     private GuardRail(GuardRailProperties<Result, Rejected> properties) {
         name = properties.name;
         clock = properties.clock;
+        callbackExecutor = properties.callbackExecutor;
         resultCounts = properties.resultCounts;
         rejectedCounts = properties.rejectedCounts;
         resultLatency = properties.resultLatency;
@@ -154,7 +157,11 @@ public class GuardRail<Result extends Enum<Result> & Failable, Rejected extends
         resultLatency.write(result, number, nanoTime - startNanos, nanoTime);
 
         for (BackPressure<Rejected> backPressure : backPressureList) {
-            backPressure.releasePermit(number, result, nanoTime);
+            if (backPressure instanceof TimedBackPressure) {
+                ((TimedBackPressure<Rejected>) backPressure).releasePermit(number, result, startNanos, nanoTime);
+            } else {
+                backPressure.releasePermit(number, result, nanoTime);
+            }
         }
     }
 
@@ -222,6 +229,16 @@ public class GuardRail<Result extends Enum<Result> & Failable, Rejected extends
         return clock;
     }
 
+    /**
+     * Return the executor that user callbacks of promises created for the GuardRail will run on. A null
+     * executor means that callbacks run inline on the completing thread.
+     *
+     * @return the callback executor
+     */
+    public Executor getCallbackExecutor() {
+        return callbackExecutor;
+    }
+
     public static <Result extends Enum<Result> & Failable, Rejected extends Enum<Rejected>> GuardRail<Result, Rejected>
     create(GuardRailProperties<Result, Rejected> properties) {
         GuardRail<Result, Rejected> guardRail = new GuardRail<>(properties);
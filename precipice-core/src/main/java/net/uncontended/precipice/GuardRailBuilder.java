@@ -22,6 +22,8 @@ import net.uncontended.precipice.metrics.latency.NoOpLatency;
 import net.uncontended.precipice.metrics.latency.WritableLatency;
 import net.uncontended.precipice.time.Clock;
 
+import java.util.concurrent.Executor;
+
 public class GuardRailBuilder<Result extends Enum<Result> & Failable, Rejected extends Enum<Rejected>> {
 
     private final GuardRailProperties<Result, Rejected> properties = new GuardRailProperties<>();
@@ -62,6 +64,11 @@ public class GuardRailBuilder<Result extends Enum<Result> & Failable, Rejected e
         return this;
     }
 
+    public GuardRailBuilder<Result, Rejected> callbackExecutor(Executor callbackExecutor) {
+        properties.callbackExecutor = callbackExecutor;
+        return this;
+    }
+
     public GuardRail<Result, Rejected> build() {
         if (properties.name == null) {
             throw new IllegalArgumentException("Name is required.");
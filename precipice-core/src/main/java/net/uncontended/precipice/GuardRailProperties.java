@@ -24,6 +24,7 @@ import net.uncontended.precipice.time.SystemTime;
 
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.Executor;
 
 public class GuardRailProperties<Result extends Enum<Result> & Failable, Rejected extends Enum<Rejected>> {
 
@@ -33,4 +34,5 @@ public class GuardRailProperties<Result extends Enum<Result> & Failable, Rejecte
     public WritableLatency<Result> resultLatency;
     public Map<String, BackPressure<Rejected>> backPressureMap = new LinkedHashMap<>();
     public Clock clock = SystemTime.getInstance();
+    public Executor callbackExecutor;
 }
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2016 Timothy Brooks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.uncontended.precipice;
+
+/**
+ * A {@link BackPressure} mechanism that also wants the start time of an execution when
+ * permits are released with a result. The GuardRail calls
+ * {@link #releasePermit(long, Failable, long, long)} instead of
+ * {@link #releasePermit(long, Failable, long)} for these mechanisms, which allows the
+ * latency of each execution to inform the back pressure without a separate metrics lookup.
+ *
+ * @param <Rejected> the type for rejection reasons
+ */
+public interface TimedBackPressure<Rejected extends Enum<Rejected>> extends BackPressure<Rejected> {
+
+    /**
+     * Releases permits while considering the result and latency of the execution.
+     *
+     * @param number     of permits to release
+     * @param result     of the task execution
+     * @param startNanos of the task execution
+     * @param nanoTime   currentInterval nanosecond time
+     */
+    void releasePermit(long number, Failable result, long startNanos, long nanoTime);
+}
@@ -0,0 +1,288 @@
+/*
+ * Copyright 2016 Timothy Brooks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.uncontended.precipice.circuit;
+
+import net.uncontended.precipice.BackPressure;
+import net.uncontended.precipice.Failable;
+import net.uncontended.precipice.GuardRail;
+import net.uncontended.precipice.metrics.IntervalIterator;
+import net.uncontended.precipice.metrics.counts.PartitionedCount;
+import net.uncontended.precipice.metrics.counts.RollingCounts;
+import net.uncontended.precipice.metrics.counts.WritableCounts;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saves and restores the state of {@link DefaultCircuitBreaker} instances and the {@link RollingCounts}
+ * backing them so that a restarted process does not come up with closed circuits and empty windows.
+ * <p>
+ * {@code nanoTime} values are not comparable across processes. So all times are written as ages
+ * relative to the moment the snapshot was taken. On restore those ages are extended by the wall clock
+ * time elapsed since the snapshot and rebased onto the new process's clock. Intervals are matched to
+ * guard rails by name.
+ */
+public final class BreakerSnapshots {
+
+    private static final int MAGIC = 0x50425331;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 4 + 4 + 8 + 4;
+
+    private BreakerSnapshots() {
+    }
+
+    public static int save(File file, Collection<? extends GuardRail<?, ?>> guardRails) throws IOException {
+        List<Entry> entries = new ArrayList<>(guardRails.size());
+        long millis = 0;
+        for (GuardRail<?, ?> guardRail : guardRails) {
+            millis = guardRail.getClock().currentTimeMillis();
+            Entry entry = snapshot(guardRail);
+            if (entry != null) {
+                entries.add(entry);
+            }
+        }
+
+        int size = HEADER_BYTES;
+        for (Entry entry : entries) {
+            size += entry.size();
+        }
+
+        File tmp = new File(file.getPath() + ".tmp");
+        try (RandomAccessFile raf = new RandomAccessFile(tmp, "rw")) {
+            raf.setLength(size);
+            MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.putInt(MAGIC);
+            buffer.putInt(VERSION);
+            buffer.putLong(millis);
+            buffer.putInt(entries.size());
+            for (Entry entry : entries) {
+                entry.write(buffer);
+            }
+            buffer.force();
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        return entries.size();
+    }
+
+    /**
+     * Restores the snapshot into the guard rails with matching names. Restored counts are added to the rolling
+     * intervals, so every matching guard rail must not have recorded any results yet. Nothing is restored if
+     * one of them has.
+     *
+     * @param file       the snapshot file
+     * @param guardRails the guard rails to restore
+     * @return the number of guard rails restored
+     * @throws IOException           if the snapshot cannot be read
+     * @throws IllegalStateException if a matching guard rail has already recorded results
+     */
+    public static int restore(File file, Collection<? extends GuardRail<?, ?>> guardRails) throws IOException {
+        if (!file.exists()) {
+            return 0;
+        }
+
+        Map<String, Entry> entries = new HashMap<>();
+        long savedMillis;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IOException("Unrecognized breaker snapshot: " + file);
+            }
+            savedMillis = buffer.getLong();
+            int count = buffer.getInt();
+            for (int i = 0; i < count; ++i) {
+                Entry entry = Entry.read(buffer);
+                entries.put(entry.name, entry);
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated breaker snapshot: " + file, e);
+        }
+
+        for (GuardRail<?, ?> guardRail : guardRails) {
+            if (entries.containsKey(guardRail.getName()) && hasRecordedResults(guardRail)) {
+                throw new IllegalStateException("Cannot restore into guard rail that has recorded results: "
+                        + guardRail.getName());
+            }
+        }
+
+        int restored = 0;
+        for (GuardRail<?, ?> guardRail : guardRails) {
+            Entry entry = entries.get(guardRail.getName());
+            if (entry != null) {
+                long elapsedMillis = Math.max(0, guardRail.getClock().currentTimeMillis() - savedMillis);
+                restore(guardRail, entry, TimeUnit.MILLISECONDS.toNanos(elapsedMillis));
+                ++restored;
+            }
+        }
+        return restored;
+    }
+
+    private static <Result extends Enum<Result> & Failable, Rejected extends Enum<Rejected>> Entry
+    snapshot(GuardRail<Result, Rejected> guardRail) {
+        DefaultCircuitBreaker<Rejected> breaker = findBreaker(guardRail);
+        WritableCounts<Result> resultCounts = guardRail.getResultCounts();
+        if (breaker == null && !(resultCounts instanceof RollingCounts)) {
+            return null;
+        }
+
+        long nanoTime = guardRail.getClock().nanoTime();
+        Entry entry = new Entry(guardRail.getName());
+        if (breaker != null) {
+            entry.state = breaker.currentState();
+            entry.lastTestedAge = nanoTime - breaker.lastTestedNanoTime();
+        }
+
+        if (resultCounts instanceof RollingCounts) {
+            RollingCounts<Result> counts = (RollingCounts<Result>) resultCounts;
+            Result[] metrics = counts.getMetricClazz().getEnumConstants();
+            entry.metricCount = metrics.length;
+            IntervalIterator<PartitionedCount<Result>> intervals = counts.intervals(nanoTime);
+            while (intervals.hasNext()) {
+                long age = -intervals.intervalStart();
+                PartitionedCount<Result> count = intervals.next();
+                if (count.total() != 0) {
+                    long[] values = new long[metrics.length];
+                    for (Result metric : metrics) {
+                        values[metric.ordinal()] = count.getCount(metric);
+                    }
+                    entry.ages.add(age);
+                    entry.counts.add(values);
+                }
+            }
+        }
+        return entry;
+    }
+
+    private static <Result extends Enum<Result> & Failable, Rejected extends Enum<Rejected>> void
+    restore(GuardRail<Result, Rejected> guardRail, Entry entry, long elapsedNanos) {
+        long nanoTime = guardRail.getClock().nanoTime();
+
+        WritableCounts<Result> resultCounts = guardRail.getResultCounts();
+        if (resultCounts instanceof RollingCounts) {
+            RollingCounts<Result> counts = (RollingCounts<Result>) resultCounts;
+            Result[] metrics = counts.getMetricClazz().getEnumConstants();
+            if (metrics.length == entry.metricCount) {
+                for (int i = 0; i < entry.ages.size(); ++i) {
+                    long[] values = entry.counts.get(i);
+                    PartitionedCount<Result> count = counts.current(nanoTime - (entry.ages.get(i) + elapsedNanos));
+                    for (Result metric : metrics) {
+                        long value = values[metric.ordinal()];
+                        if (value != 0) {
+                            count.add(metric, value);
+                        }
+                    }
+                }
+            }
+        }
+
+        DefaultCircuitBreaker<Rejected> breaker = findBreaker(guardRail);
+        if (breaker != null && entry.state != null) {
+            breaker.restoreState(entry.state, nanoTime - (entry.lastTestedAge + elapsedNanos), nanoTime);
+        }
+    }
+
+    private static <Result extends Enum<Result> & Failable> boolean hasRecordedResults(GuardRail<Result, ?> guardRail) {
+        WritableCounts<Result> resultCounts = guardRail.getResultCounts();
+        if (resultCounts instanceof RollingCounts) {
+            IntervalIterator<PartitionedCount<Result>> intervals =
+                    ((RollingCounts<Result>) resultCounts).intervals(guardRail.getClock().nanoTime());
+            while (intervals.hasNext()) {
+                if (intervals.next().total() != 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static <Rejected extends Enum<Rejected>> DefaultCircuitBreaker<Rejected>
+    findBreaker(GuardRail<?, Rejected> guardRail) {
+        for (BackPressure<Rejected> backPressure : guardRail.getBackPressure().values()) {
+            if (backPressure instanceof DefaultCircuitBreaker) {
+                return (DefaultCircuitBreaker<Rejected>) backPressure;
+            }
+        }
+        return null;
+    }
+
+    private static class Entry {
+        private final String name;
+        private CircuitState state;
+        private long lastTestedAge;
+        private int metricCount;
+        private final List<Long> ages = new ArrayList<>();
+        private final List<long[]> counts = new ArrayList<>();
+
+        private Entry(String name) {
+            this.name = name;
+        }
+
+        private int size() {
+            int nameBytes = name.getBytes(StandardCharsets.UTF_8).length;
+            return 2 + nameBytes + 1 + 8 + 4 + 4 + ages.size() * (8 + 8 * metricCount);
+        }
+
+        private void write(MappedByteBuffer buffer) {
+            byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+            buffer.putShort((short) nameBytes.length);
+            buffer.put(nameBytes);
+            buffer.put((byte) (state == null ? -1 : state.ordinal()));
+            buffer.putLong(lastTestedAge);
+            buffer.putInt(metricCount);
+            buffer.putInt(ages.size());
+            for (int i = 0; i < ages.size(); ++i) {
+                buffer.putLong(ages.get(i));
+                for (long value : counts.get(i)) {
+                    buffer.putLong(value);
+                }
+            }
+        }
+
+        private static Entry read(MappedByteBuffer buffer) {
+            byte[] nameBytes = new byte[buffer.getShort() & 0xFFFF];
+            buffer.get(nameBytes);
+            Entry entry = new Entry(new String(nameBytes, StandardCharsets.UTF_8));
+            byte state = buffer.get();
+            entry.state = state < 0 ? null : CircuitState.of(state);
+            entry.lastTestedAge = buffer.getLong();
+            entry.metricCount = buffer.getInt();
+            int intervals = buffer.getInt();
+            for (int i = 0; i < intervals; ++i) {
+                entry.ages.add(buffer.getLong());
+                long[] values = new long[entry.metricCount];
+                for (int j = 0; j < values.length; ++j) {
+                    values[j] = buffer.getLong();
+                }
+                entry.counts.add(values);
+            }
+            return entry;
+        }
+    }
+}
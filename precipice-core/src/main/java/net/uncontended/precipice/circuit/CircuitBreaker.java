@@ -29,4 +29,13 @@ public interface CircuitBreaker<Rejected extends Enum<Rejected>> extends BackPre
     void forceOpen();
 
     void forceClosed();
+
+    /**
+     * Registers a listener to be notified asynchronously when this breaker changes state.
+     *
+     * @param listener the listener
+     */
+    void addStateListener(StateListener<Rejected> listener);
+
+    void removeStateListener(StateListener<Rejected> listener);
 }
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2016 Timothy Brooks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.uncontended.precipice.circuit;
+
+public enum CircuitState {
+    CLOSED,
+    OPEN,
+    FORCED_OPEN;
+
+    private static final CircuitState[] STATES = values();
+
+    /**
+     * Returns the state for the integer representation used internally by the breakers
+     * (0 for closed, 1 for open and 2 for forced open).
+     *
+     * @param state the integer state
+     * @return the state
+     */
+    public static CircuitState of(int state) {
+        return STATES[state];
+    }
+}
@@ -35,6 +35,7 @@ public class DefaultCircuitBreaker<Rejected extends Enum<Rejected>> implements C
     private final AtomicInteger state = new AtomicInteger(0);
     private final AtomicLong lastHealthNanoTime = new AtomicLong(0);
     private final HealthGauge healthGauge;
+    private final StateListeners<Rejected> stateListeners;
     private volatile long lastTestedNanoTime = 0;
     private volatile CircuitBreakerConfig<Rejected> breakerConfig;
     private volatile HealthSnapshot health = new HealthSnapshot(0, 0);
@@ -44,14 +45,23 @@ public class DefaultCircuitBreaker<Rejected extends Enum<Rejected>> implements C
     }
 
     public DefaultCircuitBreaker(CircuitBreakerConfig<Rejected> breakerConfig, HealthGauge healthGauge) {
+        this(breakerConfig, healthGauge, TransitionDispatcher.DEFAULT_DISPATCHER);
+    }
+
+    public DefaultCircuitBreaker(CircuitBreakerConfig<Rejected> breakerConfig, HealthGauge healthGauge,
+                 TransitionDispatcher dispatcher) {
         this.breakerConfig = breakerConfig;
         this.healthGauge = healthGauge;
+        this.stateListeners = new StateListeners<>(dispatcher);
     }
 
     @Override
     public Rejected acquirePermit(long number, long nanoTime) {
-        CircuitBreakerConfig<Rejected> config = breakerConfig;
         int state = this.state.get();
+        if (state == CLOSED) {
+            return null;
+        }
+        CircuitBreakerConfig<Rejected> config = breakerConfig;
         if (state == OPEN) {
             long backOffTimeNanos = config.backOffTimeNanos;
             // This potentially allows a couple of tests through. Should think about this decision
@@ -59,8 +69,9 @@ public class DefaultCircuitBreaker<Rejected extends Enum<Rejected>> implements C
                 return config.reason;
             }
             lastTestedNanoTime = nanoTime;
+            return null;
         }
-        return state != FORCED_OPEN ? null : config.reason;
+        return config.reason;
     }
 
     @Override
@@ -72,7 +83,9 @@ public class DefaultCircuitBreaker<Rejected extends Enum<Rejected>> implements C
         if (result.isSuccess()) {
             if (state.get() == OPEN) {
                 // Explore whether this can get stuck in a loop with open and closing
-                state.compareAndSet(OPEN, CLOSED);
+                if (state.compareAndSet(OPEN, CLOSED)) {
+                    stateListeners.publish(this, CircuitState.OPEN, CircuitState.CLOSED, health, nanoTime);
+                }
             }
         } else {
             if (state.get() == CLOSED) {
@@ -83,7 +96,9 @@ public class DefaultCircuitBreaker<Rejected extends Enum<Rejected>> implements C
                 if (config.failureThreshold < failures || (config.failurePercentageThreshold < failurePercentage &&
                         config.sampleSizeThreshold < health.total)) {
                     lastTestedNanoTime = nanoTime;
-                    state.compareAndSet(CLOSED, OPEN);
+                    if (state.compareAndSet(CLOSED, OPEN)) {
+                        stateListeners.publish(this, CircuitState.CLOSED, CircuitState.OPEN, health, nanoTime);
+                    }
                 }
             }
         }
@@ -118,12 +133,46 @@ public class DefaultCircuitBreaker<Rejected extends Enum<Rejected>> implements C
 
     @Override
     public void forceOpen() {
-        state.set(FORCED_OPEN);
+        int previous = state.getAndSet(FORCED_OPEN);
+        if (previous != FORCED_OPEN) {
+            stateListeners.publish(this, CircuitState.of(previous), CircuitState.FORCED_OPEN, health, System.nanoTime());
+        }
     }
 
     @Override
     public void forceClosed() {
-        state.set(CLOSED);
+        int previous = state.getAndSet(CLOSED);
+        if (previous != CLOSED) {
+            stateListeners.publish(this, CircuitState.of(previous), CircuitState.CLOSED, health, System.nanoTime());
+        }
+    }
+
+    @Override
+    public void addStateListener(StateListener<Rejected> listener) {
+        stateListeners.add(listener);
+    }
+
+    @Override
+    public void removeStateListener(StateListener<Rejected> listener) {
+        stateListeners.remove(listener);
+    }
+
+    CircuitState currentState() {
+        return CircuitState.of(state.get());
+    }
+
+    long lastTestedNanoTime() {
+        return lastTestedNanoTime;
+    }
+
+    void restoreState(CircuitState restored, long lastTestedNanoTime, long nanoTime) {
+        this.lastTestedNanoTime = lastTestedNanoTime;
+        // Force the next failure to recompute health from the restored counts
+        lastHealthNanoTime.set(nanoTime - breakerConfig.healthRefreshNanos - 1);
+        int previous = state.getAndSet(restored.ordinal());
+        if (previous != restored.ordinal()) {
+            stateListeners.publish(this, CircuitState.of(previous), restored, health, nanoTime);
+        }
     }
 
     private HealthSnapshot getHealthSnapshot(CircuitBreakerConfig<Rejected> config, long currentNanoTime) {
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2016 Timothy Brooks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.uncontended.precipice.circuit;
+
+import net.uncontended.precipice.Failable;
+import net.uncontended.precipice.GuardRail;
+import net.uncontended.precipice.metrics.Rolling;
+import net.uncontended.precipice.metrics.counts.WritableCounts;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A circuit breaker meant to be shared by many guard rails fronting the same backend (for example one
+ * guard rail per tenant or endpoint). Health is aggregated across every member in a single scan and a
+ * trip caused by any combination of members rejects all of them. While the circuit is closed a permit
+ * acquisition is a single volatile read.
+ * <p>
+ * Members can be deregistered when their guard rail is discarded so that their counts no longer
+ * contribute to the group health.
+ */
+public class GroupCircuitBreaker<Rejected extends Enum<Rejected>> extends DefaultCircuitBreaker<Rejected> {
+
+    private final HealthGauge healthGauge;
+    private final CopyOnWriteArrayList<GuardRail<?, Rejected>> members = new CopyOnWriteArrayList<>();
+
+    public GroupCircuitBreaker(CircuitBreakerConfig<Rejected> breakerConfig) {
+        this(breakerConfig, new HealthGauge());
+    }
+
+    public GroupCircuitBreaker(CircuitBreakerConfig<Rejected> breakerConfig, HealthGauge healthGauge) {
+        super(breakerConfig, healthGauge);
+        this.healthGauge = healthGauge;
+    }
+
+    @Override
+    public <Result extends Enum<Result> & Failable> void registerGuardRail(GuardRail<Result, Rejected> guardRail) {
+        if (members.contains(guardRail)) {
+            throw new IllegalArgumentException("Guard rail already registered: " + guardRail.getName());
+        }
+        super.registerGuardRail(guardRail);
+        members.add(guardRail);
+    }
+
+    public <Result extends Enum<Result> & Failable> boolean deregisterGuardRail(GuardRail<Result, Rejected> guardRail) {
+        if (members.remove(guardRail)) {
+            WritableCounts<Result> counts = guardRail.getResultCounts();
+            healthGauge.remove((Rolling<?>) counts);
+            return true;
+        }
+        return false;
+    }
+
+    public List<String> memberNames() {
+        List<String> names = new ArrayList<>(members.size());
+        for (GuardRail<?, Rejected> member : members) {
+            names.add(member.getName());
+        }
+        return names;
+    }
+
+    public int memberCount() {
+        return members.size();
+    }
+}
@@ -45,6 +45,15 @@ public class HealthGauge {
         gauges.add(new InternalGauge<>(metrics));
     }
 
+    public boolean remove(Rolling<?> metrics) {
+        for (InternalGauge<?> gauge : gauges) {
+            if (gauge.metrics == metrics) {
+                return gauges.remove(gauge);
+            }
+        }
+        return false;
+    }
+
     private static class InternalGauge<Result extends Enum<Result> & Failable> {
 
         private final Rolling<PartitionedCount<Result>> metrics;
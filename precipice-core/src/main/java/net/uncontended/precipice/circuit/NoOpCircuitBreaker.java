@@ -23,11 +23,19 @@ import net.uncontended.precipice.GuardRail;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 public class NoOpCircuitBreaker<Rejected extends Enum<Rejected>> implements CircuitBreaker<Rejected> {
+    private static final HealthSnapshot NO_HEALTH = new HealthSnapshot(0, 0);
+
     private final AtomicBoolean circuitOpen = new AtomicBoolean(false);
+    private final StateListeners<Rejected> stateListeners;
     private final Rejected reason;
 
     public NoOpCircuitBreaker(Rejected reason) {
+        this(reason, TransitionDispatcher.DEFAULT_DISPATCHER);
+    }
+
+    public NoOpCircuitBreaker(Rejected reason, TransitionDispatcher dispatcher) {
         this.reason = reason;
+        this.stateListeners = new StateListeners<>(dispatcher);
     }
 
     @Override
@@ -68,11 +76,25 @@ public class NoOpCircuitBreaker<Rejected extends Enum<Rejected>> implements Circ
 
     @Override
     public void forceOpen() {
-        circuitOpen.set(true);
+        if (!circuitOpen.getAndSet(true)) {
+            stateListeners.publish(this, CircuitState.CLOSED, CircuitState.FORCED_OPEN, NO_HEALTH, System.nanoTime());
+        }
     }
 
     @Override
     public void forceClosed() {
-        circuitOpen.set(false);
+        if (circuitOpen.getAndSet(false)) {
+            stateListeners.publish(this, CircuitState.FORCED_OPEN, CircuitState.CLOSED, NO_HEALTH, System.nanoTime());
+        }
+    }
+
+    @Override
+    public void addStateListener(StateListener<Rejected> listener) {
+        stateListeners.add(listener);
+    }
+
+    @Override
+    public void removeStateListener(StateListener<Rejected> listener) {
+        stateListeners.remove(listener);
     }
 }
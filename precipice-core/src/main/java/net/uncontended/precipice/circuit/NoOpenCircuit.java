@@ -39,6 +39,7 @@ public class NoOpenCircuit<Rejected extends Enum<Rejected>> implements CircuitBr
     private final AtomicLong lastHealthNanoTime = new AtomicLong(0);
     private final HealthGauge healthGauge;
     private final Runnable openRunnable;
+    private final StateListeners<Rejected> stateListeners;
     private volatile CircuitBreakerConfig<Rejected> breakerConfig;
     private volatile HealthSnapshot health = new HealthSnapshot(0, 0);
 
@@ -47,9 +48,15 @@ public class NoOpenCircuit<Rejected extends Enum<Rejected>> implements CircuitBr
     }
 
     public NoOpenCircuit(CircuitBreakerConfig<Rejected> breakerConfig, HealthGauge healthGauge, Runnable openRunnable) {
+        this(breakerConfig, healthGauge, openRunnable, TransitionDispatcher.DEFAULT_DISPATCHER);
+    }
+
+    public NoOpenCircuit(CircuitBreakerConfig<Rejected> breakerConfig, HealthGauge healthGauge, Runnable openRunnable,
+                         TransitionDispatcher dispatcher) {
         this.breakerConfig = breakerConfig;
         this.healthGauge = healthGauge;
         this.openRunnable = openRunnable;
+        this.stateListeners = new StateListeners<>(dispatcher);
     }
 
     @Override
@@ -69,12 +76,28 @@ public class NoOpenCircuit<Rejected extends Enum<Rejected>> implements CircuitBr
 
     @Override
     public void forceOpen() {
-        state.set(FORCED_OPEN);
+        int previous = state.getAndSet(FORCED_OPEN);
+        if (previous != FORCED_OPEN) {
+            stateListeners.publish(this, CircuitState.of(previous), CircuitState.FORCED_OPEN, health, System.nanoTime());
+        }
     }
 
     @Override
     public void forceClosed() {
-        state.set(CLOSED);
+        int previous = state.getAndSet(CLOSED);
+        if (previous != CLOSED) {
+            stateListeners.publish(this, CircuitState.of(previous), CircuitState.CLOSED, health, System.nanoTime());
+        }
+    }
+
+    @Override
+    public void addStateListener(StateListener<Rejected> listener) {
+        stateListeners.add(listener);
+    }
+
+    @Override
+    public void removeStateListener(StateListener<Rejected> listener) {
+        stateListeners.remove(listener);
     }
 
     @Override
@@ -101,6 +124,7 @@ public class NoOpenCircuit<Rejected extends Enum<Rejected>> implements CircuitBr
             if (config.failureThreshold < failures || (config.failurePercentageThreshold < failurePercentage &&
                     config.sampleSizeThreshold < health.total)) {
                 if (state.compareAndSet(CLOSED, OPEN)) {
+                    stateListeners.publish(this, CircuitState.CLOSED, CircuitState.OPEN, health, nanoTime);
                     // TODO: Obviously need some timing mechanism to ensure there are not multiple runs
                     openRunnable.run();
                 }
@@ -36,6 +36,7 @@ public class SWCircuitBreaker<Rejected extends Enum<Rejected>> implements Circui
 
     private final AtomicInteger state = new AtomicInteger(0);
     private final HealthGauge healthGauge;
+    private final StateListeners<Rejected> stateListeners;
     private volatile long lastTestedNanoTime = 0;
     private volatile CircuitBreakerConfig<Rejected> breakerConfig;
     private volatile HealthSnapshot health = new HealthSnapshot(0, 0);
@@ -45,8 +46,14 @@ public class SWCircuitBreaker<Rejected extends Enum<Rejected>> implements Circui
     }
 
     public SWCircuitBreaker(CircuitBreakerConfig<Rejected> breakerConfig, HealthGauge healthGauge) {
+        this(breakerConfig, healthGauge, TransitionDispatcher.DEFAULT_DISPATCHER);
+    }
+
+    public SWCircuitBreaker(CircuitBreakerConfig<Rejected> breakerConfig, HealthGauge healthGauge,
+                 TransitionDispatcher dispatcher) {
         this.breakerConfig = breakerConfig;
         this.healthGauge = healthGauge;
+        this.stateListeners = new StateListeners<>(dispatcher);
     }
 
     @Override
@@ -71,7 +78,9 @@ public class SWCircuitBreaker<Rejected extends Enum<Rejected>> implements Circui
     public void releasePermit(long number, Failable result, long nanoTime) {
         if (result.isSuccess()) {
             if (state.get() == OPEN) {
-                state.compareAndSet(OPEN, CLOSED);
+                if (state.compareAndSet(OPEN, CLOSED)) {
+                    stateListeners.publish(this, CircuitState.OPEN, CircuitState.CLOSED, health, nanoTime);
+                }
             }
         } else {
             if (state.get() == CLOSED) {
@@ -82,7 +91,9 @@ public class SWCircuitBreaker<Rejected extends Enum<Rejected>> implements Circui
                 if (config.failureThreshold < failures || (config.failurePercentageThreshold < failurePercentage &&
                         config.sampleSizeThreshold < health.total)) {
                     lastTestedNanoTime = nanoTime;
-                    state.compareAndSet(CLOSED, OPEN);
+                    if (state.compareAndSet(CLOSED, OPEN)) {
+                        stateListeners.publish(this, CircuitState.CLOSED, CircuitState.OPEN, health, nanoTime);
+                    }
                 }
             }
         }
@@ -115,12 +126,28 @@ public class SWCircuitBreaker<Rejected extends Enum<Rejected>> implements Circui
 
     @Override
     public void forceOpen() {
-        state.set(FORCED_OPEN);
+        int previous = state.getAndSet(FORCED_OPEN);
+        if (previous != FORCED_OPEN) {
+            stateListeners.publish(this, CircuitState.of(previous), CircuitState.FORCED_OPEN, health, System.nanoTime());
+        }
     }
 
     @Override
     public void forceClosed() {
-        state.set(CLOSED);
+        int previous = state.getAndSet(CLOSED);
+        if (previous != CLOSED) {
+            stateListeners.publish(this, CircuitState.of(previous), CircuitState.CLOSED, health, System.nanoTime());
+        }
+    }
+
+    @Override
+    public void addStateListener(StateListener<Rejected> listener) {
+        stateListeners.add(listener);
+    }
+
+    @Override
+    public void removeStateListener(StateListener<Rejected> listener) {
+        stateListeners.remove(listener);
     }
 
     @Override
@@ -0,0 +1,30 @@
+/*
+ * Copyright 2016 Timothy Brooks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.uncontended.precipice.circuit;
+
+/**
+ * A listener for circuit breaker state transitions. Listeners are called asynchronously
+ * on a {@link TransitionDispatcher} thread, never on the thread that caused the transition.
+ *
+ * @param <Rejected> the type for rejection reasons
+ */
+@FunctionalInterface
+public interface StateListener<Rejected extends Enum<Rejected>> {
+
+    void onTransition(StateTransition<Rejected> transition);
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2016 Timothy Brooks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.uncontended.precipice.circuit;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The listeners registered with a single circuit breaker. Publishing a transition when no
+ * listeners are registered does not allocate. Otherwise it allocates one event and hands it
+ * to the {@link TransitionDispatcher} without blocking.
+ *
+ * @param <Rejected> the type for rejection reasons
+ */
+public class StateListeners<Rejected extends Enum<Rejected>> {
+
+    private final CopyOnWriteArrayList<StateListener<Rejected>> listeners = new CopyOnWriteArrayList<>();
+    private final TransitionDispatcher dispatcher;
+
+    public StateListeners() {
+        this(TransitionDispatcher.DEFAULT_DISPATCHER);
+    }
+
+    public StateListeners(TransitionDispatcher dispatcher) {
+        this.dispatcher = dispatcher;
+    }
+
+    public void add(StateListener<Rejected> listener) {
+        listeners.add(listener);
+    }
+
+    public void remove(StateListener<Rejected> listener) {
+        listeners.remove(listener);
+    }
+
+    public void publish(CircuitBreaker<Rejected> breaker, CircuitState from, CircuitState to, HealthSnapshot health,
+                        long nanoTime) {
+        if (!listeners.isEmpty()) {
+            dispatcher.dispatch(new StateTransition<>(breaker, from, to, health, nanoTime, listeners));
+        }
+    }
+}
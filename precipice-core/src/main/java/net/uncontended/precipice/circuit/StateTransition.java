@@ -0,0 +1,56 @@
+/*
+ * Copyright 2016 Timothy Brooks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.uncontended.precipice.circuit;
+
+import java.util.List;
+
+/**
+ * A change in the state of a circuit breaker.
+ *
+ * @param <Rejected> the type for rejection reasons
+ */
+public class StateTransition<Rejected extends Enum<Rejected>> {
+
+    public final CircuitBreaker<Rejected> breaker;
+    public final CircuitState from;
+    public final CircuitState to;
+    public final HealthSnapshot health;
+    public final long nanoTime;
+    final List<StateListener<Rejected>> listeners;
+
+    StateTransition(CircuitBreaker<Rejected> breaker, CircuitState from, CircuitState to, HealthSnapshot health,
+                    long nanoTime, List<StateListener<Rejected>> listeners) {
+        this.breaker = breaker;
+        this.from = from;
+        this.to = to;
+        this.health = health;
+        this.nanoTime = nanoTime;
+        this.listeners = listeners;
+    }
+
+    @Override
+    public String toString() {
+        return "StateTransition{" +
+                "from=" + from +
+                ", to=" + to +
+                ", total=" + health.total +
+                ", failures=" + health.failures +
+                ", nanoTime=" + nanoTime +
+                '}';
+    }
+}
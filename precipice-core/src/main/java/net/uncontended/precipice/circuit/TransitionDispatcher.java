@@ -0,0 +1,190 @@
+/*
+ * Copyright 2016 Timothy Brooks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.uncontended.precipice.circuit;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Delivers {@link StateTransition}s to listeners on a dedicated thread. Transitions are
+ * passed through a bounded lock-free ring buffer. Dispatching never blocks the breaker
+ * thread. If the buffer is full, the transition is dropped and counted.
+ */
+public class TransitionDispatcher {
+
+    /**
+     * The dispatcher shared by every {@link StateListeners} created without one. It cannot be stopped.
+     */
+    public static final TransitionDispatcher DEFAULT_DISPATCHER = new TransitionDispatcher("default", 1024, null, false);
+
+    // Bounds the wait if an unpark is ever missed, so a transition is delivered late rather than never.
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final Object[] buffer;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong(0);
+    private final AtomicLong dropped = new AtomicLong(0);
+    private final AtomicBoolean isStarted = new AtomicBoolean(false);
+    private final Thread dispatchThread;
+    private final Thread.UncaughtExceptionHandler exceptionHandler;
+    private final boolean isStoppable;
+    private long head = 0;
+    private volatile boolean isWaiting = false;
+    private volatile boolean isRunning = true;
+
+    public TransitionDispatcher(String name, int capacity) {
+        this(name, capacity, null);
+    }
+
+    public TransitionDispatcher(String name, int capacity, Thread.UncaughtExceptionHandler exceptionHandler) {
+        this(name, capacity, exceptionHandler, true);
+    }
+
+    private TransitionDispatcher(String name, int capacity, Thread.UncaughtExceptionHandler exceptionHandler,
+                                 boolean isStoppable) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive. Found: " + capacity);
+        }
+        int adjustedCapacity = 1 << 32 - Integer.numberOfLeadingZeros(capacity - 1);
+        this.buffer = new Object[adjustedCapacity];
+        this.sequences = new AtomicLongArray(adjustedCapacity);
+        this.mask = adjustedCapacity - 1;
+        for (int i = 0; i < adjustedCapacity; ++i) {
+            sequences.set(i, i);
+        }
+        this.exceptionHandler = exceptionHandler;
+        this.isStoppable = isStoppable;
+
+        dispatchThread = createThread();
+        dispatchThread.setName(name + "-transition-dispatcher");
+        dispatchThread.setDaemon(true);
+    }
+
+    /**
+     * Hands a transition to the dispatch thread. Returns false if the buffer was full
+     * and the transition was dropped.
+     *
+     * @param transition the transition
+     * @return if the transition was accepted
+     */
+    public boolean dispatch(StateTransition<?> transition) {
+        if (!isStarted.get()) {
+            startThread();
+        }
+        if (!isRunning || !offer(transition)) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        if (isWaiting) {
+            LockSupport.unpark(dispatchThread);
+        }
+        return true;
+    }
+
+    public long droppedCount() {
+        return dropped.get();
+    }
+
+    public void stop() {
+        if (!isStoppable) {
+            throw new UnsupportedOperationException("The shared default dispatcher cannot be stopped.");
+        }
+        if (isRunning) {
+            isRunning = false;
+            dispatchThread.interrupt();
+        }
+    }
+
+    private boolean offer(StateTransition<?> transition) {
+        for (; ; ) {
+            long currentTail = tail.get();
+            int index = (int) currentTail & mask;
+            long difference = sequences.get(index) - currentTail;
+            if (difference == 0) {
+                if (tail.compareAndSet(currentTail, currentTail + 1)) {
+                    buffer[index] = transition;
+                    // A volatile write, so that the read of isWaiting in dispatch cannot be reordered before it.
+                    sequences.set(index, currentTail + 1);
+                    return true;
+                }
+            } else if (difference < 0) {
+                return false;
+            }
+        }
+    }
+
+    private StateTransition<?> poll() {
+        int index = (int) head & mask;
+        if (sequences.get(index) - (head + 1) < 0) {
+            return null;
+        }
+        StateTransition<?> transition = (StateTransition<?>) buffer[index];
+        buffer[index] = null;
+        sequences.lazySet(index, head + buffer.length);
+        ++head;
+        return transition;
+    }
+
+    private <Rejected extends Enum<Rejected>> void deliver(StateTransition<Rejected> transition) {
+        for (StateListener<Rejected> listener : transition.listeners) {
+            try {
+                listener.onTransition(transition);
+            } catch (Exception e) {
+                if (exceptionHandler != null) {
+                    exceptionHandler.uncaughtException(Thread.currentThread(), e);
+                } else {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    private void startThread() {
+        if (isStarted.compareAndSet(false, true)) {
+            dispatchThread.start();
+        }
+    }
+
+    private Thread createThread() {
+        return new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (isRunning) {
+                    StateTransition<?> transition = poll();
+                    if (transition == null) {
+                        isWaiting = true;
+                        transition = poll();
+                        if (transition == null) {
+                            LockSupport.parkNanos(this, MAX_PARK_NANOS);
+                            isWaiting = false;
+                            // Only stop() ends the loop. A stray interrupt is cleared so that parking still works.
+                            Thread.interrupted();
+                            continue;
+                        }
+                        isWaiting = false;
+                    }
+                    deliver(transition);
+                }
+            }
+        });
+    }
+}
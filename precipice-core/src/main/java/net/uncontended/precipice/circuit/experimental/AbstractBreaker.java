@@ -17,24 +17,71 @@
 
 package net.uncontended.precipice.circuit.experimental;
 
+import net.uncontended.precipice.circuit.CircuitBreaker;
+import net.uncontended.precipice.circuit.CircuitState;
+import net.uncontended.precipice.circuit.HealthSnapshot;
+import net.uncontended.precipice.circuit.StateListener;
+import net.uncontended.precipice.circuit.StateListeners;
+import net.uncontended.precipice.circuit.TransitionDispatcher;
+
 import java.util.concurrent.atomic.AtomicInteger;
 
-public class AbstractBreaker {
+public abstract class AbstractBreaker<Rejected extends Enum<Rejected>> implements CircuitBreaker<Rejected> {
     protected static final int CLOSED = 0;
     protected static final int OPEN = 1;
     protected static final int FORCED_OPEN = 2;
 
     protected final AtomicInteger state = new AtomicInteger(0);
+    protected final StateListeners<Rejected> stateListeners;
+
+    protected AbstractBreaker() {
+        this(TransitionDispatcher.DEFAULT_DISPATCHER);
+    }
 
+    protected AbstractBreaker(TransitionDispatcher dispatcher) {
+        stateListeners = new StateListeners<>(dispatcher);
+    }
+
+    @Override
     public boolean isOpen() {
         return state.get() != CLOSED;
     }
 
+    @Override
     public void forceOpen() {
-        state.set(FORCED_OPEN);
+        int previous = state.getAndSet(FORCED_OPEN);
+        if (previous != FORCED_OPEN) {
+            stateListeners.publish(this, CircuitState.of(previous), CircuitState.FORCED_OPEN, getHealthSnapshot(),
+                    System.nanoTime());
+        }
     }
 
+    @Override
     public void forceClosed() {
-        state.set(CLOSED);
+        int previous = state.getAndSet(CLOSED);
+        if (previous != CLOSED) {
+            stateListeners.publish(this, CircuitState.of(previous), CircuitState.CLOSED, getHealthSnapshot(),
+                    System.nanoTime());
+        }
+    }
+
+    @Override
+    public void addStateListener(StateListener<Rejected> listener) {
+        stateListeners.add(listener);
+    }
+
+    @Override
+    public void removeStateListener(StateListener<Rejected> listener) {
+        stateListeners.remove(listener);
+    }
+
+    public abstract HealthSnapshot getHealthSnapshot();
+
+    protected boolean transition(int from, int to, long nanoTime) {
+        if (state.compareAndSet(from, to)) {
+            stateListeners.publish(this, CircuitState.of(from), CircuitState.of(to), getHealthSnapshot(), nanoTime);
+            return true;
+        }
+        return false;
     }
 }
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2016 Timothy Brooks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.uncontended.precipice.circuit.experimental;
+
+/**
+ * Unhealthy when an exponentially weighted moving average of the failure percentage
+ * exceeds a threshold. The average is updated once per health refresh, so a short burst
+ * of failures in one trailing period is smoothed by the periods before it. Samples that
+ * do not contain more executions than the sample size threshold do not move the average.
+ * <p/>
+ * The average is state held by this checker. An instance should only be installed in
+ * one breaker.
+ */
+public class EWMAChecker implements HealthChecker {
+
+    private final double alpha;
+    private final double failurePercentageThreshold;
+    private final long sampleSizeThreshold;
+    private double average = -1.0;
+
+    public EWMAChecker(double alpha, int failurePercentageThreshold, long sampleSizeThreshold) {
+        if (alpha <= 0.0 || alpha > 1.0) {
+            throw new IllegalArgumentException("Alpha must be in the range (0, 1]. Found: " + alpha);
+        }
+        this.alpha = alpha;
+        this.failurePercentageThreshold = failurePercentageThreshold;
+        this.sampleSizeThreshold = sampleSizeThreshold;
+    }
+
+    @Override
+    public boolean isHealthy(HealthSample sample) {
+        if (sample.total > sampleSizeThreshold) {
+            double percentage = 100.0 * sample.failures / sample.total;
+            if (average < 0.0) {
+                average = percentage;
+            } else {
+                average += alpha * (percentage - average);
+            }
+        }
+        return average <= failurePercentageThreshold;
+    }
+
+    @Override
+    public boolean requiresLatency() {
+        return false;
+    }
+
+    public double currentAverage() {
+        return average < 0.0 ? 0.0 : average;
+    }
+}
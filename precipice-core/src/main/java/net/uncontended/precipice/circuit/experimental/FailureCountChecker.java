@@ -0,0 +1,40 @@
+/*
+ * Copyright 2016 Timothy Brooks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.uncontended.precipice.circuit.experimental;
+
+/**
+ * Unhealthy when the number of failures in the trailing period exceeds a threshold.
+ */
+public class FailureCountChecker implements HealthChecker {
+
+    private final long failureThreshold;
+
+    public FailureCountChecker(long failureThreshold) {
+        this.failureThreshold = failureThreshold;
+    }
+
+    @Override
+    public boolean isHealthy(HealthSample sample) {
+        return sample.failures <= failureThreshold;
+    }
+
+    @Override
+    public boolean requiresLatency() {
+        return false;
+    }
+}
@@ -17,7 +17,28 @@
 
 package net.uncontended.precipice.circuit.experimental;
 
+/**
+ * A strategy deciding whether a sample of recent executions is healthy. A checker is
+ * evaluated once per health refresh by the owning breaker, under the breaker's refresh
+ * lock, so implementations may keep state between refreshes without synchronization.
+ * Checkers can be combined with {@link HealthCheckers#and(HealthChecker...)} and
+ * {@link HealthCheckers#or(HealthChecker...)}.
+ */
 public interface HealthChecker {
 
-    boolean isHealthy(long nanoTime);
+    /**
+     * Evaluates the sample taken on the latest health refresh.
+     *
+     * @param sample the health sample
+     * @return if the sample is healthy
+     */
+    boolean isHealthy(HealthSample sample);
+
+    /**
+     * Returns whether this checker reads latency from the sample. Latency is only collected
+     * during a refresh if the installed checker requires it.
+     *
+     * @return if latency is required
+     */
+    boolean requiresLatency();
 }
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2016 Timothy Brooks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.uncontended.precipice.circuit.experimental;
+
+import net.uncontended.precipice.circuit.CircuitBreakerConfig;
+
+public final class HealthCheckers {
+
+    private HealthCheckers() {
+    }
+
+    /**
+     * Returns a checker that is healthy only if every child is healthy. Every child is
+     * evaluated on each refresh so that stateful checkers see every sample.
+     *
+     * @param checkers the children
+     * @return the combined checker
+     */
+    public static HealthChecker and(HealthChecker... checkers) {
+        return new And(checkers.clone());
+    }
+
+    /**
+     * Returns a checker that is healthy if any child is healthy. Every child is evaluated
+     * on each refresh so that stateful checkers see every sample.
+     *
+     * @param checkers the children
+     * @return the combined checker
+     */
+    public static HealthChecker or(HealthChecker... checkers) {
+        return new Or(checkers.clone());
+    }
+
+    /**
+     * Returns the checker matching the thresholds of a {@link CircuitBreakerConfig}. This is
+     * the logic used by {@link net.uncontended.precipice.circuit.DefaultCircuitBreaker}.
+     *
+     * @param config the breaker config
+     * @return the checker
+     */
+    public static HealthChecker fromConfig(CircuitBreakerConfig<?> config) {
+        return and(new FailureCountChecker(config.failureThreshold),
+                new FailurePercentageChecker(config.failurePercentageThreshold, config.sampleSizeThreshold));
+    }
+
+    private static boolean anyRequireLatency(HealthChecker[] checkers) {
+        for (HealthChecker checker : checkers) {
+            if (checker.requiresLatency()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static class And implements HealthChecker {
+
+        private final HealthChecker[] checkers;
+        private final boolean requiresLatency;
+
+        private And(HealthChecker[] checkers) {
+            this.checkers = checkers;
+            this.requiresLatency = anyRequireLatency(checkers);
+        }
+
+        @Override
+        public boolean isHealthy(HealthSample sample) {
+            boolean healthy = true;
+            for (HealthChecker checker : checkers) {
+                healthy &= checker.isHealthy(sample);
+            }
+            return healthy;
+        }
+
+        @Override
+        public boolean requiresLatency() {
+            return requiresLatency;
+        }
+    }
+
+    private static class Or implements HealthChecker {
+
+        private final HealthChecker[] checkers;
+        private final boolean requiresLatency;
+
+        private Or(HealthChecker[] checkers) {
+            this.checkers = checkers;
+            this.requiresLatency = anyRequireLatency(checkers);
+        }
+
+        @Override
+        public boolean isHealthy(HealthSample sample) {
+            boolean healthy = false;
+            for (HealthChecker checker : checkers) {
+                healthy |= checker.isHealthy(sample);
+            }
+            return healthy;
+        }
+
+        @Override
+        public boolean requiresLatency() {
+            return requiresLatency;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2016 Timothy Brooks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.uncontended.precipice.circuit.experimental;
+
+import net.uncontended.precipice.circuit.HealthSnapshot;
+import org.HdrHistogram.Histogram;
+
+/**
+ * The result of a single scan of the metrics registered with a breaker. Latency is only
+ * present if the breaker's {@link HealthChecker} requires it.
+ */
+public class HealthSample extends HealthSnapshot {
+
+    private final Histogram latency;
+
+    public HealthSample(long total, long failures) {
+        this(total, failures, null);
+    }
+
+    public HealthSample(long total, long failures, Histogram latency) {
+        super(total, failures);
+        this.latency = latency;
+    }
+
+    public boolean hasLatency() {
+        return latency != null;
+    }
+
+    public long latencyCount() {
+        return latency != null ? latency.getTotalCount() : 0;
+    }
+
+    public long latencyAtPercentile(double percentile) {
+        return latency != null ? latency.getValueAtPercentile(percentile) : 0;
+    }
+}
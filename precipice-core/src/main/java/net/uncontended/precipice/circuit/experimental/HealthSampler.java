@@ -0,0 +1,125 @@
+/*
+ * Copyright 2016 Timothy Brooks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.uncontended.precipice.circuit.experimental;
+
+import net.uncontended.precipice.Failable;
+import net.uncontended.precipice.metrics.IntervalIterator;
+import net.uncontended.precipice.metrics.Rolling;
+import net.uncontended.precipice.metrics.counts.PartitionedCount;
+import net.uncontended.precipice.metrics.latency.PartitionedLatency;
+import org.HdrHistogram.Histogram;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects the rolling metrics of every guard rail registered with a breaker and produces
+ * a {@link HealthSample} from one pass over their trailing intervals.
+ */
+public class HealthSampler {
+
+    private final CopyOnWriteArrayList<CountGauge<?>> countGauges = new CopyOnWriteArrayList<>();
+    private final CopyOnWriteArrayList<LatencyGauge<?>> latencyGauges = new CopyOnWriteArrayList<>();
+
+    public synchronized HealthSample sample(long trailingPeriodNanos, boolean includeLatency, long nanoTime) {
+        long total = 0;
+        long failures = 0;
+
+        for (CountGauge<?> gauge : countGauges) {
+            gauge.refresh(trailingPeriodNanos, nanoTime);
+            total += gauge.total;
+            failures += gauge.failures;
+        }
+
+        Histogram latency = null;
+        if (includeLatency) {
+            latency = new Histogram(2);
+            for (LatencyGauge<?> gauge : latencyGauges) {
+                gauge.addTo(latency, trailingPeriodNanos, nanoTime);
+            }
+        }
+        return new HealthSample(total, failures, latency);
+    }
+
+    public <Result extends Enum<Result> & Failable> void addCounts(Rolling<PartitionedCount<Result>> metrics) {
+        countGauges.add(new CountGauge<>(metrics));
+    }
+
+    public <Result extends Enum<Result> & Failable> void addLatency(Rolling<PartitionedLatency<Result>> metrics) {
+        latencyGauges.add(new LatencyGauge<>(metrics));
+    }
+
+    private static class CountGauge<Result extends Enum<Result> & Failable> {
+
+        private final Rolling<PartitionedCount<Result>> metrics;
+        private final Result[] results;
+        private long total = 0;
+        private long failures = 0;
+
+        private CountGauge(Rolling<PartitionedCount<Result>> metrics) {
+            this.metrics = metrics;
+            results = metrics.current().getMetricClazz().getEnumConstants();
+        }
+
+        private void refresh(long trailingPeriodNanos, long nanoTime) {
+            total = 0;
+            failures = 0;
+            IntervalIterator<PartitionedCount<Result>> counters = metrics.intervals(nanoTime);
+            counters.limit(trailingPeriodNanos, TimeUnit.NANOSECONDS);
+
+            PartitionedCount<Result> metricCounter;
+            while (counters.hasNext()) {
+                metricCounter = counters.next();
+                for (Result result : results) {
+                    long metricCount = metricCounter.getCount(result);
+                    total += metricCount;
+
+                    if (result.isFailure()) {
+                        failures += metricCount;
+                    }
+                }
+            }
+        }
+    }
+
+    private static class LatencyGauge<Result extends Enum<Result> & Failable> {
+
+        private final Rolling<PartitionedLatency<Result>> metrics;
+        private final Result[] results;
+
+        private LatencyGauge(Rolling<PartitionedLatency<Result>> metrics) {
+            this.metrics = metrics;
+            results = metrics.current().getMetricClazz().getEnumConstants();
+        }
+
+        private void addTo(Histogram histogram, long trailingPeriodNanos, long nanoTime) {
+            IntervalIterator<PartitionedLatency<Result>> intervals = metrics.intervals(nanoTime);
+            intervals.limit(trailingPeriodNanos, TimeUnit.NANOSECONDS);
+
+            PartitionedLatency<Result> latency;
+            while (intervals.hasNext()) {
+                latency = intervals.next();
+                if (latency.isHDR()) {
+                    for (Result result : results) {
+                        histogram.add(latency.getHistogram(result));
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2016 Timothy Brooks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.uncontended.precipice.circuit.experimental;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unhealthy when the latency at a percentile in the trailing period exceeds a threshold.
+ * The sample must contain more latency recordings than the sample size threshold to be
+ * considered.
+ */
+public class LatencyChecker implements HealthChecker {
+
+    private final double percentile;
+    private final long latencyThresholdNanos;
+    private final long sampleSizeThreshold;
+
+    public LatencyChecker(double percentile, long latencyThreshold, TimeUnit unit, long sampleSizeThreshold) {
+        if (percentile <= 0.0 || percentile > 100.0) {
+            throw new IllegalArgumentException("Percentile must be in the range (0, 100]. Found: " + percentile);
+        }
+        this.percentile = percentile;
+        this.latencyThresholdNanos = unit.toNanos(latencyThreshold);
+        this.sampleSizeThreshold = sampleSizeThreshold;
+    }
+
+    @Override
+    public boolean isHealthy(HealthSample sample) {
+        return sample.latencyCount() <= sampleSizeThreshold ||
+                sample.latencyAtPercentile(percentile) <= latencyThresholdNanos;
+    }
+
+    @Override
+    public boolean requiresLatency() {
+        return true;
+    }
+}
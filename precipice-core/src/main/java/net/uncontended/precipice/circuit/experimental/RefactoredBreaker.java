@@ -19,51 +19,93 @@ package net.uncontended.precipice.circuit.experimental;
 
 import net.uncontended.precipice.Failable;
 import net.uncontended.precipice.GuardRail;
-import net.uncontended.precipice.circuit.CircuitBreaker;
+import net.uncontended.precipice.circuit.BackgroundTask;
 import net.uncontended.precipice.circuit.CircuitBreakerConfig;
+import net.uncontended.precipice.circuit.HealthSnapshot;
+import net.uncontended.precipice.circuit.TransitionDispatcher;
+import net.uncontended.precipice.metrics.Rolling;
+import net.uncontended.precipice.metrics.counts.PartitionedCount;
+import net.uncontended.precipice.metrics.counts.WritableCounts;
+import net.uncontended.precipice.metrics.latency.PartitionedLatency;
+import net.uncontended.precipice.metrics.latency.WritableLatency;
 
-public class RefactoredBreaker<Rejected extends Enum<Rejected>> extends AbstractBreaker implements CircuitBreaker<Rejected> {
+import java.util.concurrent.atomic.AtomicLong;
 
-    private final Rejected reason;
-    private final Rejected forcedReason;
-    private final long backOffTimeNanos;
-    private final HealthChecker checker;
+/**
+ * A circuit breaker whose health logic is supplied by a {@link HealthChecker}. The metrics
+ * of every registered guard rail are scanned once per health refresh and the checker is
+ * evaluated against that sample. Between refreshes, releasing a failed permit only reads
+ * the cached verdict.
+ * <p/>
+ * If no checker is provided, one is derived from the {@link CircuitBreakerConfig} and is
+ * rebuilt whenever the config is replaced. Replacing the config or the checker does not
+ * reset the breaker state or the registered metrics.
+ * <p/>
+ * Refreshes normally happen on the release path. This breaker can also be refreshed
+ * from a background thread with {@link #tick(long)}.
+ */
+public class RefactoredBreaker<Rejected extends Enum<Rejected>> extends AbstractBreaker<Rejected> implements BackgroundTask {
 
-    private volatile long lastTestedNanoTime;
+    private final AtomicLong lastHealthNanoTime = new AtomicLong(0);
+    private final HealthSampler sampler;
+    private volatile CircuitBreakerConfig<Rejected> breakerConfig;
+    private volatile HealthChecker checker;
+    private volatile boolean checkerFromConfig;
+    private volatile HealthSample health = new HealthSample(0, 0);
+    private volatile boolean isHealthy = true;
+    private volatile long lastTestedNanoTime = 0;
 
-    public RefactoredBreaker(Rejected reason, Rejected forcedReason, HealthChecker checker, long backOffTimeNanos) {
-        this.reason = reason;
-        this.forcedReason = forcedReason;
-        this.checker = checker;
-        this.backOffTimeNanos = backOffTimeNanos;
+    public RefactoredBreaker(CircuitBreakerConfig<Rejected> breakerConfig) {
+        this(breakerConfig, new HealthSampler());
     }
 
-    @Override
-    public CircuitBreakerConfig<Rejected> getBreakerConfig() {
-        return null;
+    public RefactoredBreaker(CircuitBreakerConfig<Rejected> breakerConfig, HealthSampler sampler) {
+        this(breakerConfig, sampler, TransitionDispatcher.DEFAULT_DISPATCHER);
     }
 
-    @Override
-    public void setBreakerConfig(CircuitBreakerConfig<Rejected> breakerConfig) {
+    public RefactoredBreaker(CircuitBreakerConfig<Rejected> breakerConfig, HealthSampler sampler,
+                             TransitionDispatcher dispatcher) {
+        this(breakerConfig, HealthCheckers.fromConfig(breakerConfig), true, sampler, dispatcher);
+    }
 
+    public RefactoredBreaker(CircuitBreakerConfig<Rejected> breakerConfig, HealthChecker checker) {
+        this(breakerConfig, checker, new HealthSampler());
+    }
+
+    public RefactoredBreaker(CircuitBreakerConfig<Rejected> breakerConfig, HealthChecker checker, HealthSampler sampler) {
+        this(breakerConfig, checker, sampler, TransitionDispatcher.DEFAULT_DISPATCHER);
+    }
+
+    public RefactoredBreaker(CircuitBreakerConfig<Rejected> breakerConfig, HealthChecker checker, HealthSampler sampler,
+                             TransitionDispatcher dispatcher) {
+        this(breakerConfig, checker, false, sampler, dispatcher);
+    }
+
+    private RefactoredBreaker(CircuitBreakerConfig<Rejected> breakerConfig, HealthChecker checker,
+                              boolean checkerFromConfig, HealthSampler sampler, TransitionDispatcher dispatcher) {
+        super(dispatcher);
+        this.breakerConfig = breakerConfig;
+        this.checker = checker;
+        this.checkerFromConfig = checkerFromConfig;
+        this.sampler = sampler;
     }
 
     @Override
     public Rejected acquirePermit(long number, long nanoTime) {
+        CircuitBreakerConfig<Rejected> config = breakerConfig;
         int state = this.state.get();
         if (state == OPEN) {
             // This potentially allows a couple of tests through. Should think about this decision
-            if (nanoTime - (backOffTimeNanos + lastTestedNanoTime) < 0) {
-                return reason;
+            if (nanoTime - (config.backOffTimeNanos + lastTestedNanoTime) < 0) {
+                return config.reason;
             }
             lastTestedNanoTime = nanoTime;
         }
-        return state != FORCED_OPEN ? null : forcedReason;
+        return state != FORCED_OPEN ? null : config.forcedReason;
     }
 
     @Override
     public void releasePermit(long number, long nanoTime) {
-
     }
 
     @Override
@@ -71,13 +113,13 @@ public class RefactoredBreaker<Rejected extends Enum<Rejected>> extends Abstract
         if (result.isSuccess()) {
             if (state.get() == OPEN) {
                 // Explore whether this can get stuck in a loop with open and closing
-                state.compareAndSet(OPEN, CLOSED);
+                transition(OPEN, CLOSED, nanoTime);
             }
         } else {
             if (state.get() == CLOSED) {
-                if (!checker.isHealthy(nanoTime)) {
+                if (!isHealthy(nanoTime)) {
                     lastTestedNanoTime = nanoTime;
-                    state.compareAndSet(CLOSED, OPEN);
+                    transition(CLOSED, OPEN, nanoTime);
                 }
             }
         }
@@ -85,5 +127,75 @@ public class RefactoredBreaker<Rejected extends Enum<Rejected>> extends Abstract
 
     @Override
     public <Result extends Enum<Result> & Failable> void registerGuardRail(GuardRail<Result, Rejected> guardRail) {
+        WritableCounts<Result> counts = guardRail.getResultCounts();
+        if (counts instanceof Rolling) {
+            sampler.addCounts((Rolling<PartitionedCount<Result>>) counts);
+        } else {
+            throw new IllegalArgumentException("RefactoredBreaker requires rolling result object");
+        }
+        WritableLatency<Result> latency = guardRail.getResultLatency();
+        if (latency instanceof Rolling) {
+            sampler.addLatency((Rolling<PartitionedLatency<Result>>) latency);
+        }
+        lastHealthNanoTime.set(guardRail.getClock().nanoTime());
+    }
+
+    @Override
+    public void tick(long nanoTime) {
+        lastHealthNanoTime.set(nanoTime);
+        refresh(breakerConfig, nanoTime);
+    }
+
+    @Override
+    public CircuitBreakerConfig<Rejected> getBreakerConfig() {
+        return breakerConfig;
+    }
+
+    @Override
+    public synchronized void setBreakerConfig(CircuitBreakerConfig<Rejected> breakerConfig) {
+        this.breakerConfig = breakerConfig;
+        if (checkerFromConfig) {
+            checker = HealthCheckers.fromConfig(breakerConfig);
+            isHealthy = checker.isHealthy(health);
+        }
+    }
+
+    public HealthChecker getHealthChecker() {
+        return checker;
+    }
+
+    /**
+     * Replaces the health checker. The new checker is immediately evaluated against the
+     * most recent sample. Config changes will no longer replace the checker.
+     *
+     * @param checker the new checker
+     */
+    public synchronized void setHealthChecker(HealthChecker checker) {
+        this.checker = checker;
+        checkerFromConfig = false;
+        isHealthy = checker.isHealthy(health);
+    }
+
+    @Override
+    public HealthSnapshot getHealthSnapshot() {
+        return health;
+    }
+
+    private boolean isHealthy(long nanoTime) {
+        CircuitBreakerConfig<Rejected> config = breakerConfig;
+        long lastHealthNanoTime = this.lastHealthNanoTime.get();
+        if (nanoTime - (lastHealthNanoTime + config.healthRefreshNanos) > 0) {
+            if (this.lastHealthNanoTime.compareAndSet(lastHealthNanoTime, nanoTime)) {
+                refresh(config, nanoTime);
+            }
+        }
+        return isHealthy;
+    }
+
+    private synchronized void refresh(CircuitBreakerConfig<Rejected> config, long nanoTime) {
+        HealthChecker checker = this.checker;
+        HealthSample newHealth = sampler.sample(config.trailingPeriodNanos, checker.requiresLatency(), nanoTime);
+        health = newHealth;
+        isHealthy = checker.isHealthy(newHealth);
     }
 }
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2016 Timothy Brooks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.uncontended.precipice.concurrent;
+
+import net.uncontended.precipice.Failable;
+import net.uncontended.precipice.PrecipiceFunction;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Adapters between {@link PrecipiceFuture} and {@link CompletableFuture}. The adapters register one
+ * completion callback on each side and allocate only the returned future. The returned future is completed wherever the
+ * precipice future runs its callbacks: on its callback executor if an {@link Eventual} has one, otherwise on
+ * the thread that completes it, or on the calling thread if it is already complete. The adapters add no
+ * executor hop of their own.
+ * <p>
+ * Cancelling a returned future cancels the precipice futures it was created from.
+ */
+public final class CompletionStages {
+
+    private CompletionStages() {
+    }
+
+    public static <Result extends Failable, V> CompletableFuture<V> toCompletableFuture(PrecipiceFuture<Result, V> future) {
+        CompletableFuture<V> completableFuture = new CompletableFuture<>();
+        onComplete(future, (result, f) -> {
+            if (isError(result, f)) {
+                completableFuture.completeExceptionally(failure(f));
+            } else {
+                completableFuture.complete(f.getValue());
+            }
+        });
+        propagateCancel(completableFuture, future);
+        return completableFuture;
+    }
+
+    public static <Result extends Failable, V, U> CompletableFuture<U> thenApply(PrecipiceFuture<Result, V> future,
+                                                                                 Function<? super V, ? extends U> fn) {
+        CompletableFuture<U> completableFuture = new CompletableFuture<>();
+        onComplete(future, (result, f) -> {
+            if (isError(result, f)) {
+                completableFuture.completeExceptionally(failure(f));
+            } else {
+                try {
+                    completableFuture.complete(fn.apply(f.getValue()));
+                } catch (Throwable e) {
+                    completableFuture.completeExceptionally(e);
+                }
+            }
+        });
+        propagateCancel(completableFuture, future);
+        return completableFuture;
+    }
+
+    public static <Result extends Failable, V, U> CompletableFuture<U> thenCompose(PrecipiceFuture<Result, V> future,
+                                                                                   Function<? super V, ? extends CompletionStage<U>> fn) {
+        CompletableFuture<U> completableFuture = new CompletableFuture<>();
+        onComplete(future, (result, f) -> {
+            if (isError(result, f)) {
+                completableFuture.completeExceptionally(failure(f));
+                return;
+            }
+            try {
+                fn.apply(f.getValue()).whenComplete((value, error) -> {
+                    if (error != null) {
+                        completableFuture.completeExceptionally(error);
+                    } else {
+                        completableFuture.complete(value);
+                    }
+                });
+            } catch (Throwable e) {
+                completableFuture.completeExceptionally(e);
+            }
+        });
+        propagateCancel(completableFuture, future);
+        return completableFuture;
+    }
+
+    /**
+     * Returns a future that completes when all of the supplied futures complete. If any future fails the
+     * returned future completes exceptionally with the first failure observed.
+     *
+     * @param futures the futures
+     * @return a future completed when all futures are complete
+     */
+    public static CompletableFuture<Void> allOf(PrecipiceFuture<?, ?>... futures) {
+        CompletableFuture<Void> completableFuture = new CompletableFuture<>();
+        if (futures.length == 0) {
+            completableFuture.complete(null);
+            return completableFuture;
+        }
+
+        AtomicInteger remaining = new AtomicInteger(futures.length);
+        for (PrecipiceFuture<?, ?> future : futures) {
+            allOfMember(future, completableFuture, remaining);
+        }
+        propagateCancel(completableFuture, futures);
+        return completableFuture;
+    }
+
+    /**
+     * Completes the promise when the stage completes. A normal completion completes the promise with the
+     * success result and an exceptional completion completes it with the error result.
+     *
+     * @param stage         the stage
+     * @param promise       the promise to complete
+     * @param successResult the result for normal completion
+     * @param errorResult   the result for exceptional completion
+     */
+    public static <Result extends Failable, V> void completeFrom(CompletionStage<? extends V> stage,
+                                                                 PrecipicePromise<Result, V> promise,
+                                                                 Result successResult, Result errorResult) {
+        stage.whenComplete((value, error) -> {
+            if (error != null) {
+                promise.completeExceptionally(errorResult, error);
+            } else {
+                promise.complete(successResult, value);
+            }
+        });
+    }
+
+    private static <Result extends Failable, V> void allOfMember(PrecipiceFuture<Result, V> future,
+                                                                 CompletableFuture<Void> completableFuture,
+                                                                 AtomicInteger remaining) {
+        onComplete(future, (result, f) -> {
+            if (isError(result, f)) {
+                completableFuture.completeExceptionally(failure(f));
+            } else if (remaining.decrementAndGet() == 0) {
+                completableFuture.complete(null);
+            }
+        });
+    }
+
+    private static <Result extends Failable, V> void onComplete(PrecipiceFuture<Result, V> future,
+                                                                PrecipiceFunction<Result, PrecipiceFuture<Result, V>> fn) {
+        if (future instanceof Eventual) {
+            ((Eventual<Result, V>) future).onComplete(fn);
+        } else {
+            future.onSuccess((result, value) -> fn.apply(result, future));
+            future.onError((result, error) -> fn.apply(result, future));
+        }
+    }
+
+    private static void propagateCancel(CompletableFuture<?> completableFuture, PrecipiceFuture<?, ?>... futures) {
+        completableFuture.whenComplete((value, error) -> {
+            if (completableFuture.isCancelled()) {
+                for (PrecipiceFuture<?, ?> future : futures) {
+                    future.cancel(true);
+                }
+            }
+        });
+    }
+
+    // Results that are not failures, such as a cancellation, can still complete a future exceptionally.
+    private static boolean isError(Failable result, PrecipiceFuture<?, ?> future) {
+        return result.isFailure() || future.getError() != null || future.isCancelled();
+    }
+
+    private static Throwable failure(PrecipiceFuture<?, ?> future) {
+        Throwable error = future.getError();
+        if (error != null) {
+            return error;
+        } else if (future.isCancelled()) {
+            return new CancellationException();
+        } else {
+            return new IllegalStateException("Completed with failure result: " + future.getResult());
+        }
+    }
+}
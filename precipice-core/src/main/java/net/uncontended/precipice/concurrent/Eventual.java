@@ -1,5 +1,5 @@
 /*
- * Copyright 2014 Timothy Brooks
+ * Copyright 2016 Timothy Brooks
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -20,23 +20,48 @@ package net.uncontended.precipice.concurrent;
 import net.uncontended.precipice.*;
 
 import java.util.concurrent.*;
-import java.util.concurrent.atomic.AtomicReference;
-
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A promise and future backed by a single volatile state word. Callbacks and blocked threads are kept
+ * in a lock-free stack that is only allocated into when a callback is registered or a thread actually
+ * blocks. Any number of success and error callbacks may be registered.
+ */
 public class Eventual<Result extends Failable, V> implements PrecipiceFuture<Result, V>, PrecipicePromise<Result, V>,
         ExecutionContext {
 
+    private static final int PENDING = 0;
+    private static final int COMPLETING = 1;
+    private static final int DONE = 2;
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicIntegerFieldUpdater<Eventual> STATE =
+            AtomicIntegerFieldUpdater.newUpdater(Eventual.class, "state");
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<Eventual, Node> STACK =
+            AtomicReferenceFieldUpdater.newUpdater(Eventual.class, Node.class, "stack");
+    private static final AtomicReferenceFieldUpdater<Node, Node> NEXT =
+            AtomicReferenceFieldUpdater.newUpdater(Node.class, Node.class, "next");
+    private static final int ON_SUCCESS = 0;
+    private static final int ON_ERROR = 1;
+    private static final int ON_COMPLETE = 2;
+    private static final Node COMPLETED = new Node(null, null, ON_COMPLETE);
+
     private final long permitCount;
     private final long startNanos;
     private final Completable<Result, V> wrappedPromise;
-    private volatile V value;
-    private volatile Throwable throwable;
+    private volatile int state = PENDING;
+    private volatile Node stack;
     private volatile Cancellable cancellable;
     private volatile boolean isCancelled = false;
-    private final CountDownLatch latch = new CountDownLatch(1);
-    private final AtomicReference<Result> result = new AtomicReference<>(null);
-    private final AtomicReference<PrecipiceFunction<Result, V>> successCallback = new AtomicReference<>();
-    private final AtomicReference<PrecipiceFunction<Result, Throwable>> errorCallback = new AtomicReference<>();
+    private Result result;
+    private V value;
+    private Throwable throwable;
+    private boolean exceptional;
     private PrecipiceFunction<Result, ExecutionContext> internalCallback;
+    private Executor callbackExecutor;
 
     public Eventual() {
         this(0L);
@@ -62,40 +87,27 @@ public class Eventual<Result extends Failable, V> implements PrecipiceFuture<Res
 
     @Override
     public boolean complete(Result result, V value) {
-        if (this.result.get() == null) {
-            if (this.result.compareAndSet(null, result)) {
-                this.value = value;
-                executeInternalCallback(result);
-                latch.countDown();
-                PrecipiceFunction<Result, V> cb = successCallback.get();
-                if (cb != null && successCallback.compareAndSet(cb, null)) {
-                    cb.apply(result, value);
-                }
-                if (wrappedPromise != null) {
-                    wrappedPromise.complete(result, value);
-                }
-                return true;
-            }
+        if (state == PENDING && STATE.compareAndSet(this, PENDING, COMPLETING)) {
+            this.result = result;
+            this.value = value;
+            executeInternalCallback(result);
+            state = DONE;
+            dispatchCallbacks(releaseStack(), false);
+            return true;
         }
         return false;
     }
 
     @Override
     public boolean completeExceptionally(Result result, Throwable exception) {
-        if (this.result.get() == null) {
-            if (this.result.compareAndSet(null, result)) {
-                throwable = exception;
-                executeInternalCallback(result);
-                latch.countDown();
-                PrecipiceFunction<Result, Throwable> cb = errorCallback.get();
-                if (cb != null && errorCallback.compareAndSet(cb, null)) {
-                    cb.apply(result, exception);
-                }
-                if (wrappedPromise != null) {
-                    wrappedPromise.completeExceptionally(result, exception);
-                }
-                return true;
-            }
+        if (state == PENDING && STATE.compareAndSet(this, PENDING, COMPLETING)) {
+            this.result = result;
+            throwable = exception;
+            exceptional = true;
+            executeInternalCallback(result);
+            state = DONE;
+            dispatchCallbacks(releaseStack(), true);
+            return true;
         }
         return false;
     }
@@ -112,26 +124,14 @@ public class Eventual<Result extends Failable, V> implements PrecipiceFuture<Res
 
     @Override
     public V get() throws InterruptedException, ExecutionException {
-        latch.await();
-        if (value != null) {
-            return value;
-        } else if (isCancelled()) {
-            throw new CancellationException();
-        } else {
-            throw new ExecutionException(throwable);
-        }
+        awaitDone(false, 0L);
+        return report();
     }
 
     @Override
     public V get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
-        if (latch.await(timeout, unit)) {
-            if (value != null) {
-                return value;
-            } else if (isCancelled()) {
-                throw new CancellationException();
-            } else {
-                throw new ExecutionException(throwable);
-            }
+        if (awaitDone(true, unit.toNanos(timeout))) {
+            return report();
         } else {
             throw new TimeoutException();
         }
@@ -139,7 +139,7 @@ public class Eventual<Result extends Failable, V> implements PrecipiceFuture<Res
 
     @Override
     public boolean isDone() {
-        return result.get() != null;
+        return state == DONE;
     }
 
     @Override
@@ -149,7 +149,7 @@ public class Eventual<Result extends Failable, V> implements PrecipiceFuture<Res
 
     @Override
     public boolean cancel(boolean mayInterruptIfRunning) {
-        if (mayInterruptIfRunning && cancellable != null && !isDone()) {
+        if (mayInterruptIfRunning && cancellable != null && state == PENDING) {
             isCancelled = true;
             cancellable.cancel();
             return true;
@@ -160,59 +160,57 @@ public class Eventual<Result extends Failable, V> implements PrecipiceFuture<Res
 
     @Override
     public void await() throws InterruptedException {
-        latch.await();
+        awaitDone(false, 0L);
     }
 
     @Override
     public void await(long duration, TimeUnit unit) throws InterruptedException {
-        latch.await(duration, unit);
+        awaitDone(true, unit.toNanos(duration));
     }
 
     @Override
     public V getValue() {
-        return value;
+        return state == DONE ? value : null;
     }
 
     @Override
     public Throwable getError() {
-        return throwable;
+        return state == DONE ? throwable : null;
     }
 
     @Override
     public void onSuccess(PrecipiceFunction<Result, V> fn) {
-        // TODO: Decide whether it is okay to execute multiple callbacks.
-        Result localResult = result.get();
-        if (localResult != null && !localResult.isFailure()) {
-            fn.apply(localResult, value);
-        } else {
-            if (successCallback.compareAndSet(null, fn)) {
-                Result localResult2 = result.get();
-                if (localResult2 != null && !localResult2.isFailure() && successCallback.compareAndSet(fn, null)) {
-                    fn.apply(localResult2, value);
-                }
+        if (state == DONE || !push(new Node(null, fn, ON_SUCCESS))) {
+            if (!isError()) {
+                fn.apply(result, value);
             }
-
         }
     }
 
     @Override
     public void onError(PrecipiceFunction<Result, Throwable> fn) {
-        Result localResult = result.get();
-        if (localResult != null && localResult.isFailure()) {
-            fn.apply(localResult, throwable);
-        } else {
-            if (errorCallback.compareAndSet(null, fn)) {
-                Result localResult2 = result.get();
-                if (localResult2 != null && localResult2.isFailure() && errorCallback.compareAndSet(fn, null)) {
-                    fn.apply(localResult2, throwable);
-                }
+        if (state == DONE || !push(new Node(null, fn, ON_ERROR))) {
+            if (isError()) {
+                fn.apply(result, throwable);
             }
         }
     }
 
+    /**
+     * Registers a single callback that will be executed with this future as the argument whether
+     * it completes successfully or exceptionally.
+     *
+     * @param fn the callback
+     */
+    public void onComplete(PrecipiceFunction<Result, PrecipiceFuture<Result, V>> fn) {
+        if (state == DONE || !push(new Node(null, fn, ON_COMPLETE))) {
+            fn.apply(result, this);
+        }
+    }
+
     @Override
     public Result getResult() {
-        return result.get();
+        return state == DONE ? result : null;
     }
 
     @Override
@@ -233,9 +231,195 @@ public class Eventual<Result extends Failable, V> implements PrecipiceFuture<Res
         internalCallback = fn;
     }
 
+    /**
+     * Sets the executor that callbacks registered before completion, and the wrapped promise, will be
+     * completed on. By default (or if the executor is null) they run inline on the completing thread.
+     * The internal completion callback always runs inline, and no task is submitted if there is nothing
+     * to run. Callbacks registered after completion run on the registering thread. This must be called
+     * before the eventual is shared with other threads.
+     *
+     * @param executor the executor for callbacks
+     */
+    public void setCallbackExecutor(Executor executor) {
+        callbackExecutor = executor;
+    }
+
     private void executeInternalCallback(Result result) {
         if (internalCallback != null) {
             internalCallback.apply(result, this);
         }
     }
+
+    // A result that is not a failure, such as a cancellation, still completes exceptionally. It is reported to
+    // the error callbacks and never to the success callbacks.
+    private boolean isError() {
+        return exceptional || result.isFailure();
+    }
+
+    private V report() throws ExecutionException {
+        if (!isError()) {
+            return value;
+        } else if (isCancelled() || throwable instanceof CancellationException) {
+            throw new CancellationException();
+        } else {
+            throw new ExecutionException(throwable);
+        }
+    }
+
+    private boolean push(Node node) {
+        for (; ; ) {
+            Node head = stack;
+            if (head == COMPLETED) {
+                return false;
+            }
+            node.next = head;
+            if (STACK.compareAndSet(this, head, node)) {
+                return true;
+            }
+        }
+    }
+
+    private Node releaseStack() {
+        Node head = STACK.getAndSet(this, COMPLETED);
+
+        // Wake waiters and reverse the callbacks so that they run in registration order
+        Node callbacks = null;
+        while (head != null) {
+            Node next = head.next;
+            if (head.callback == null) {
+                Thread waiter = head.waiter;
+                if (waiter != null) {
+                    LockSupport.unpark(waiter);
+                }
+            } else {
+                head.next = callbacks;
+                callbacks = head;
+            }
+            head = next;
+        }
+        return callbacks;
+    }
+
+    private void dispatchCallbacks(final Node callbacks, final boolean exceptional) {
+        if (callbacks == null && wrappedPromise == null) {
+            return;
+        }
+
+        Executor executor = callbackExecutor;
+        if (executor == null) {
+            runCallbacks(callbacks, exceptional);
+        } else {
+            try {
+                executor.execute(() -> runCallbacks(callbacks, exceptional));
+            } catch (RejectedExecutionException e) {
+                runCallbacks(callbacks, exceptional);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void runCallbacks(Node callbacks, boolean exceptional) {
+        int kind = isError() ? ON_ERROR : ON_SUCCESS;
+        for (Node node = callbacks; node != null; node = node.next) {
+            // A failing user callback must not prevent the others, or the wrapped promise, from completing. The
+            // failure is reported to the uncaught exception handler of the thread that ran the callback.
+            try {
+                if (node.kind == ON_COMPLETE) {
+                    ((PrecipiceFunction<Result, PrecipiceFuture<Result, V>>) node.callback).apply(result, this);
+                } else if (node.kind == ON_SUCCESS && kind == ON_SUCCESS) {
+                    ((PrecipiceFunction<Result, V>) node.callback).apply(result, value);
+                } else if (node.kind == ON_ERROR && kind == ON_ERROR) {
+                    ((PrecipiceFunction<Result, Throwable>) node.callback).apply(result, throwable);
+                }
+            } catch (Exception e) {
+                Thread thread = Thread.currentThread();
+                thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+            }
+        }
+
+        if (wrappedPromise != null) {
+            if (exceptional) {
+                wrappedPromise.completeExceptionally(result, throwable);
+            } else {
+                wrappedPromise.complete(result, value);
+            }
+        }
+    }
+
+    private boolean awaitDone(boolean timed, long nanos) throws InterruptedException {
+        long deadline = timed ? System.nanoTime() + nanos : 0L;
+        Node node = null;
+        while (state != DONE) {
+            if (Thread.interrupted()) {
+                if (node != null) {
+                    removeWaiter(node);
+                }
+                throw new InterruptedException();
+            }
+            if (node == null) {
+                node = new Node(Thread.currentThread(), null, ON_COMPLETE);
+                // A failed push means the stack was released, so the state is already done
+                push(node);
+            } else if (timed) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    removeWaiter(node);
+                    return false;
+                }
+                LockSupport.parkNanos(this, remaining);
+            } else {
+                LockSupport.park(this);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Unlinks the node of a waiter that timed out or was interrupted, along with any other dead waiter
+     * nodes, in the manner of {@link FutureTask}. Links are only changed with CAS, so an unlink that races
+     * with {@link #releaseStack()} reversing the callbacks fails and sees the stack as completed on retry.
+     */
+    private void removeWaiter(Node node) {
+        node.waiter = null;
+        retry:
+        for (; ; ) {
+            Node pred = null;
+            Node q = stack;
+            while (q != null && q != COMPLETED) {
+                Node s = q.next;
+                if (q.callback != null || q.waiter != null) {
+                    pred = q;
+                } else if (pred != null) {
+                    if (!NEXT.compareAndSet(pred, q, s) || (pred.callback == null && pred.waiter == null)) {
+                        continue retry;
+                    }
+                } else if (!STACK.compareAndSet(this, q, s)) {
+                    continue retry;
+                }
+                q = s;
+            }
+            return;
+        }
+    }
+
+    int stackSize() {
+        int size = 0;
+        for (Node node = stack; node != null && node != COMPLETED; node = node.next) {
+            ++size;
+        }
+        return size;
+    }
+
+    private static class Node {
+        private volatile Thread waiter;
+        private final PrecipiceFunction<?, ?> callback;
+        private final int kind;
+        volatile Node next;
+
+        private Node(Thread waiter, PrecipiceFunction<?, ?> callback, int kind) {
+            this.waiter = waiter;
+            this.callback = callback;
+            this.kind = kind;
+        }
+    }
 }
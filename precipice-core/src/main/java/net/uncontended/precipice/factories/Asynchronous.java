@@ -62,6 +62,7 @@ public final class Asynchronous {
     getPromise(GuardRail<Result, Rejected> guardRail, long permitNumber, long nanoTime, Completable<Result, R> externalCompletable) {
         Eventual<Result, R> promise = new Eventual<>(permitNumber, nanoTime, externalCompletable);
         promise.internalOnComplete(guardRail.releaseFunction());
+        promise.setCallbackExecutor(guardRail.getCallbackExecutor());
         return promise;
     }
 }
@@ -17,8 +17,13 @@
 
 package net.uncontended.precipice.metrics.latency;
 
+import net.uncontended.precipice.metrics.IntervalIterator;
+import net.uncontended.precipice.metrics.Rolling;
 import net.uncontended.precipice.metrics.tools.Allocator;
+import org.HdrHistogram.Histogram;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.concurrent.TimeUnit;
 
 public final class Latency {
@@ -26,6 +31,87 @@ public final class Latency {
     private Latency() {
     }
 
+    /**
+     * Returns a percentile across all intervals of a rolling latency. The histograms of the intervals are
+     * merged into one histogram and the percentile is read from it. Callers on a hot path should cache
+     * the result, for example until the current interval changes. Returns 0 if no samples have been
+     * recorded.
+     *
+     * @param latency    the rolling latency
+     * @param metric     the metric to inspect
+     * @param percentile the percentile
+     * @param nanoTime   the current nano time
+     * @param <T>        the metric type
+     * @return the latency in nanos
+     */
+    public static <T extends Enum<T>> long rollingPercentile(Rolling<PartitionedLatency<T>> latency, T metric,
+                                                             double percentile, long nanoTime) {
+        return rollingPercentile(latency, Collections.singletonList(metric), percentile, nanoTime);
+    }
+
+    /**
+     * Returns a percentile across all intervals of a rolling latency and all of the supplied metrics. The
+     * histograms are merged as in {@link #rollingPercentile(Rolling, Enum, double, long)}. Returns 0 if no
+     * samples have been recorded for any of the metrics.
+     *
+     * @param latency    the rolling latency
+     * @param metrics    the metrics to inspect
+     * @param percentile the percentile
+     * @param nanoTime   the current nano time
+     * @param <T>        the metric type
+     * @return the latency in nanos
+     */
+    public static <T extends Enum<T>> long rollingPercentile(Rolling<PartitionedLatency<T>> latency,
+                                                             Collection<T> metrics, double percentile,
+                                                             long nanoTime) {
+        Histogram merged = null;
+        IntervalIterator<PartitionedLatency<T>> intervals = latency.intervals(nanoTime);
+        while (intervals.hasNext()) {
+            PartitionedLatency<T> interval = intervals.next();
+            if (interval.isHDR()) {
+                for (T metric : metrics) {
+                    Histogram histogram = interval.getHistogram(metric);
+                    if (histogram.getTotalCount() > 0) {
+                        if (merged == null) {
+                            merged = new Histogram(histogram.getNumberOfSignificantValueDigits());
+                        }
+                        merged.add(histogram);
+                    }
+                }
+            }
+        }
+        return merged == null ? 0 : merged.getValueAtPercentile(percentile);
+    }
+
+    /**
+     * Returns the mean latency across all intervals of a rolling latency, weighting each interval by its
+     * number of samples. Returns 0 if no samples have been recorded.
+     *
+     * @param latency  the rolling latency
+     * @param metric   the metric to inspect
+     * @param nanoTime the current nano time
+     * @param <T>      the metric type
+     * @return the mean latency in nanos
+     */
+    public static <T extends Enum<T>> double rollingMean(Rolling<PartitionedLatency<T>> latency, T metric,
+                                                         long nanoTime) {
+        double sum = 0;
+        long count = 0;
+        IntervalIterator<PartitionedLatency<T>> intervals = latency.intervals(nanoTime);
+        while (intervals.hasNext()) {
+            PartitionedLatency<T> interval = intervals.next();
+            if (interval.isHDR()) {
+                Histogram histogram = interval.getHistogram(metric);
+                long intervalCount = histogram.getTotalCount();
+                if (intervalCount > 0) {
+                    sum += histogram.getMean() * intervalCount;
+                    count += intervalCount;
+                }
+            }
+        }
+        return count == 0 ? 0 : sum / count;
+    }
+
     public static <T extends Enum<T>> Allocator<PartitionedLatency<T>> concurrentHDRHistogram(Class<T> clazz) {
         return concurrentHDRHistogram(clazz, TimeUnit.HOURS.toNanos(1), 2);
     }
@@ -69,8 +69,10 @@ public class CircularBuffer<T> {
 
         for (; ; ) {
             Slot<T> slot = buffer.get(relativeSlot);
-            if (nanoTime - slot.startNanos >= 0) {
-                if (slot.endNanos - nanoTime > 0) {
+            // An empty slot may be claimed for any time. This allows restored intervals that predate the
+            // construction of this buffer to be installed.
+            if (slot.object == null || nanoTime - slot.startNanos >= 0) {
+                if (slot.object != null && slot.endNanos - nanoTime > 0) {
                     return slot.object;
                 } else {
                     long startNanos = this.startNanos + absoluteSlot * nanosPerSlot;
@@ -97,7 +99,13 @@ public class CircularBuffer<T> {
     }
 
     private long currentAbsoluteSlot(long nanoTime) {
-        return (nanoTime - startNanos) / nanosPerSlot;
+        long diff = nanoTime - startNanos;
+        long slot = diff / nanosPerSlot;
+        return diff < 0 && slot * nanosPerSlot != diff ? slot - 1 : slot;
+    }
+
+    private long remainder(long nanoTime) {
+        return nanoTime - startNanos - currentAbsoluteSlot(nanoTime) * nanosPerSlot;
     }
 
     private static void validateSlotSize(long nanosPerSlot) {
@@ -215,7 +223,7 @@ public class CircularBuffer<T> {
         @Override
         public IntervalIterator<T> reset(long nanoTime) {
             this.nanoTime = nanoTime;
-            this.remainderNanos = (nanoTime - startNanos) % nanosPerSlot;
+            this.remainderNanos = remainder(nanoTime);
 
             currentInterval = nanoTime - (totalSlots - 1) * nanosPerSlot;
             return this;
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2016 Timothy Brooks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.uncontended.precipice.pattern;
+
+import net.uncontended.precipice.Precipice;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A strategy that routes keys to precipices using a consistent hash ring. Each member is
+ * placed on the ring at {@code replicas} points derived from its name, so membership
+ * changes only move the keys owned by the added or removed member. On rejection the
+ * pattern falls through to the next distinct members clockwise on the ring.
+ * <p>
+ * The ring is discretized into a power of two number of slots at construction. Each slot
+ * points to a precomputed preference list, so routing a key is a hash, a table lookup and
+ * an array copy. The preference lists take {@code members * replicas * maxAttempts} ints,
+ * so by default a key falls through to at most three members.
+ */
+public class ConsistentHashBalancer implements KeyedPatternStrategy {
+
+    private static final int DEFAULT_REPLICAS = 100;
+    private static final int DEFAULT_MAX_ATTEMPTS = 3;
+    private static final int MIN_SLOT_BITS = 10;
+
+    private final int size;
+    private final int acquireCount;
+    private final int maxAttempts;
+    private final int slotShift;
+    private final int[] slotToNode;
+    private final int[] preferences;
+
+    public ConsistentHashBalancer(List<String> memberNames) {
+        this(memberNames, 1, Math.min(DEFAULT_MAX_ATTEMPTS, memberNames.size()), DEFAULT_REPLICAS);
+    }
+
+    public ConsistentHashBalancer(List<String> memberNames, int acquireCount, int maxAttempts, int replicas) {
+        this.size = memberNames.size();
+        if (size == 0) {
+            throw new IllegalArgumentException("Cannot create strategy with 0 members.");
+        } else if (acquireCount < 1 || acquireCount > maxAttempts) {
+            throw new IllegalArgumentException("Acquire count must be between 1 and max attempts.");
+        } else if (maxAttempts > size) {
+            throw new IllegalArgumentException("Max attempts cannot be greater than the number of members.");
+        } else if (replicas < 1) {
+            throw new IllegalArgumentException("Replicas must be positive.");
+        }
+        this.acquireCount = acquireCount;
+        this.maxAttempts = maxAttempts;
+
+        int nodeCount = size * replicas;
+        int slotBits = Math.max(MIN_SLOT_BITS, 32 - Integer.numberOfLeadingZeros(nodeCount - 1) + 4);
+        slotBits = Math.min(slotBits, 24);
+        this.slotShift = 64 - slotBits;
+
+        final int[] nodeSlots = new int[nodeCount];
+        final int[] nodeOwners = new int[nodeCount];
+        Integer[] order = new Integer[nodeCount];
+        for (int member = 0; member < size; ++member) {
+            long memberHash = mix(memberNames.get(member).hashCode());
+            for (int replica = 0; replica < replicas; ++replica) {
+                int node = member * replicas + replica;
+                nodeSlots[node] = (int) (mix(memberHash + replica) >>> slotShift);
+                nodeOwners[node] = member;
+                order[node] = node;
+            }
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                int bySlot = Integer.compare(nodeSlots[a], nodeSlots[b]);
+                return bySlot != 0 ? bySlot : Integer.compare(nodeOwners[a], nodeOwners[b]);
+            }
+        });
+
+        preferences = new int[nodeCount * maxAttempts];
+        boolean[] seen = new boolean[size];
+        for (int i = 0; i < nodeCount; ++i) {
+            Arrays.fill(seen, false);
+            int written = 0;
+            for (int j = 0; written < maxAttempts; ++j) {
+                int owner = nodeOwners[order[(i + j) % nodeCount]];
+                if (!seen[owner]) {
+                    seen[owner] = true;
+                    preferences[i * maxAttempts + written++] = owner;
+                }
+            }
+        }
+
+        slotToNode = new int[1 << slotBits];
+        int node = 0;
+        for (int slot = 0; slot < slotToNode.length; ++slot) {
+            while (node < nodeCount && nodeSlots[order[node]] < slot) {
+                ++node;
+            }
+            slotToNode[slot] = node == nodeCount ? 0 : node;
+        }
+    }
+
+    @Override
+    public int nextIndices(Object key, int[] indices) {
+        int slot = (int) (mix(key.hashCode()) >>> slotShift);
+        return copyPreferences(slot, indices);
+    }
+
+    @Override
+    public int nextIndices(int[] indices) {
+        int slot = ThreadLocalRandom.current().nextInt(slotToNode.length);
+        return copyPreferences(slot, indices);
+    }
+
+    @Override
+    public Iterable<Integer> nextIndices() {
+        int[] indices = new int[maxAttempts];
+        int count = nextIndices(indices);
+        return SingleReaderArrayIterable.fromInts(indices, count);
+    }
+
+    @Override
+    public int maxIndices() {
+        return maxAttempts;
+    }
+
+    @Override
+    public int acquireCount() {
+        return acquireCount;
+    }
+
+    private int copyPreferences(int slot, int[] indices) {
+        System.arraycopy(preferences, slotToNode[slot] * maxAttempts, indices, 0, maxAttempts);
+        return maxAttempts;
+    }
+
+    /**
+     * Return the GuardRail names of the precipices, in iteration order, for use as member
+     * names on the ring.
+     *
+     * @param precipices the precipices
+     * @return the member names
+     */
+    public static List<String> memberNames(Collection<? extends Precipice<?, ?>> precipices) {
+        List<String> names = new ArrayList<>(precipices.size());
+        for (Precipice<?, ?> precipice : precipices) {
+            names.add(precipice.guardRail().getName());
+        }
+        return names;
+    }
+
+    private static long mix(long value) {
+        long h = value * 0x9E3779B97F4A7C15L;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
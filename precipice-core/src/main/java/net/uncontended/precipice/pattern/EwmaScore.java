@@ -0,0 +1,137 @@
+/*
+ * Copyright 2016 Timothy Brooks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.uncontended.precipice.pattern;
+
+import net.uncontended.precipice.Failable;
+import net.uncontended.precipice.GuardRail;
+import net.uncontended.precipice.TimedBackPressure;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link TimedBackPressure} that never rejects. It tracks the outstanding requests of a
+ * GuardRail along with a peak-sensitive EWMA of latency and an EWMA of the failure rate.
+ * A latency sample above the current average replaces it immediately, while lower samples
+ * decay it with a time constant of {@code decayNanos}. The resulting {@link #cost()} is used
+ * by {@link PeakEwmaBalancer} to weight selection.
+ *
+ * @param <Rejected> the type for rejection reasons
+ */
+public class EwmaScore<Rejected extends Enum<Rejected>> implements TimedBackPressure<Rejected> {
+
+    private static final double MIN_SUCCESS_RATE = 0.01;
+
+    private final double decayNanos;
+    private final AtomicLong outstanding = new AtomicLong(0);
+    private final AtomicLong latencyBits;
+    private final AtomicLong failureRateBits = new AtomicLong(Double.doubleToRawLongBits(0.0));
+    private final AtomicLong lastUpdateNanos;
+
+    public EwmaScore(long decay, TimeUnit unit, long initialLatency, TimeUnit latencyUnit) {
+        this(decay, unit, initialLatency, latencyUnit, System.nanoTime());
+    }
+
+    public EwmaScore(long decay, TimeUnit unit, long initialLatency, TimeUnit latencyUnit, long nanoTime) {
+        if (decay <= 0) {
+            throw new IllegalArgumentException("Decay must be positive.");
+        } else if (initialLatency <= 0) {
+            throw new IllegalArgumentException("Initial latency must be positive.");
+        }
+        this.decayNanos = unit.toNanos(decay);
+        this.latencyBits = new AtomicLong(Double.doubleToRawLongBits(latencyUnit.toNanos(initialLatency)));
+        this.lastUpdateNanos = new AtomicLong(nanoTime);
+    }
+
+    @Override
+    public Rejected acquirePermit(long number, long nanoTime) {
+        outstanding.getAndAdd(number);
+        return null;
+    }
+
+    @Override
+    public void releasePermit(long number, long nanoTime) {
+        outstanding.getAndAdd(-number);
+    }
+
+    @Override
+    public void releasePermit(long number, Failable result, long nanoTime) {
+        outstanding.getAndAdd(-number);
+        double weight = decayWeight(nanoTime);
+        update(failureRateBits, result.isFailure() ? 1.0 : 0.0, weight);
+    }
+
+    @Override
+    public void releasePermit(long number, Failable result, long startNanos, long nanoTime) {
+        outstanding.getAndAdd(-number);
+        double weight = decayWeight(nanoTime);
+        update(failureRateBits, result.isFailure() ? 1.0 : 0.0, weight);
+
+        double sample = Math.max(nanoTime - startNanos, 0);
+        for (; ; ) {
+            long bits = latencyBits.get();
+            double current = Double.longBitsToDouble(bits);
+            double next = sample > current ? sample : current * weight + sample * (1.0 - weight);
+            if (latencyBits.compareAndSet(bits, Double.doubleToRawLongBits(next))) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public <Result extends Enum<Result> & Failable> void registerGuardRail(GuardRail<Result, Rejected> guardRail) {
+    }
+
+    /**
+     * Return the cost of sending another request to this GuardRail. This is the latency EWMA
+     * scaled by the number of outstanding requests plus one and divided by the success rate.
+     *
+     * @return the cost
+     */
+    public double cost() {
+        double successRate = Math.max(1.0 - failureRate(), MIN_SUCCESS_RATE);
+        return latencyNanos() * (outstanding.get() + 1) / successRate;
+    }
+
+    public double latencyNanos() {
+        return Double.longBitsToDouble(latencyBits.get());
+    }
+
+    public double failureRate() {
+        return Double.longBitsToDouble(failureRateBits.get());
+    }
+
+    public long outstanding() {
+        return outstanding.get();
+    }
+
+    private double decayWeight(long nanoTime) {
+        long last = lastUpdateNanos.getAndSet(nanoTime);
+        long elapsed = Math.max(nanoTime - last, 0);
+        return Math.exp(-elapsed / decayNanos);
+    }
+
+    private static void update(AtomicLong average, double sample, double weight) {
+        for (; ; ) {
+            long bits = average.get();
+            double next = Double.longBitsToDouble(bits) * weight + sample * (1.0 - weight);
+            if (average.compareAndSet(bits, Double.doubleToRawLongBits(next))) {
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2016 Timothy Brooks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.uncontended.precipice.pattern;
+
+/**
+ * A {@link PatternStrategy} that can write the indices to try into a caller-provided
+ * buffer. {@link Pattern} reuses a thread-local buffer with strategies implementing this
+ * interface so that selecting precipices does not allocate or box indices.
+ */
+public interface IntPatternStrategy extends PatternStrategy {
+
+    /**
+     * Write the indices to try, in order, into the buffer.
+     *
+     * @param indices a buffer of at least {@link #maxIndices()} length
+     * @return the number of indices written
+     */
+    int nextIndices(int[] indices);
+
+    /**
+     * Return the maximum number of indices written by {@link #nextIndices(int[])}.
+     *
+     * @return the required buffer length
+     */
+    int maxIndices();
+}
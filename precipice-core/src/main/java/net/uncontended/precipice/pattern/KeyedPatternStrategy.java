@@ -0,0 +1,33 @@
+/*
+ * Copyright 2016 Timothy Brooks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.uncontended.precipice.pattern;
+
+/**
+ * An {@link IntPatternStrategy} that can route on a caller-supplied key. It is used by
+ * {@link Pattern#getPrecipices(Object, long, long)}.
+ */
+public interface KeyedPatternStrategy extends IntPatternStrategy {
+
+    /**
+     * Write the indices to try for the key, in order, into the buffer.
+     *
+     * @param key     the routing key
+     * @param indices a buffer of at least {@link #maxIndices()} length
+     * @return the number of indices written
+     */
+    int nextIndices(Object key, int[] indices);
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2016 Timothy Brooks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.uncontended.precipice.pattern;
+
+import net.uncontended.precipice.BackPressure;
+import net.uncontended.precipice.Precipice;
+import net.uncontended.precipice.semaphore.PrecipiceSemaphore;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.LongSupplier;
+
+/**
+ * A strategy that prefers the precipice with the fewest outstanding requests. Rather than
+ * scanning the entire pool, two distinct precipices are sampled at random and the less
+ * loaded of the two is tried first (the "power of two choices"). The remaining precipices
+ * follow in a random rotation so that a rejection can still fall through to the rest of
+ * the pool.
+ * <p>
+ * Load is the current concurrency level of each precipice's semaphore. If latency estimates
+ * are provided, load is weighted as {@code (concurrencyLevel + 1) * latencyEstimate} so a
+ * slow precipice with few requests is not preferred over a fast one that is slightly busier.
+ */
+public class LeastOutstandingRequests implements IntPatternStrategy {
+
+    private final PrecipiceSemaphore[] semaphores;
+    private final LongSupplier[] latencyEstimates;
+    private final int size;
+    private final int acquireCount;
+
+    public LeastOutstandingRequests(List<? extends PrecipiceSemaphore> semaphores) {
+        this(semaphores, 1);
+    }
+
+    public LeastOutstandingRequests(List<? extends PrecipiceSemaphore> semaphores, int acquireCount) {
+        this(semaphores, null, acquireCount);
+    }
+
+    public LeastOutstandingRequests(List<? extends PrecipiceSemaphore> semaphores,
+                                    List<? extends LongSupplier> latencyEstimates, int acquireCount) {
+        if (semaphores.isEmpty()) {
+            throw new IllegalArgumentException("Cannot create strategy with 0 semaphores.");
+        } else if (latencyEstimates != null && latencyEstimates.size() != semaphores.size()) {
+            throw new IllegalArgumentException("Must provide one latency estimate per semaphore.");
+        } else if (acquireCount < 1 || acquireCount > semaphores.size()) {
+            throw new IllegalArgumentException("Acquire count must be between 1 and the number of semaphores.");
+        }
+        this.size = semaphores.size();
+        this.acquireCount = acquireCount;
+        this.semaphores = semaphores.toArray(new PrecipiceSemaphore[size]);
+        if (latencyEstimates != null) {
+            this.latencyEstimates = latencyEstimates.toArray(new LongSupplier[size]);
+        } else {
+            this.latencyEstimates = null;
+        }
+    }
+
+    @Override
+    public Iterable<Integer> nextIndices() {
+        int[] indices = new int[size];
+        int count = nextIndices(indices);
+        return SingleReaderArrayIterable.fromInts(indices, count);
+    }
+
+    @Override
+    public int nextIndices(int[] orderToTry) {
+        if (size == 1) {
+            orderToTry[0] = 0;
+            return 1;
+        }
+
+        Random random = ThreadLocalRandom.current();
+        int first = random.nextInt(size);
+        int second = random.nextInt(size - 1);
+        if (second >= first) {
+            ++second;
+        }
+
+        if (load(second) < load(first)) {
+            int temp = first;
+            first = second;
+            second = temp;
+        }
+        orderToTry[0] = first;
+        orderToTry[1] = second;
+
+        int start = random.nextInt(size);
+        int j = 2;
+        for (int i = 0; i < size; ++i) {
+            int index = (start + i) % size;
+            if (index != first && index != second) {
+                orderToTry[j++] = index;
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public int maxIndices() {
+        return size;
+    }
+
+    @Override
+    public int acquireCount() {
+        return acquireCount;
+    }
+
+    private long load(int index) {
+        long outstanding = semaphores[index].currentConcurrencyLevel();
+        if (latencyEstimates == null) {
+            return outstanding;
+        }
+        return (outstanding + 1) * Math.max(latencyEstimates[index].getAsLong(), 1);
+    }
+
+    /**
+     * Collect the {@link PrecipiceSemaphore} back pressure from the guard rail of each
+     * precipice, in iteration order, so that indices line up with a {@link Pattern} built
+     * from the same collection.
+     *
+     * @param precipices the precipices
+     * @return the semaphores
+     */
+    public static List<PrecipiceSemaphore> semaphores(Collection<? extends Precipice<?, ?>> precipices) {
+        List<PrecipiceSemaphore> semaphores = new ArrayList<>(precipices.size());
+        for (Precipice<?, ?> precipice : precipices) {
+            PrecipiceSemaphore semaphore = null;
+            for (BackPressure<?> backPressure : precipice.guardRail().getBackPressure().values()) {
+                if (backPressure instanceof PrecipiceSemaphore) {
+                    semaphore = (PrecipiceSemaphore) backPressure;
+                    break;
+                }
+            }
+            if (semaphore == null) {
+                throw new IllegalArgumentException("Precipice " + precipice.guardRail().getName() +
+                        " does not have a PrecipiceSemaphore back pressure.");
+            }
+            semaphores.add(semaphore);
+        }
+        return semaphores;
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2016 Timothy Brooks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.uncontended.precipice.pattern;
+
+import java.util.concurrent.TimeUnit;
+
+public class OutlierEjectionConfig {
+
+    public final int failurePercentageDelta;
+    public final double latencyMultiplier;
+    public final double latencyPercentile;
+    public final long sampleSizeThreshold;
+    public final int maxEjectedPercentage;
+    public final long ejectionNanos;
+
+    public OutlierEjectionConfig(int failurePercentageDelta, double latencyMultiplier, double latencyPercentile,
+                                 long sampleSizeThreshold, int maxEjectedPercentage, long ejectionMillis) {
+        this.failurePercentageDelta = failurePercentageDelta;
+        this.latencyMultiplier = latencyMultiplier;
+        this.latencyPercentile = latencyPercentile;
+        this.sampleSizeThreshold = sampleSizeThreshold;
+        this.maxEjectedPercentage = maxEjectedPercentage;
+        this.ejectionNanos = TimeUnit.MILLISECONDS.toNanos(ejectionMillis);
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2016 Timothy Brooks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.uncontended.precipice.pattern;
+
+public class OutlierEjectionConfigBuilder {
+    public int failurePercentageDelta = 20;
+    public double latencyMultiplier = 3.0;
+    public double latencyPercentile = 90.0;
+    public long sampleSizeThreshold = 10;
+    public int maxEjectedPercentage = 20;
+    public long ejectionMillis = 30000;
+
+    public OutlierEjectionConfigBuilder failurePercentageDelta(int failurePercentageDelta) {
+        this.failurePercentageDelta = failurePercentageDelta;
+        return this;
+    }
+
+    public OutlierEjectionConfigBuilder latencyMultiplier(double latencyMultiplier) {
+        this.latencyMultiplier = latencyMultiplier;
+        return this;
+    }
+
+    public OutlierEjectionConfigBuilder latencyPercentile(double latencyPercentile) {
+        this.latencyPercentile = latencyPercentile;
+        return this;
+    }
+
+    public OutlierEjectionConfigBuilder sampleSizeThreshold(long sampleSizeThreshold) {
+        this.sampleSizeThreshold = sampleSizeThreshold;
+        return this;
+    }
+
+    public OutlierEjectionConfigBuilder maxEjectedPercentage(int maxEjectedPercentage) {
+        this.maxEjectedPercentage = maxEjectedPercentage;
+        return this;
+    }
+
+    public OutlierEjectionConfigBuilder ejectionMillis(long ejectionMillis) {
+        this.ejectionMillis = ejectionMillis;
+        return this;
+    }
+
+    public OutlierEjectionConfig build() {
+        return new OutlierEjectionConfig(failurePercentageDelta, latencyMultiplier, latencyPercentile,
+                sampleSizeThreshold, maxEjectedPercentage, ejectionMillis);
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright 2016 Timothy Brooks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.uncontended.precipice.pattern;
+
+import net.uncontended.precipice.Failable;
+import net.uncontended.precipice.GuardRail;
+import net.uncontended.precipice.Precipice;
+import net.uncontended.precipice.circuit.BackgroundTask;
+import net.uncontended.precipice.metrics.IntervalIterator;
+import net.uncontended.precipice.metrics.counts.PartitionedCount;
+import net.uncontended.precipice.metrics.counts.RollingCounts;
+import net.uncontended.precipice.metrics.counts.WritableCounts;
+import net.uncontended.precipice.metrics.latency.Latency;
+import net.uncontended.precipice.metrics.latency.RollingLatency;
+import net.uncontended.precipice.metrics.latency.WritableLatency;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Ejects members of a {@link Pattern} whose rolling failure rate or latency is an outlier
+ * relative to the median of the pool. On each {@link #tick(long)} the rolling result counts
+ * and latency of each member's GuardRail are compared with the pool median. A member is an
+ * outlier if its failure percentage exceeds the median by {@code failurePercentageDelta} or
+ * its latency percentile exceeds the median by {@code latencyMultiplier}. The worst outliers
+ * are ejected for {@code ejectionMillis}, up to {@code maxEjectedPercentage} of the pool.
+ * <p>
+ * Members without a {@link RollingCounts} result counts, or with fewer than
+ * {@code sampleSizeThreshold} results, are never considered outliers. Members without successful
+ * latency samples are only compared by failure rate.
+ *
+ * @param <Result> the result type
+ * @param <C>      the precipice type
+ */
+public class OutlierEjector<Result extends Enum<Result> & Failable, C extends Precipice<Result, ?>>
+        implements BackgroundTask {
+
+    private final Pattern<Result, C> pattern;
+    private final OutlierEjectionConfig config;
+    private final Map<C, Long> ejectedUntil = new IdentityHashMap<>();
+
+    public OutlierEjector(Pattern<Result, C> pattern, OutlierEjectionConfig config) {
+        this.pattern = pattern;
+        this.config = config;
+    }
+
+    @Override
+    public synchronized void tick(long nanoTime) {
+        // Members restored by this tick are not reconsidered until the next one, as their rolling
+        // health still reflects the period that got them ejected.
+        Map<C, Boolean> restored = new IdentityHashMap<>();
+        Iterator<Map.Entry<C, Long>> iterator = ejectedUntil.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<C, Long> entry = iterator.next();
+            if (nanoTime - entry.getValue() >= 0) {
+                pattern.setEjected(entry.getKey(), false);
+                restored.put(entry.getKey(), Boolean.TRUE);
+                iterator.remove();
+            } else if (!pattern.isEjected(entry.getKey())) {
+                // The member was removed from the pattern, or restored by someone else.
+                iterator.remove();
+            }
+        }
+
+        List<C> members = pattern.getAllPrecipices();
+        int size = members.size();
+        List<Health<C>> eligible = new ArrayList<>(size);
+        for (C member : members) {
+            if (!ejectedUntil.containsKey(member) && !restored.containsKey(member)) {
+                Health<C> health = health(member, nanoTime);
+                if (health != null) {
+                    eligible.add(health);
+                }
+            }
+        }
+        if (eligible.size() < 2) {
+            return;
+        }
+
+        double medianFailureRate = median(eligible, true);
+        double medianLatency = median(eligible, false);
+        List<Health<C>> outliers = new ArrayList<>();
+        for (Health<C> health : eligible) {
+            double failureScore = config.failurePercentageDelta > 0 ?
+                    (health.failureRate - medianFailureRate) * 100 / config.failurePercentageDelta : 0;
+            double latencyScore = medianLatency > 0 && health.latency > 0 ?
+                    health.latency / (medianLatency * config.latencyMultiplier) : 0;
+            health.score = Math.max(failureScore, latencyScore);
+            if (health.score >= 1.0) {
+                outliers.add(health);
+            }
+        }
+
+        outliers.sort((a, b) -> Double.compare(b.score, a.score));
+        int maxEjected = maxEjected(size);
+        for (Health<C> outlier : outliers) {
+            if (ejectedUntil.size() >= maxEjected) {
+                break;
+            }
+            if (pattern.setEjected(outlier.member, true)) {
+                ejectedUntil.put(outlier.member, nanoTime + config.ejectionNanos);
+            }
+        }
+    }
+
+    public synchronized boolean isEjected(C member) {
+        return ejectedUntil.containsKey(member);
+    }
+
+    private int maxEjected(int size) {
+        if (config.maxEjectedPercentage <= 0 || size < 2) {
+            return 0;
+        }
+        return Math.max(1, size * config.maxEjectedPercentage / 100);
+    }
+
+    private Health<C> health(C member, long nanoTime) {
+        GuardRail<Result, ?> guardRail = member.guardRail();
+        WritableCounts<Result> resultCounts = guardRail.getResultCounts();
+        if (!(resultCounts instanceof RollingCounts)) {
+            return null;
+        }
+
+        long total = 0;
+        long failures = 0;
+        Result[] results = resultCounts.getMetricClazz().getEnumConstants();
+        IntervalIterator<PartitionedCount<Result>> intervals = ((RollingCounts<Result>) resultCounts).intervals(nanoTime);
+        while (intervals.hasNext()) {
+            PartitionedCount<Result> interval = intervals.next();
+            for (Result result : results) {
+                long count = interval.getCount(result);
+                total += count;
+                if (result.isFailure()) {
+                    failures += count;
+                }
+            }
+        }
+        if (total < config.sampleSizeThreshold || total == 0) {
+            return null;
+        }
+
+        long latency = 0;
+        WritableLatency<Result> resultLatency = guardRail.getResultLatency();
+        if (resultLatency instanceof RollingLatency) {
+            List<Result> successes = new ArrayList<>(results.length);
+            for (Result result : results) {
+                if (result.isSuccess()) {
+                    successes.add(result);
+                }
+            }
+            latency = Latency.rollingPercentile((RollingLatency<Result>) resultLatency, successes,
+                    config.latencyPercentile, nanoTime);
+        }
+        return new Health<>(member, (double) failures / total, latency);
+    }
+
+    // Members without latency samples report 0 and are left out of the latency median.
+    private static <C> double median(List<Health<C>> healths, boolean failureRate) {
+        double[] values = new double[healths.size()];
+        int count = 0;
+        for (Health<C> health : healths) {
+            if (failureRate) {
+                values[count++] = health.failureRate;
+            } else if (health.latency > 0) {
+                values[count++] = health.latency;
+            }
+        }
+        if (count == 0) {
+            return 0;
+        }
+        Arrays.sort(values, 0, count);
+        int middle = count / 2;
+        return count % 2 == 1 ? values[middle] : (values[middle - 1] + values[middle]) / 2;
+    }
+
+    private static class Health<C> {
+        private final C member;
+        private final double failureRate;
+        private final long latency;
+        private double score;
+
+        private Health(C member, double failureRate, long latency) {
+            this.member = member;
+            this.failureRate = failureRate;
+            this.latency = latency;
+        }
+    }
+}
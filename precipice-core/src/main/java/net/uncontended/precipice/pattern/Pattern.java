@@ -14,7 +14,6 @@
  * limitations under the License.
  *
  */
-
 package net.uncontended.precipice.pattern;
 
 import net.uncontended.precipice.Failable;
@@ -22,32 +21,26 @@ import net.uncontended.precipice.GuardRail;
 import net.uncontended.precipice.Precipice;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 public class Pattern<Result extends Enum<Result> & Failable, C extends Precipice<Result, ?>> {
 
-    private final List<C> pool;
-
-    private final PatternStrategy strategy;
     private final SequenceFactory<C> sequenceFactory;
+    private final ThreadLocal<int[]> indexBuffer = ThreadLocal.withInitial(() -> new int[0]);
+    private volatile Membership<C> membership;
 
     public Pattern(Collection<C> precipices, PatternStrategy strategy) {
         this(precipices, strategy, new AllocatingSequenceFactory<C>());
     }
 
     public Pattern(Collection<C> precipices, PatternStrategy strategy, SequenceFactory<C> sequenceFactory) {
-        if (precipices.isEmpty()) {
-            throw new IllegalArgumentException("Cannot create Pattern with 0 Precipices.");
-        } else if (strategy.acquireCount() > precipices.size()) {
-            throw new IllegalArgumentException("Attempt count cannot be greater than the number of precipices.");
-        }
-
-        List<C> pool = new ArrayList<>(precipices.size());
-        pool.addAll(precipices);
-        this.pool = pool;
-        this.strategy = strategy;
         this.sequenceFactory = sequenceFactory;
+        this.membership = new Membership<>(precipices, strategy);
     }
 
     public Sequence<C> getPrecipices(long permits) {
@@ -55,35 +48,224 @@ public class Pattern<Result extends Enum<Result> & Failable, C extends Precipice
     }
 
     public Sequence<C> getPrecipices(long permits, long nanoTime) {
-        WritableSequence<C> precipices = getPrecipiceSequence();
-        setupSequence(permits, nanoTime, precipices);
+        Membership<C> membership = this.membership;
+        WritableSequence<C> precipices = getPrecipiceSequence(membership);
+        setupSequence(membership, permits, nanoTime, precipices);
+
+        return precipices;
+    }
+
+    public Sequence<C> getPrecipices(Object key, long permits) {
+        return getPrecipices(key, permits, System.nanoTime());
+    }
+
+    /**
+     * Return a sequence of precipices selected for the key. The strategy must be a
+     * {@link KeyedPatternStrategy}.
+     *
+     * @param key      the routing key
+     * @param permits  the number of permits to acquire from each precipice
+     * @param nanoTime currentInterval nano time
+     * @return the precipices that permits were acquired from
+     */
+    public Sequence<C> getPrecipices(Object key, long permits, long nanoTime) {
+        Membership<C> membership = this.membership;
+        if (membership.keyedStrategy == null) {
+            throw new UnsupportedOperationException("Strategy does not support keyed selection.");
+        }
+        WritableSequence<C> precipices = getPrecipiceSequence(membership);
+        int[] indices = getIndexBuffer(membership.keyedStrategy);
+        int count = membership.keyedStrategy.nextIndices(key, indices);
+        acquireFromIndices(membership, indices, count, permits, nanoTime, precipices);
 
         return precipices;
     }
 
     public List<C> getAllPrecipices() {
-        return pool;
+        return membership.pool;
     }
 
-    private void setupSequence(long permits, long nanoTime, WritableSequence<C> precipices) {
+    public PatternStrategy getStrategy() {
+        return membership.strategy;
+    }
+
+    /**
+     * Atomically replace the precipices and the strategy used to select between them. Calls
+     * that began before the update finish against the previous members. The precipices that
+     * are no longer members are returned so that the caller can drain them once the permits
+     * already acquired from them have been released.
+     * <p>
+     * The strategy must index the new collection. Stateful strategies can carry their state
+     * over by sharing it with the new strategy (for example, the counter of a
+     * {@link RoundRobinLoadBalancer} or the {@link EwmaScore} of members that remain).
+     *
+     * @param precipices the new members
+     * @param strategy   the strategy for the new members
+     * @return the removed members
+     */
+    public synchronized List<C> updatePrecipices(Collection<C> precipices, PatternStrategy strategy) {
+        Membership<C> previous = this.membership;
+        Membership<C> next = new Membership<>(precipices, strategy);
+
+        Map<C, Boolean> retained = new IdentityHashMap<>();
+        for (C precipice : next.pool) {
+            retained.put(precipice, Boolean.TRUE);
+        }
+        List<C> removed = new ArrayList<>();
+        for (int i = 0; i < previous.pool.size(); ++i) {
+            C precipice = previous.pool.get(i);
+            if (!retained.containsKey(precipice)) {
+                removed.add(precipice);
+            } else if (previous.ejected != null && previous.ejected[i]) {
+                next = next.withEjected(indexOf(next, precipice), true);
+            }
+        }
+
+        this.membership = next;
+        return removed;
+    }
+
+    /**
+     * Eject or restore a member. Ejected members are skipped when selecting precipices, unless
+     * the strategy's acquire count cannot be met by the members that are not ejected.
+     *
+     * @param precipice the member
+     * @param ejected   whether the member should be ejected
+     * @return false if the precipice is not a member
+     */
+    public synchronized boolean setEjected(C precipice, boolean ejected) {
+        Membership<C> current = this.membership;
+        int index = indexOf(current, precipice);
+        if (index == -1) {
+            return false;
+        }
+        this.membership = current.withEjected(index, ejected);
+        return true;
+    }
+
+    public boolean isEjected(C precipice) {
+        Membership<C> current = this.membership;
+        int index = indexOf(current, precipice);
+        return index != -1 && current.ejected != null && current.ejected[index];
+    }
+
+    private void setupSequence(Membership<C> membership, long permits, long nanoTime, WritableSequence<C> precipices) {
+        if (membership.intStrategy != null) {
+            int[] indices = getIndexBuffer(membership.intStrategy);
+            int count = membership.intStrategy.nextIndices(indices);
+            acquireFromIndices(membership, indices, count, permits, nanoTime, precipices);
+        } else {
+            int[] indices = indexBuffer.get();
+            int count = 0;
+            for (Integer index : membership.strategy.nextIndices()) {
+                if (count == indices.length) {
+                    indices = Arrays.copyOf(indices, Math.max(membership.pool.size(), count * 2));
+                    indexBuffer.set(indices);
+                }
+                indices[count++] = index;
+            }
+            acquireFromIndices(membership, indices, count, permits, nanoTime, precipices);
+        }
+    }
+
+    private void acquireFromIndices(Membership<C> membership, int[] indices, int count, long permits, long nanoTime,
+                                    WritableSequence<C> precipices) {
+        int acquireCount = membership.strategy.acquireCount();
+        boolean[] ejected = membership.ejected;
+        boolean skipped = false;
         int acquiredCount = 0;
-        for (Integer index : strategy.nextIndices()) {
-            C precipice = pool.get(index);
-            GuardRail<Result, ?> guardRail = precipice.guardRail();
-            Object rejected = guardRail.acquirePermits(permits, nanoTime);
-            if (rejected == null) {
-                precipices.add(precipice);
+        for (int i = 0; i < count && acquiredCount != acquireCount; ++i) {
+            if (ejected != null && ejected[indices[i]]) {
+                skipped = true;
+            } else if (tryAcquire(membership, indices[i], permits, nanoTime, precipices)) {
                 ++acquiredCount;
             }
-            if (acquiredCount == strategy.acquireCount()) {
-                break;
+        }
+
+        // Fall back to ejected members rather than returning fewer precipices than the strategy asked for.
+        for (int i = 0; skipped && i < count && acquiredCount != acquireCount; ++i) {
+            if (ejected[indices[i]] && tryAcquire(membership, indices[i], permits, nanoTime, precipices)) {
+                ++acquiredCount;
+            }
+        }
+    }
+
+    private boolean tryAcquire(Membership<C> membership, int index, long permits, long nanoTime,
+                               WritableSequence<C> precipices) {
+        C precipice = membership.pool.get(index);
+        GuardRail<Result, ?> guardRail = precipice.guardRail();
+        Object rejected = guardRail.acquirePermits(permits, nanoTime);
+        if (rejected == null) {
+            precipices.add(precipice);
+            return true;
+        }
+        return false;
+    }
+
+    private int[] getIndexBuffer(IntPatternStrategy strategy) {
+        int[] indices = indexBuffer.get();
+        if (indices.length < strategy.maxIndices()) {
+            indices = new int[strategy.maxIndices()];
+            indexBuffer.set(indices);
+        }
+        return indices;
+    }
+
+    private static <C> int indexOf(Membership<C> membership, C precipice) {
+        for (int i = 0; i < membership.pool.size(); ++i) {
+            if (membership.pool.get(i) == precipice) {
+                return i;
             }
         }
+        return -1;
     }
 
-    private WritableSequence<C> getPrecipiceSequence() {
-        return sequenceFactory.getSequence(strategy.acquireCount());
+    private WritableSequence<C> getPrecipiceSequence(Membership<C> membership) {
+        return sequenceFactory.getSequence(membership.strategy.acquireCount());
 
     }
 
+    private static class Membership<C> {
+
+        private final List<C> pool;
+        private final PatternStrategy strategy;
+        private final IntPatternStrategy intStrategy;
+        private final KeyedPatternStrategy keyedStrategy;
+        private final boolean[] ejected;
+
+        private Membership(Collection<C> precipices, PatternStrategy strategy) {
+            if (precipices.isEmpty()) {
+                throw new IllegalArgumentException("Cannot create Pattern with 0 Precipices.");
+            } else if (strategy.acquireCount() > precipices.size()) {
+                throw new IllegalArgumentException("Attempt count cannot be greater than the number of precipices.");
+            }
+
+            List<C> pool = new ArrayList<>(precipices.size());
+            pool.addAll(precipices);
+            this.pool = Collections.unmodifiableList(pool);
+            this.strategy = strategy;
+            this.intStrategy = strategy instanceof IntPatternStrategy ? (IntPatternStrategy) strategy : null;
+            this.keyedStrategy = strategy instanceof KeyedPatternStrategy ? (KeyedPatternStrategy) strategy : null;
+            this.ejected = null;
+        }
+
+        private Membership(Membership<C> membership, boolean[] ejected) {
+            this.pool = membership.pool;
+            this.strategy = membership.strategy;
+            this.intStrategy = membership.intStrategy;
+            this.keyedStrategy = membership.keyedStrategy;
+            this.ejected = ejected;
+        }
+
+        private Membership<C> withEjected(int index, boolean isEjected) {
+            boolean[] ejected = this.ejected == null ? new boolean[pool.size()] : this.ejected.clone();
+            ejected[index] = isEjected;
+            for (boolean flag : ejected) {
+                if (flag) {
+                    return new Membership<>(this, ejected);
+                }
+            }
+            return new Membership<>(this, null);
+        }
+    }
 }
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2016 Timothy Brooks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.uncontended.precipice.pattern;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A strategy that selects the first precipice to try at random, weighted by the inverse of
+ * each member's {@link EwmaScore#cost()}. Faster, less loaded and healthier members receive
+ * proportionally more traffic. The remaining precipices follow in a random rotation so that
+ * a rejection can fall through to the rest of the pool.
+ * <p>
+ * Each {@link EwmaScore} must be registered as back pressure on the GuardRail of the
+ * precipice at the same index in the {@link Pattern}.
+ */
+public class PeakEwmaBalancer implements IntPatternStrategy {
+
+    private final EwmaScore<?>[] scores;
+    private final int size;
+    private final int acquireCount;
+
+    public PeakEwmaBalancer(List<? extends EwmaScore<?>> scores) {
+        this(scores, 1);
+    }
+
+    public PeakEwmaBalancer(List<? extends EwmaScore<?>> scores, int acquireCount) {
+        if (scores.isEmpty()) {
+            throw new IllegalArgumentException("Cannot create strategy with 0 scores.");
+        } else if (acquireCount < 1 || acquireCount > scores.size()) {
+            throw new IllegalArgumentException("Acquire count must be between 1 and the number of scores.");
+        }
+        this.size = scores.size();
+        this.acquireCount = acquireCount;
+        this.scores = scores.toArray(new EwmaScore<?>[size]);
+    }
+
+    @Override
+    public Iterable<Integer> nextIndices() {
+        int[] indices = new int[size];
+        int count = nextIndices(indices);
+        return SingleReaderArrayIterable.fromInts(indices, count);
+    }
+
+    @Override
+    public int nextIndices(int[] orderToTry) {
+        Random random = ThreadLocalRandom.current();
+
+        double totalWeight = 0.0;
+        for (int i = 0; i < size; ++i) {
+            totalWeight += 1.0 / scores[i].cost();
+        }
+
+        // Costs may move between passes, so default to the last member if the target is overshot.
+        double target = random.nextDouble() * totalWeight;
+        int first = size - 1;
+        for (int i = 0; i < size - 1; ++i) {
+            target -= 1.0 / scores[i].cost();
+            if (target < 0) {
+                first = i;
+                break;
+            }
+        }
+        orderToTry[0] = first;
+
+        int start = random.nextInt(size);
+        int j = 1;
+        for (int i = 0; i < size; ++i) {
+            int index = (start + i) % size;
+            if (index != first) {
+                orderToTry[j++] = index;
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public int maxIndices() {
+        return size;
+    }
+
+    @Override
+    public int acquireCount() {
+        return acquireCount;
+    }
+}
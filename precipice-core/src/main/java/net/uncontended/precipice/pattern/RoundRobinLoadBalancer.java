@@ -21,9 +21,7 @@ import java.util.Random;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicLong;
 
-public class RoundRobinLoadBalancer implements PatternStrategy {
-
-    // TODO: The arrays can probably be cached
+public class RoundRobinLoadBalancer implements IntPatternStrategy {
 
     private final long flipPoint;
     private final int size;
@@ -45,22 +43,43 @@ public class RoundRobinLoadBalancer implements PatternStrategy {
         this.flipPoint = Long.MAX_VALUE - maxAcquireAttempts;
     }
 
+    /**
+     * Return a load balancer for a pool of a different size that shares this load balancer's
+     * counter. If this load balancer attempts the entire pool, so will the new one.
+     *
+     * @param size the new pool size
+     * @return the resized load balancer
+     */
+    public RoundRobinLoadBalancer resize(int size) {
+        int attempts = maxAcquireAttempts == this.size ? size : Math.min(maxAcquireAttempts, size);
+        return new RoundRobinLoadBalancer(size, attempts, counter);
+    }
+
     @Override
     public Iterable<Integer> nextIndices() {
+        int[] indices = new int[maxAcquireAttempts];
+        int count = nextIndices(indices);
+        return SingleReaderArrayIterable.fromInts(indices, count);
+    }
+
+    @Override
+    public int nextIndices(int[] indices) {
         long index = counter.getAndIncrement();
 
         if (index >= flipPoint) {
             resetCounter(index);
         }
 
-        SingleReaderArrayIterable iterable = new SingleReaderArrayIterable(maxAcquireAttempts);
-
-        Integer[] orderToTry = iterable.getIndices();
         for (int i = 0; i < maxAcquireAttempts; ++i) {
-            orderToTry[i] = (int) ((index + i) % size);
+            indices[i] = (int) ((index + i) % size);
         }
-        shuffleTail(orderToTry);
-        return iterable;
+        shuffleTail(indices, maxAcquireAttempts);
+        return maxAcquireAttempts;
+    }
+
+    @Override
+    public int maxIndices() {
+        return maxAcquireAttempts;
     }
 
     @Override
@@ -68,15 +87,15 @@ public class RoundRobinLoadBalancer implements PatternStrategy {
         return 1;
     }
 
-    private static void shuffleTail(Integer[] orderToTry) {
+    private static void shuffleTail(int[] orderToTry, int count) {
         int index;
         Random random = ThreadLocalRandom.current();
-        for (int i = orderToTry.length - 1; i > 1; i--) {
+        for (int i = count - 1; i > 1; i--) {
             index = random.nextInt(i) + 1;
             if (index != i) {
-                orderToTry[index] ^= orderToTry[i];
-                orderToTry[i] ^= orderToTry[index];
-                orderToTry[index] ^= orderToTry[i];
+                int temp = orderToTry[index];
+                orderToTry[index] = orderToTry[i];
+                orderToTry[i] = temp;
             }
         }
     }
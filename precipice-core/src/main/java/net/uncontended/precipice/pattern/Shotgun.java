@@ -20,16 +20,16 @@ package net.uncontended.precipice.pattern;
 import java.util.Random;
 import java.util.concurrent.ThreadLocalRandom;
 
-public class Shotgun implements PatternStrategy {
+public class Shotgun implements IntPatternStrategy {
 
     private final int acquireCount;
     private final int serviceCount;
-    private final Integer[] serviceIndices;
+    private final int[] serviceIndices;
 
     public Shotgun(int serviceCount, int acquireCount) {
         this.serviceCount = serviceCount;
         this.acquireCount = acquireCount;
-        this.serviceIndices = new Integer[serviceCount];
+        this.serviceIndices = new int[serviceCount];
         for (int i = 0; i < serviceCount; ++i) {
             serviceIndices[i] = i;
         }
@@ -37,13 +37,21 @@ public class Shotgun implements PatternStrategy {
 
     @Override
     public Iterable<Integer> nextIndices() {
-        SingleReaderArrayIterable iterable = new SingleReaderArrayIterable(serviceCount);
-        Integer[] orderToTry = iterable.getIndices();
+        int[] indices = new int[serviceCount];
+        int count = nextIndices(indices);
+        return SingleReaderArrayIterable.fromInts(indices, count);
+    }
 
-        System.arraycopy(serviceIndices, 0, orderToTry, 0, serviceCount);
-        shuffle(orderToTry);
+    @Override
+    public int nextIndices(int[] indices) {
+        System.arraycopy(serviceIndices, 0, indices, 0, serviceCount);
+        shuffle(indices, serviceCount);
+        return serviceCount;
+    }
 
-        return iterable;
+    @Override
+    public int maxIndices() {
+        return serviceCount;
     }
 
     @Override
@@ -51,15 +59,15 @@ public class Shotgun implements PatternStrategy {
         return acquireCount;
     }
 
-    private static void shuffle(Integer[] orderToTry) {
+    private static void shuffle(int[] orderToTry, int count) {
         int index;
         Random random = ThreadLocalRandom.current();
-        for (int i = orderToTry.length - 1; i > 0; i--) {
+        for (int i = count - 1; i > 0; i--) {
             index = random.nextInt(i + 1);
             if (index != i) {
-                orderToTry[index] ^= orderToTry[i];
-                orderToTry[i] ^= orderToTry[index];
-                orderToTry[index] ^= orderToTry[i];
+                int temp = orderToTry[index];
+                orderToTry[index] = orderToTry[i];
+                orderToTry[i] = temp;
             }
         }
     }
@@ -56,4 +56,13 @@ public class SingleReaderArrayIterable implements Iterator<Integer>, Iterable<In
     public void reset() {
         index = 0;
     }
+
+    public static SingleReaderArrayIterable fromInts(int[] indices, int count) {
+        SingleReaderArrayIterable iterable = new SingleReaderArrayIterable(count);
+        Integer[] boxed = iterable.getIndices();
+        for (int i = 0; i < count; ++i) {
+            boxed[i] = indices[i];
+        }
+        return iterable;
+    }
 }
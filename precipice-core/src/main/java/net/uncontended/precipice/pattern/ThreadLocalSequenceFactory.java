@@ -25,7 +25,7 @@ public class ThreadLocalSequenceFactory<C> implements SequenceFactory<C> {
     public WritableSequence<C> getSequence(int size) {
         WritableSequence<C> precipices = local.get();
 
-        if (precipices == null) {
+        if (precipices == null || precipices.capacity() < size) {
             precipices = new WritableSequence<>(size);
             local.set(precipices);
         }
@@ -53,6 +53,10 @@ public class WritableSequence<E> implements Sequence<E>, Iterator<E> {
         children[count++] = child;
     }
 
+    public int capacity() {
+        return children.length;
+    }
+
     public void reset() {
         index = 0;
         count = 0;
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2016 Timothy Brooks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.uncontended.precipice.rate;
+
+import net.uncontended.precipice.BackPressure;
+import net.uncontended.precipice.Failable;
+import net.uncontended.precipice.GuardRail;
+import net.uncontended.precipice.metrics.IntervalIterator;
+import net.uncontended.precipice.metrics.counts.PartitionedCount;
+import net.uncontended.precipice.metrics.counts.RollingCounts;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A back pressure mechanism that bounds retry amplification. Retries are only permitted while the
+ * number of retries in the trailing window stays under a ratio of the successful executions in that
+ * window (plus a small fixed allowance so that low traffic services can still retry).
+ * <p>
+ * Registered on a guard rail this mechanism never rejects; it records successful executions. Before
+ * retrying, callers acquire a retry permit with {@link #acquireRetryPermit(long, long)}. Counts are
+ * kept in striped counters so that recording is cheap under contention. The budget check and the
+ * recording of a retry are not atomic, so concurrent retries may slightly exceed the budget.
+ */
+public class RetryBudget<Rejected extends Enum<Rejected>> implements BackPressure<Rejected> {
+
+    private final Rejected rejectedReason;
+    private final double retryRatio;
+    private final long minRetriesPerWindow;
+    private final RollingCounts<Attempt> counts;
+
+    public RetryBudget(Rejected rejectedReason, double retryRatio, long minRetriesPerWindow, long window,
+                       TimeUnit timeUnit) {
+        this(rejectedReason, retryRatio, minRetriesPerWindow, window, timeUnit, 10);
+    }
+
+    public RetryBudget(Rejected rejectedReason, double retryRatio, long minRetriesPerWindow, long window,
+                       TimeUnit timeUnit, int slots) {
+        if (retryRatio < 0) {
+            throw new IllegalArgumentException("Retry ratio cannot be negative. Found: " + retryRatio);
+        } else if (minRetriesPerWindow < 0) {
+            throw new IllegalArgumentException("Minimum retries cannot be negative. Found: " + minRetriesPerWindow);
+        } else if (slots < 1 || timeUnit.toNanos(window) < slots) {
+            throw new IllegalArgumentException("Window must be divisible into at least one slot.");
+        }
+        this.rejectedReason = rejectedReason;
+        this.retryRatio = retryRatio;
+        this.minRetriesPerWindow = minRetriesPerWindow;
+        this.counts = new RollingCounts<>(Attempt.class, slots, timeUnit.toNanos(window) / slots);
+    }
+
+    @Override
+    public Rejected acquirePermit(long number, long nanoTime) {
+        return null;
+    }
+
+    @Override
+    public void releasePermit(long number, long nanoTime) {
+    }
+
+    @Override
+    public void releasePermit(long number, Failable result, long nanoTime) {
+        if (result.isSuccess()) {
+            counts.write(Attempt.SUCCESS, number, nanoTime);
+        }
+    }
+
+    @Override
+    public <Result extends Enum<Result> & Failable> void registerGuardRail(GuardRail<Result, Rejected> guardRail) {
+    }
+
+    /**
+     * Acquires permits for retrying a failed execution. If the retry budget is exhausted the rejected
+     * reason is returned. Otherwise the retry is recorded against the budget and null is returned.
+     *
+     * @param number   of retries
+     * @param nanoTime current nanosecond time
+     * @return the reason for rejection if the budget is exhausted
+     */
+    public Rejected acquireRetryPermit(long number, long nanoTime) {
+        long successes = 0;
+        long retries = 0;
+        IntervalIterator<PartitionedCount<Attempt>> intervals = counts.intervals(nanoTime);
+        while (intervals.hasNext()) {
+            PartitionedCount<Attempt> count = intervals.next();
+            successes += count.getCount(Attempt.SUCCESS);
+            retries += count.getCount(Attempt.RETRY);
+        }
+
+        if (retries + number > (long) (successes * retryRatio) + minRetriesPerWindow) {
+            return rejectedReason;
+        }
+        counts.write(Attempt.RETRY, number, nanoTime);
+        return null;
+    }
+
+    public RollingCounts<Attempt> getCounts() {
+        return counts;
+    }
+
+    public enum Attempt {
+        SUCCESS,
+        RETRY
+    }
+}
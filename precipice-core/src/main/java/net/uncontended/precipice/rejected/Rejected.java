@@ -20,5 +20,8 @@ package net.uncontended.precipice.rejected;
 public enum Rejected {
     CIRCUIT_OPEN,
     MAX_CONCURRENCY_LEVEL_EXCEEDED,
-    RATE_LIMIT_EXCEEDED
+    RATE_LIMIT_EXCEEDED,
+    RETRY_BUDGET_EXCEEDED,
+    DEADLINE_EXCEEDED,
+    QUEUE_FULL
 }
@@ -22,11 +22,16 @@ import net.uncontended.precipice.Failable;
 public enum TimeoutableResult implements Failable {
     SUCCESS,
     ERROR,
-    TIMEOUT;
+    TIMEOUT,
+    /**
+     * The execution was abandoned because a redundant execution completed first. It is neither a
+     * success nor a failure.
+     */
+    CANCELLED;
 
     @Override
     public boolean isFailure() {
-        return this != SUCCESS;
+        return this == ERROR || this == TIMEOUT;
     }
 
     @Override
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2016 Timothy Brooks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.uncontended.precipice.timeout;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks the absolute nano time deadline of the execution running on the current thread. Nested calls
+ * inherit the remaining budget of their parent: a child deadline can never be later than the deadline
+ * already in place.
+ * <p>
+ * Deadlines are installed with {@link #set(long)} and removed by passing the returned previous deadline
+ * to {@link #restore(long)}.
+ */
+public final class Deadline {
+
+    public static final long NONE = Long.MIN_VALUE;
+
+    private static final ThreadLocal<long[]> current = new ThreadLocal<long[]>() {
+        @Override
+        protected long[] initialValue() {
+            return new long[]{NONE};
+        }
+    };
+
+    private Deadline() {
+    }
+
+    /**
+     * Returns the deadline of the current thread, or {@link #NONE} if there is no deadline.
+     *
+     * @return the deadline in nanos
+     */
+    public static long current() {
+        return current.get()[0];
+    }
+
+    /**
+     * Installs a deadline on the current thread. If a deadline is already in place the earlier of the
+     * two is kept.
+     *
+     * @param deadlineNanos the absolute deadline
+     * @return the previous deadline, to be passed to {@link #restore(long)}
+     */
+    public static long set(long deadlineNanos) {
+        long[] holder = current.get();
+        long previous = holder[0];
+        holder[0] = earliest(previous, deadlineNanos);
+        return previous;
+    }
+
+    public static void restore(long previousDeadline) {
+        current.get()[0] = previousDeadline;
+    }
+
+    /**
+     * Returns the deadline for a call with the given timeout that starts at the given time, bounded by
+     * the deadline of the current thread.
+     *
+     * @param millisTimeout the timeout of the call
+     * @param nanoTime      the start of the call
+     * @return the deadline in nanos
+     */
+    public static long fromTimeout(long millisTimeout, long nanoTime) {
+        return earliest(current(), nanoTime + TimeUnit.MILLISECONDS.toNanos(millisTimeout));
+    }
+
+    /**
+     * Returns the nanos remaining before the deadline. If there is no deadline, Long.MAX_VALUE is
+     * returned.
+     *
+     * @param deadlineNanos the deadline
+     * @param nanoTime      the current nano time
+     * @return the remaining nanos
+     */
+    public static long remainingNanos(long deadlineNanos, long nanoTime) {
+        return deadlineNanos == NONE ? Long.MAX_VALUE : deadlineNanos - nanoTime;
+    }
+
+    /**
+     * Returns the timeout to use for a call so that it does not outlive the deadline of the current
+     * thread. The returned value is never negative.
+     *
+     * @param millisTimeout the requested timeout
+     * @param nanoTime      the current nano time
+     * @return the timeout in millis
+     */
+    public static long boundTimeout(long millisTimeout, long nanoTime) {
+        long remaining = remainingNanos(current(), nanoTime);
+        if (remaining == Long.MAX_VALUE) {
+            return millisTimeout;
+        }
+        return Math.max(0, Math.min(millisTimeout, TimeUnit.NANOSECONDS.toMillis(remaining)));
+    }
+
+    private static long earliest(long deadline1, long deadline2) {
+        if (deadline1 == NONE) {
+            return deadline2;
+        } else if (deadline2 == NONE) {
+            return deadline1;
+        }
+        return deadline1 - deadline2 < 0 ? deadline1 : deadline2;
+    }
+}
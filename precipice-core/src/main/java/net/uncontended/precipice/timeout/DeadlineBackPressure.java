@@ -0,0 +1,124 @@
+/*
+ * Copyright 2016 Timothy Brooks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.uncontended.precipice.timeout;
+
+import net.uncontended.precipice.BackPressure;
+import net.uncontended.precipice.Failable;
+import net.uncontended.precipice.GuardRail;
+import net.uncontended.precipice.metrics.latency.Latency;
+import net.uncontended.precipice.metrics.latency.RollingLatency;
+import net.uncontended.precipice.metrics.latency.WritableLatency;
+
+import java.util.function.LongUnaryOperator;
+
+/**
+ * A back pressure mechanism that rejects executions that are unlikely to finish before the
+ * {@link Deadline} of the current thread. An execution is rejected if the deadline has passed, or if
+ * the remaining budget is less than a percentile (by default the median) of the successful latency
+ * recorded by the guard rail. The latency estimate is only available when the guard rail uses a
+ * {@link RollingLatency}; otherwise only expired deadlines are rejected. The estimate is computed once
+ * per rolling interval and cached until the interval changes.
+ */
+public class DeadlineBackPressure<Rejected extends Enum<Rejected>> implements BackPressure<Rejected> {
+
+    private final Rejected rejectedReason;
+    private final double percentile;
+    private volatile RollingLatency<?> rolling;
+    private volatile LongUnaryOperator latencyEstimate;
+    private volatile CachedEstimate cachedEstimate;
+
+    public DeadlineBackPressure(Rejected rejectedReason) {
+        this(rejectedReason, 50.0);
+    }
+
+    public DeadlineBackPressure(Rejected rejectedReason, double percentile) {
+        if (percentile <= 0 || percentile > 100) {
+            throw new IllegalArgumentException("Percentile must be in (0, 100]. Found: " + percentile);
+        }
+        this.rejectedReason = rejectedReason;
+        this.percentile = percentile;
+    }
+
+    @Override
+    public Rejected acquirePermit(long number, long nanoTime) {
+        long deadline = Deadline.current();
+        if (deadline == Deadline.NONE) {
+            return null;
+        }
+        long remaining = Deadline.remainingNanos(deadline, nanoTime);
+        if (remaining <= 0) {
+            return rejectedReason;
+        }
+        if (remaining < estimateNanos(nanoTime)) {
+            return rejectedReason;
+        }
+        return null;
+    }
+
+    private long estimateNanos(long nanoTime) {
+        LongUnaryOperator estimate = latencyEstimate;
+        if (estimate == null) {
+            return 0;
+        }
+        Object interval = rolling.current(nanoTime);
+        CachedEstimate cached = cachedEstimate;
+        if (cached == null || cached.interval != interval) {
+            cached = new CachedEstimate(interval, estimate.applyAsLong(nanoTime));
+            cachedEstimate = cached;
+        }
+        return cached.nanos;
+    }
+
+    @Override
+    public void releasePermit(long number, long nanoTime) {
+    }
+
+    @Override
+    public void releasePermit(long number, Failable result, long nanoTime) {
+    }
+
+    @Override
+    public <Result extends Enum<Result> & Failable> void registerGuardRail(GuardRail<Result, Rejected> guardRail) {
+        WritableLatency<Result> latency = guardRail.getResultLatency();
+        if (latency instanceof RollingLatency) {
+            RollingLatency<Result> rolling = (RollingLatency<Result>) latency;
+            Result success = null;
+            for (Result result : rolling.getMetricClazz().getEnumConstants()) {
+                if (result.isSuccess()) {
+                    success = result;
+                    break;
+                }
+            }
+            if (success != null) {
+                Result metric = success;
+                this.rolling = rolling;
+                latencyEstimate = nanoTime -> Latency.rollingPercentile(rolling, metric, percentile, nanoTime);
+            }
+        }
+    }
+
+    private static class CachedEstimate {
+        private final Object interval;
+        private final long nanos;
+
+        private CachedEstimate(Object interval, long nanos) {
+            this.interval = interval;
+            this.nanos = nanos;
+        }
+    }
+}
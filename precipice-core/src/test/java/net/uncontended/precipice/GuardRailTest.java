@@ -146,6 +146,20 @@ public class GuardRailTest {
         inOrder.verify(backPressure2).releasePermit(2L, result, 100L);
     }
 
+    @Test
+    public void timedBackPressureReceivesStartTimeOnRelease() {
+        TimedBackPressure<Rejected> timed = mock(TimedBackPressure.class);
+        builder.addBackPressure(timed);
+        guardRail = builder.build();
+        TestResult result = TestResult.SUCCESS;
+
+        guardRail.releasePermits(2L, result, 10L, 100L);
+
+        verify(timed).releasePermit(2L, result, 10L, 100L);
+        verify(timed, never()).releasePermit(2L, result, 100L);
+        verify(backPressure).releasePermit(2L, result, 100L);
+    }
+
     @Test
     public void releaseWithContextIncrementsMetricsAndCausesBackPressureReleasesToBeCalled() {
         guardRail = builder.build();
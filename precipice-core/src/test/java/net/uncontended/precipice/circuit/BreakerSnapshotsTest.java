@@ -0,0 +1,173 @@
+/*
+ * Copyright 2016 Timothy Brooks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.uncontended.precipice.circuit;
+
+import net.uncontended.precipice.GuardRail;
+import net.uncontended.precipice.GuardRailBuilder;
+import net.uncontended.precipice.metrics.IntervalIterator;
+import net.uncontended.precipice.metrics.counts.Counters;
+import net.uncontended.precipice.metrics.counts.PartitionedCount;
+import net.uncontended.precipice.metrics.counts.RollingCounts;
+import net.uncontended.precipice.metrics.counts.WritableCounts;
+import net.uncontended.precipice.metrics.tools.CircularBuffer;
+import net.uncontended.precipice.metrics.tools.RollingMetrics;
+import net.uncontended.precipice.rejected.Rejected;
+import net.uncontended.precipice.test_utils.TestResult;
+import net.uncontended.precipice.time.Clock;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.when;
+
+public class BreakerSnapshotsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Mock
+    private Clock oldClock;
+    @Mock
+    private Clock newClock;
+    @Mock
+    private WritableCounts<Rejected> rejectedCounts;
+
+    private final long oldNanos = TimeUnit.SECONDS.toNanos(50);
+    private final long newNanos = -TimeUnit.SECONDS.toNanos(20);
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        when(oldClock.nanoTime()).thenReturn(oldNanos);
+        when(oldClock.currentTimeMillis()).thenReturn(1000L);
+        when(newClock.nanoTime()).thenReturn(newNanos);
+        when(newClock.currentTimeMillis()).thenReturn(4000L);
+    }
+
+    @Test
+    public void breakerStateAndCountsAreRebasedOntoNewClock() throws Exception {
+        RollingCounts<TestResult> oldCounts = counts(oldClock, oldNanos - TimeUnit.SECONDS.toNanos(10));
+        DefaultCircuitBreaker<Rejected> oldBreaker = breaker();
+        GuardRail<TestResult, Rejected> oldGuardRail = guardRail(oldCounts, oldBreaker, oldClock);
+
+        oldCounts.write(TestResult.ERROR, 10, oldNanos - TimeUnit.SECONDS.toNanos(2));
+        oldCounts.write(TestResult.SUCCESS, 5, oldNanos);
+        oldBreaker.releasePermit(1, TestResult.ERROR, oldNanos + 1);
+        assertTrue(oldBreaker.isOpen());
+
+        File file = new File(folder.getRoot(), "breakers.snapshot");
+        assertEquals(1, BreakerSnapshots.save(file, Collections.singletonList(oldGuardRail)));
+
+        RollingCounts<TestResult> newCounts = counts(newClock, newNanos);
+        DefaultCircuitBreaker<Rejected> newBreaker = breaker();
+        GuardRail<TestResult, Rejected> newGuardRail = guardRail(newCounts, newBreaker, newClock);
+        assertFalse(newBreaker.isOpen());
+
+        assertEquals(1, BreakerSnapshots.restore(file, Collections.singletonList(newGuardRail)));
+
+        assertTrue(newBreaker.isOpen());
+        assertEquals(Rejected.CIRCUIT_OPEN, newBreaker.acquirePermit(1, newNanos));
+        assertNull(newBreaker.acquirePermit(1, newNanos + TimeUnit.SECONDS.toNanos(7) + 1));
+
+        long errors = 0;
+        long successes = 0;
+        long errorAge = 0;
+        IntervalIterator<PartitionedCount<TestResult>> intervals = newCounts.intervals(newNanos);
+        while (intervals.hasNext()) {
+            long start = intervals.intervalStart();
+            PartitionedCount<TestResult> count = intervals.next();
+            if (count.getCount(TestResult.ERROR) != 0) {
+                errorAge = -start;
+            }
+            errors += count.getCount(TestResult.ERROR);
+            successes += count.getCount(TestResult.SUCCESS);
+        }
+        assertEquals(10, errors);
+        assertEquals(5, successes);
+        assertEquals(TimeUnit.SECONDS.toNanos(5), errorAge);
+    }
+
+    @Test
+    public void restoreIsNoOpWhenFileIsMissing() throws Exception {
+        RollingCounts<TestResult> counts = counts(newClock, newNanos);
+        DefaultCircuitBreaker<Rejected> breaker = breaker();
+        GuardRail<TestResult, Rejected> guardRail = guardRail(counts, breaker, newClock);
+
+        File file = new File(folder.getRoot(), "missing.snapshot");
+        assertEquals(0, BreakerSnapshots.restore(file, Collections.singletonList(guardRail)));
+        assertFalse(breaker.isOpen());
+    }
+
+    @Test
+    public void restoreRefusesGuardRailWithRecordedResults() throws Exception {
+        RollingCounts<TestResult> oldCounts = counts(oldClock, oldNanos - TimeUnit.SECONDS.toNanos(10));
+        GuardRail<TestResult, Rejected> oldGuardRail = guardRail(oldCounts, breaker(), oldClock);
+        oldCounts.write(TestResult.ERROR, 10, oldNanos);
+
+        File file = new File(folder.getRoot(), "breakers.snapshot");
+        assertEquals(1, BreakerSnapshots.save(file, Collections.singletonList(oldGuardRail)));
+
+        RollingCounts<TestResult> newCounts = counts(newClock, newNanos);
+        GuardRail<TestResult, Rejected> newGuardRail = guardRail(newCounts, breaker(), newClock);
+        assertEquals(1, BreakerSnapshots.restore(file, Collections.singletonList(newGuardRail)));
+
+        try {
+            BreakerSnapshots.restore(file, Collections.singletonList(newGuardRail));
+            fail("Expected restore into a guard rail with recorded results to fail");
+        } catch (IllegalStateException e) {
+        }
+
+        long errors = 0;
+        IntervalIterator<PartitionedCount<TestResult>> intervals = newCounts.intervals(newNanos);
+        while (intervals.hasNext()) {
+            errors += intervals.next().getCount(TestResult.ERROR);
+        }
+        assertEquals(10, errors);
+    }
+
+    private static RollingCounts<TestResult> counts(Clock clock, long startNanos) {
+        CircularBuffer<PartitionedCount<TestResult>> buffer = new CircularBuffer<>(60, TimeUnit.SECONDS.toNanos(1),
+                startNanos);
+        return new RollingCounts<>(new RollingMetrics<>(Counters.longAdder(TestResult.class), buffer, clock));
+    }
+
+    private static DefaultCircuitBreaker<Rejected> breaker() {
+        CircuitBreakerConfigBuilder<Rejected> builder = new CircuitBreakerConfigBuilder<>(Rejected.CIRCUIT_OPEN);
+        builder.failureThreshold(5).healthRefreshMillis(0).backOffTimeMillis(10000);
+        return new DefaultCircuitBreaker<>(builder.build());
+    }
+
+    private GuardRail<TestResult, Rejected> guardRail(RollingCounts<TestResult> counts,
+                                                      DefaultCircuitBreaker<Rejected> breaker, Clock clock) {
+        return new GuardRailBuilder<TestResult, Rejected>()
+                .name("snapshot")
+                .resultCounts(counts)
+                .rejectedCounts(rejectedCounts)
+                .addBackPressure(breaker)
+                .clock(clock)
+                .build();
+    }
+}
@@ -28,6 +28,8 @@ import org.junit.Test;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.*;
@@ -199,4 +201,68 @@ public class DefaultCircuitBreakerTest {
         assertNull(circuitBreaker.acquirePermit(1L, 3L));
         assertFalse(circuitBreaker.isOpen());
     }
+
+    @Test
+    public void testListenersAreNotifiedOfTransitions() throws Exception {
+        long trailingPeriodInNanos = TimeUnit.MILLISECONDS.toNanos(1000);
+        HealthSnapshot failureSnapshot = new HealthSnapshot(1000, 6);
+
+        CircuitBreakerConfig<Rejected> breakerConfig = builder.failureThreshold(5).trailingPeriodMillis(1000).build();
+        circuitBreaker = new DefaultCircuitBreaker<>(breakerConfig, healthGauge);
+        circuitBreaker.registerGuardRail(guardRail);
+
+        final BlockingQueue<StateTransition<Rejected>> transitions = new LinkedBlockingQueue<>();
+        circuitBreaker.addStateListener(new StateListener<Rejected>() {
+            @Override
+            public void onTransition(StateTransition<Rejected> transition) {
+                transitions.add(transition);
+            }
+        });
+
+        long nanoTime = 501L * 1000L * 1000L;
+        when(healthGauge.getHealth(trailingPeriodInNanos, TimeUnit.NANOSECONDS, nanoTime)).thenReturn(failureSnapshot);
+        circuitBreaker.releasePermit(1L, TestResult.ERROR, nanoTime);
+        circuitBreaker.releasePermit(1L, TestResult.SUCCESS, nanoTime + 1);
+        circuitBreaker.forceOpen();
+        circuitBreaker.forceOpen();
+
+        StateTransition<Rejected> opened = transitions.poll(5, TimeUnit.SECONDS);
+        assertEquals(CircuitState.CLOSED, opened.from);
+        assertEquals(CircuitState.OPEN, opened.to);
+        assertSame(failureSnapshot, opened.health);
+        assertEquals(nanoTime, opened.nanoTime);
+        assertSame(circuitBreaker, opened.breaker);
+
+        StateTransition<Rejected> closed = transitions.poll(5, TimeUnit.SECONDS);
+        assertEquals(CircuitState.OPEN, closed.from);
+        assertEquals(CircuitState.CLOSED, closed.to);
+        assertEquals(nanoTime + 1, closed.nanoTime);
+
+        StateTransition<Rejected> forced = transitions.poll(5, TimeUnit.SECONDS);
+        assertEquals(CircuitState.CLOSED, forced.from);
+        assertEquals(CircuitState.FORCED_OPEN, forced.to);
+
+        assertNull(transitions.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testListenersAreNotifiedOnTheProvidedDispatcher() throws Exception {
+        TransitionDispatcher dispatcher = new TransitionDispatcher("breaker-test", 16);
+        try {
+            circuitBreaker = new DefaultCircuitBreaker<>(builder.build(), healthGauge, dispatcher);
+
+            final BlockingQueue<String> threadNames = new LinkedBlockingQueue<>();
+            circuitBreaker.addStateListener(new StateListener<Rejected>() {
+                @Override
+                public void onTransition(StateTransition<Rejected> transition) {
+                    threadNames.add(Thread.currentThread().getName());
+                }
+            });
+            circuitBreaker.forceOpen();
+
+            assertEquals("breaker-test-transition-dispatcher", threadNames.poll(5, TimeUnit.SECONDS));
+        } finally {
+            dispatcher.stop();
+        }
+    }
 }
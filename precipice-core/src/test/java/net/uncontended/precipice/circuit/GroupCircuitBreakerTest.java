@@ -0,0 +1,99 @@
+/*
+ * Copyright 2016 Timothy Brooks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.uncontended.precipice.circuit;
+
+import net.uncontended.precipice.GuardRail;
+import net.uncontended.precipice.GuardRailBuilder;
+import net.uncontended.precipice.metrics.counts.RollingCounts;
+import net.uncontended.precipice.metrics.counts.WritableCounts;
+import net.uncontended.precipice.rejected.Rejected;
+import net.uncontended.precipice.test_utils.TestResult;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class GroupCircuitBreakerTest {
+
+    @Mock
+    private WritableCounts<Rejected> rejectedCounts;
+
+    private GroupCircuitBreaker<Rejected> breaker;
+    private final List<GuardRail<TestResult, Rejected>> guardRails = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        CircuitBreakerConfigBuilder<Rejected> builder = new CircuitBreakerConfigBuilder<>(Rejected.CIRCUIT_OPEN);
+        builder.failureThreshold(5).healthRefreshMillis(0).backOffTimeMillis(10000);
+        breaker = new GroupCircuitBreaker<>(builder.build());
+
+        for (int i = 0; i < 3; ++i) {
+            guardRails.add(new GuardRailBuilder<TestResult, Rejected>()
+                    .name("tenant-" + i)
+                    .resultCounts(new RollingCounts<>(TestResult.class, 10, TimeUnit.SECONDS.toNanos(1)))
+                    .rejectedCounts(rejectedCounts)
+                    .addBackPressure(breaker)
+                    .build());
+        }
+    }
+
+    @Test
+    public void failuresAcrossMembersTripTheWholeGroup() {
+        assertEquals(3, breaker.memberCount());
+        long nanoTime = System.nanoTime();
+
+        // Two failures per member is below the threshold individually but not in aggregate
+        for (GuardRail<TestResult, Rejected> guardRail : guardRails) {
+            assertNull(guardRail.acquirePermits(2, nanoTime));
+            guardRail.releasePermits(2, TestResult.ERROR, nanoTime, ++nanoTime);
+        }
+
+        assertTrue(breaker.isOpen());
+        for (GuardRail<TestResult, Rejected> guardRail : guardRails) {
+            assertEquals(Rejected.CIRCUIT_OPEN, guardRail.acquirePermits(1, ++nanoTime));
+        }
+    }
+
+    @Test
+    public void deregisteredMembersDoNotContributeToHealth() {
+        long nanoTime = System.nanoTime();
+        GuardRail<TestResult, Rejected> removed = guardRails.get(0);
+        removed.getResultCounts().write(TestResult.ERROR, 5, nanoTime);
+
+        assertTrue(breaker.deregisterGuardRail(removed));
+        assertFalse(breaker.deregisterGuardRail(removed));
+        assertEquals(2, breaker.memberCount());
+        assertFalse(breaker.memberNames().contains("tenant-0"));
+
+        GuardRail<TestResult, Rejected> remaining = guardRails.get(1);
+        remaining.releasePermits(1, TestResult.ERROR, nanoTime, nanoTime + 1);
+        assertFalse(breaker.isOpen());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void guardRailCannotRegisterTwice() {
+        breaker.registerGuardRail(guardRails.get(0));
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2016 Timothy Brooks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.uncontended.precipice.circuit;
+
+import net.uncontended.precipice.rejected.Rejected;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class TransitionDispatcherTest {
+
+    @Mock
+    private CircuitBreaker<Rejected> breaker;
+
+    private TransitionDispatcher dispatcher;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+    }
+
+    @After
+    public void tearDown() {
+        dispatcher.stop();
+    }
+
+    @Test
+    public void transitionsAreDeliveredInOrderOnDispatchThread() throws Exception {
+        dispatcher = new TransitionDispatcher("test", 1024);
+        StateListeners<Rejected> listeners = new StateListeners<>(dispatcher);
+
+        final int count = 1000;
+        final CountDownLatch latch = new CountDownLatch(count);
+        final List<Long> received = new ArrayList<>();
+        final List<Thread> threads = new ArrayList<>();
+        listeners.add(new StateListener<Rejected>() {
+            @Override
+            public void onTransition(StateTransition<Rejected> transition) {
+                received.add(transition.nanoTime);
+                threads.add(Thread.currentThread());
+                latch.countDown();
+            }
+        });
+
+        HealthSnapshot health = new HealthSnapshot(0, 0);
+        for (long i = 0; i < count; ++i) {
+            listeners.publish(breaker, CircuitState.CLOSED, CircuitState.OPEN, health, i);
+        }
+
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertEquals(0, dispatcher.droppedCount());
+        for (int i = 0; i < count; ++i) {
+            assertEquals(Long.valueOf(i), received.get(i));
+            assertNotSame(Thread.currentThread(), threads.get(i));
+        }
+    }
+
+    @Test
+    public void transitionsAreDroppedWhenBufferIsFull() throws Exception {
+        dispatcher = new TransitionDispatcher("test", 2);
+        StateListeners<Rejected> listeners = new StateListeners<>(dispatcher);
+
+        final CountDownLatch blockDispatch = new CountDownLatch(1);
+        final CountDownLatch dispatchStarted = new CountDownLatch(1);
+        listeners.add(new StateListener<Rejected>() {
+            @Override
+            public void onTransition(StateTransition<Rejected> transition) {
+                dispatchStarted.countDown();
+                try {
+                    blockDispatch.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+
+        HealthSnapshot health = new HealthSnapshot(0, 0);
+        listeners.publish(breaker, CircuitState.CLOSED, CircuitState.OPEN, health, 0L);
+        assertTrue(dispatchStarted.await(10, TimeUnit.SECONDS));
+
+        listeners.publish(breaker, CircuitState.OPEN, CircuitState.CLOSED, health, 1L);
+        listeners.publish(breaker, CircuitState.CLOSED, CircuitState.OPEN, health, 2L);
+        listeners.publish(breaker, CircuitState.OPEN, CircuitState.CLOSED, health, 3L);
+
+        assertEquals(1, dispatcher.droppedCount());
+        blockDispatch.countDown();
+    }
+
+    @Test
+    public void nothingIsDispatchedWithoutListeners() {
+        dispatcher = new TransitionDispatcher("test", 1);
+        StateListeners<Rejected> listeners = new StateListeners<>(dispatcher);
+
+        HealthSnapshot health = new HealthSnapshot(0, 0);
+        listeners.publish(breaker, CircuitState.CLOSED, CircuitState.OPEN, health, 0L);
+        listeners.publish(breaker, CircuitState.OPEN, CircuitState.CLOSED, health, 1L);
+
+        assertEquals(0, dispatcher.droppedCount());
+    }
+
+    @Test
+    public void strayInterruptDoesNotStopDispatchThread() throws Exception {
+        dispatcher = new TransitionDispatcher("test", 16);
+        StateListeners<Rejected> listeners = new StateListeners<>(dispatcher);
+
+        final CountDownLatch first = new CountDownLatch(1);
+        final CountDownLatch second = new CountDownLatch(2);
+        final List<Thread> threads = new ArrayList<>();
+        listeners.add(new StateListener<Rejected>() {
+            @Override
+            public void onTransition(StateTransition<Rejected> transition) {
+                threads.add(Thread.currentThread());
+                first.countDown();
+                second.countDown();
+            }
+        });
+
+        HealthSnapshot health = new HealthSnapshot(0, 0);
+        listeners.publish(breaker, CircuitState.CLOSED, CircuitState.OPEN, health, 0L);
+        assertTrue(first.await(10, TimeUnit.SECONDS));
+
+        threads.get(0).interrupt();
+        Thread.sleep(50);
+        listeners.publish(breaker, CircuitState.OPEN, CircuitState.CLOSED, health, 1L);
+
+        assertTrue(second.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void defaultDispatcherCannotBeStopped() {
+        dispatcher = new TransitionDispatcher("test", 1);
+        TransitionDispatcher.DEFAULT_DISPATCHER.stop();
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2016 Timothy Brooks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.uncontended.precipice.circuit.experimental;
+
+import net.uncontended.precipice.GuardRail;
+import net.uncontended.precipice.circuit.CircuitBreakerConfig;
+import net.uncontended.precipice.circuit.CircuitBreakerConfigBuilder;
+import net.uncontended.precipice.metrics.counts.NoOpCounter;
+import net.uncontended.precipice.metrics.counts.RollingCounts;
+import net.uncontended.precipice.metrics.latency.NoOpLatency;
+import net.uncontended.precipice.rejected.Rejected;
+import net.uncontended.precipice.test_utils.TestResult;
+import net.uncontended.precipice.time.Clock;
+import org.HdrHistogram.Histogram;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.*;
+
+public class RefactoredBreakerTest {
+
+    @Mock
+    private GuardRail<TestResult, Rejected> guardRail;
+    @Mock
+    private RollingCounts<TestResult> countMetrics;
+    @Mock
+    private HealthSampler sampler;
+    @Mock
+    private Clock clock;
+
+    private CircuitBreakerConfigBuilder<Rejected> builder = new CircuitBreakerConfigBuilder<>(Rejected.CIRCUIT_OPEN);
+
+    private RefactoredBreaker<Rejected> breaker;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        when(guardRail.getResultCounts()).thenReturn(countMetrics);
+        when(guardRail.getResultLatency()).thenReturn(new NoOpLatency<>(TestResult.class));
+        when(guardRail.getClock()).thenReturn(clock);
+        when(clock.nanoTime()).thenReturn(0L);
+        when(countMetrics.current()).thenReturn(new NoOpCounter<>(TestResult.class));
+    }
+
+    @Test
+    public void configCheckerMatchesDefaultBreakerThresholds() {
+        CircuitBreakerConfig<Rejected> config = builder.failureThreshold(5).failurePercentageThreshold(50)
+                .sampleSizeThreshold(10).build();
+        HealthChecker checker = HealthCheckers.fromConfig(config);
+
+        assertTrue(checker.isHealthy(new HealthSample(100, 5)));
+        assertFalse(checker.isHealthy(new HealthSample(100, 6)));
+        assertTrue(checker.isHealthy(new HealthSample(10, 5)));
+        assertFalse(checker.isHealthy(new HealthSample(11, 6)));
+    }
+
+    @Test
+    public void circuitOpensWhenCheckerIsUnhealthy() {
+        CircuitBreakerConfig<Rejected> config = builder.failureThreshold(5).build();
+        breaker = new RefactoredBreaker<>(config, sampler);
+        breaker.registerGuardRail(guardRail);
+
+        long nanoTime = 501L * 1000L * 1000L;
+        when(sampler.sample(config.trailingPeriodNanos, false, nanoTime)).thenReturn(new HealthSample(100, 5));
+        breaker.releasePermit(1L, TestResult.ERROR, nanoTime);
+        assertFalse(breaker.isOpen());
+
+        nanoTime = 1002L * 1000L * 1000L;
+        when(sampler.sample(config.trailingPeriodNanos, false, nanoTime)).thenReturn(new HealthSample(100, 6));
+        breaker.releasePermit(1L, TestResult.ERROR, nanoTime);
+        assertTrue(breaker.isOpen());
+        assertEquals(Rejected.CIRCUIT_OPEN, breaker.acquirePermit(1L, nanoTime + 1));
+
+        breaker.releasePermit(1L, TestResult.SUCCESS, nanoTime + 2);
+        assertFalse(breaker.isOpen());
+    }
+
+    @Test
+    public void metricsAreOnlyScannedOncePerRefresh() {
+        CircuitBreakerConfig<Rejected> config = builder.failureThreshold(5).healthRefreshMillis(500).build();
+        breaker = new RefactoredBreaker<>(config, sampler);
+        breaker.registerGuardRail(guardRail);
+
+        long nanoTime = 501L * 1000L * 1000L;
+        when(sampler.sample(anyLong(), anyBoolean(), anyLong())).thenReturn(new HealthSample(100, 1));
+        for (int i = 0; i < 10; ++i) {
+            breaker.releasePermit(1L, TestResult.ERROR, nanoTime + i);
+        }
+
+        verify(sampler, times(1)).sample(anyLong(), anyBoolean(), anyLong());
+    }
+
+    @Test
+    public void settingConfigKeepsStateAndReevaluatesLastSample() {
+        CircuitBreakerConfig<Rejected> config = builder.failureThreshold(10).build();
+        breaker = new RefactoredBreaker<>(config, sampler);
+        breaker.registerGuardRail(guardRail);
+
+        long nanoTime = 501L * 1000L * 1000L;
+        when(sampler.sample(config.trailingPeriodNanos, false, nanoTime)).thenReturn(new HealthSample(100, 6));
+        breaker.releasePermit(1L, TestResult.ERROR, nanoTime);
+        assertFalse(breaker.isOpen());
+
+        CircuitBreakerConfig<Rejected> newConfig = builder.failureThreshold(5).build();
+        breaker.setBreakerConfig(newConfig);
+        assertSame(newConfig, breaker.getBreakerConfig());
+        assertEquals(6, breaker.getHealthSnapshot().failures);
+
+        breaker.releasePermit(1L, TestResult.ERROR, nanoTime + 1);
+        assertTrue(breaker.isOpen());
+    }
+
+    @Test
+    public void checkersCanBeCombined() {
+        HealthChecker count = new FailureCountChecker(5);
+        HealthChecker percentage = new FailurePercentageChecker(50, 0);
+
+        HealthChecker and = HealthCheckers.and(count, percentage);
+        HealthChecker or = HealthCheckers.or(count, percentage);
+
+        HealthSample manyFailuresLowPercentage = new HealthSample(100, 10);
+        assertFalse(and.isHealthy(manyFailuresLowPercentage));
+        assertTrue(or.isHealthy(manyFailuresLowPercentage));
+
+        HealthSample fewFailuresHighPercentage = new HealthSample(4, 3);
+        assertFalse(and.isHealthy(fewFailuresHighPercentage));
+        assertTrue(or.isHealthy(fewFailuresHighPercentage));
+
+        assertFalse(or.isHealthy(new HealthSample(20, 15)));
+    }
+
+    @Test
+    public void latencyIsOnlySampledWhenRequired() {
+        CircuitBreakerConfig<Rejected> config = builder.build();
+        LatencyChecker latencyChecker = new LatencyChecker(99.0, 100, TimeUnit.MILLISECONDS, 0);
+        breaker = new RefactoredBreaker<>(config, HealthCheckers.and(HealthCheckers.fromConfig(config), latencyChecker),
+                sampler);
+        breaker.registerGuardRail(guardRail);
+
+        Histogram histogram = new Histogram(2);
+        histogram.recordValueWithCount(TimeUnit.MILLISECONDS.toNanos(500), 10);
+        long nanoTime = 501L * 1000L * 1000L;
+        when(sampler.sample(config.trailingPeriodNanos, true, nanoTime)).thenReturn(new HealthSample(10, 1, histogram));
+
+        breaker.releasePermit(1L, TestResult.ERROR, nanoTime);
+
+        verify(sampler).sample(eq(config.trailingPeriodNanos), eq(true), eq(nanoTime));
+        assertTrue(breaker.isOpen());
+    }
+
+    @Test
+    public void ewmaSmoothsFailureSpikes() {
+        EWMAChecker checker = new EWMAChecker(0.5, 50, 0);
+
+        assertTrue(checker.isHealthy(new HealthSample(100, 0)));
+        assertTrue(checker.isHealthy(new HealthSample(100, 80)));
+        assertEquals(40.0, checker.currentAverage(), 0.001);
+        assertFalse(checker.isHealthy(new HealthSample(100, 80)));
+        assertEquals(60.0, checker.currentAverage(), 0.001);
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2016 Timothy Brooks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.uncontended.precipice.concurrent;
+
+import net.uncontended.precipice.Cancellable;
+import net.uncontended.precipice.result.TimeoutableResult;
+import net.uncontended.precipice.test_utils.TestResult;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class CompletionStagesTest {
+
+    @Test
+    public void completableFutureIsCompletedOnCompletingThread() throws Exception {
+        Eventual<TestResult, String> eventual = new Eventual<>();
+        CompletableFuture<String> future = CompletionStages.toCompletableFuture(eventual);
+        assertFalse(future.isDone());
+
+        eventual.complete(TestResult.SUCCESS, "value");
+
+        assertTrue(future.isDone());
+        assertEquals("value", future.get());
+    }
+
+    @Test
+    public void failuresArePropagated() throws Exception {
+        Eventual<TestResult, String> eventual = new Eventual<>();
+        CompletableFuture<Integer> future = CompletionStages.thenApply(eventual, String::length);
+
+        IOException exception = new IOException();
+        eventual.completeExceptionally(TestResult.ERROR, exception);
+
+        try {
+            future.get();
+            fail("Should have thrown");
+        } catch (ExecutionException e) {
+            assertSame(exception, e.getCause());
+        }
+    }
+
+    @Test
+    public void thenApplyAndThenCompose() throws Exception {
+        Eventual<TestResult, String> eventual = new Eventual<>();
+        CompletableFuture<Integer> applied = CompletionStages.thenApply(eventual, String::length);
+        CompletableFuture<String> composed = CompletionStages.thenCompose(eventual,
+                value -> CompletableFuture.completedFuture(value + "!"));
+
+        eventual.complete(TestResult.SUCCESS, "four");
+
+        assertEquals(4, (int) applied.get());
+        assertEquals("four!", composed.get());
+    }
+
+    @Test
+    public void allOfCompletesWhenAllComplete() {
+        Eventual<TestResult, String> eventual1 = new Eventual<>();
+        Eventual<TestResult, String> eventual2 = new Eventual<>();
+        CompletableFuture<Void> all = CompletionStages.allOf(eventual1, eventual2);
+
+        eventual1.complete(TestResult.SUCCESS, "1");
+        assertFalse(all.isDone());
+        eventual2.complete(TestResult.SUCCESS, "2");
+        assertTrue(all.isDone());
+        assertFalse(all.isCompletedExceptionally());
+    }
+
+    @Test
+    public void promiseIsCompletedFromStage() {
+        Eventual<TestResult, String> eventual = new Eventual<>();
+        CompletableFuture<String> stage = new CompletableFuture<>();
+        CompletionStages.completeFrom(stage, eventual, TestResult.SUCCESS, TestResult.ERROR);
+
+        RuntimeException exception = new RuntimeException();
+        stage.completeExceptionally(exception);
+
+        assertEquals(TestResult.ERROR, eventual.getResult());
+        assertSame(exception, eventual.getError());
+    }
+
+    @Test
+    public void cancellationIsPropagated() throws Exception {
+        Eventual<TimeoutableResult, String> eventual = new Eventual<>();
+        CompletableFuture<String> future = CompletionStages.toCompletableFuture(eventual);
+
+        eventual.completeExceptionally(TimeoutableResult.CANCELLED, new CancellationException());
+
+        assertTrue(future.isCompletedExceptionally());
+        try {
+            future.get();
+            fail("Should have thrown");
+        } catch (CancellationException e) {
+        }
+    }
+
+    @Test
+    public void cancellingTheCompletableFutureCancelsTheSource() {
+        Eventual<TestResult, String> eventual = new Eventual<>();
+        final AtomicBoolean cancelled = new AtomicBoolean(false);
+        eventual.setCancellable(new Cancellable() {
+            @Override
+            public void cancel() {
+                cancelled.set(true);
+            }
+        });
+        CompletableFuture<Integer> future = CompletionStages.thenApply(eventual, String::length);
+
+        assertTrue(future.cancel(true));
+
+        assertTrue(cancelled.get());
+        assertTrue(eventual.isCancelled());
+    }
+}
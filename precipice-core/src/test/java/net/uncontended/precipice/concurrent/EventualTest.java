@@ -21,6 +21,7 @@ import net.uncontended.precipice.Cancellable;
 import net.uncontended.precipice.Completable;
 import net.uncontended.precipice.ExecutionContext;
 import net.uncontended.precipice.PrecipiceFunction;
+import net.uncontended.precipice.result.TimeoutableResult;
 import net.uncontended.precipice.test_utils.TestResult;
 import org.junit.Before;
 import org.junit.Test;
@@ -28,13 +29,15 @@ import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
 import java.io.IOException;
-import java.util.concurrent.ExecutionException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 
 import static org.junit.Assert.*;
-import static org.mockito.Mockito.mock;
-import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.*;
 
 public class EventualTest {
 
@@ -201,4 +204,260 @@ public class EventualTest {
 
         assertTrue(eventual.isCancelled());
     }
+
+    @Test
+    public void allCallbacksAreExecutedInRegistrationOrder() {
+        Eventual<TestResult, String> eventual = new Eventual<>();
+        final List<Integer> order = new CopyOnWriteArrayList<>();
+
+        for (int i = 0; i < 3; ++i) {
+            final int index = i;
+            eventual.onSuccess(new PrecipiceFunction<TestResult, String>() {
+                @Override
+                public void apply(TestResult result, String argument) {
+                    order.add(index);
+                }
+            });
+        }
+
+        eventual.complete(TestResult.SUCCESS, "Result");
+        eventual.onSuccess(new PrecipiceFunction<TestResult, String>() {
+            @Override
+            public void apply(TestResult result, String argument) {
+                order.add(3);
+            }
+        });
+
+        assertEquals(Arrays.asList(0, 1, 2, 3), order);
+    }
+
+    @Test
+    public void blockedThreadsAreWokenOnCompletion() throws Exception {
+        final Eventual<TestResult, String> eventual = new Eventual<>();
+        final CountDownLatch started = new CountDownLatch(2);
+        final AtomicReference<String> value1 = new AtomicReference<>();
+        final AtomicReference<String> value2 = new AtomicReference<>();
+
+        Thread t1 = waiter(eventual, started, value1);
+        Thread t2 = waiter(eventual, started, value2);
+        started.await();
+
+        try {
+            eventual.get(10, TimeUnit.MILLISECONDS);
+            fail("Should have timed out");
+        } catch (TimeoutException e) {
+        }
+
+        eventual.complete(TestResult.SUCCESS, "Result");
+        t1.join(5000);
+        t2.join(5000);
+
+        assertEquals("Result", value1.get());
+        assertEquals("Result", value2.get());
+    }
+
+    private static Thread waiter(final Eventual<TestResult, String> eventual, final CountDownLatch started,
+                                 final AtomicReference<String> value) {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    value.set(eventual.get());
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    @Test
+    public void callbacksRunOnConfiguredExecutor() throws Exception {
+        final List<Runnable> tasks = new ArrayList<>();
+        Eventual<TestResult, String> eventual = new Eventual<>(wrappedPromise);
+        eventual.setCallbackExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                tasks.add(command);
+            }
+        });
+        final AtomicReference<TestResult> internal = new AtomicReference<>();
+        eventual.internalOnComplete(new PrecipiceFunction<TestResult, ExecutionContext>() {
+            @Override
+            public void apply(TestResult result, ExecutionContext argument) {
+                internal.set(result);
+            }
+        });
+        final AtomicReference<String> callbackValue = new AtomicReference<>();
+        eventual.onSuccess(new PrecipiceFunction<TestResult, String>() {
+            @Override
+            public void apply(TestResult result, String argument) {
+                callbackValue.set(argument);
+            }
+        });
+
+        eventual.complete(TestResult.SUCCESS, "Result");
+
+        assertEquals(TestResult.SUCCESS, internal.get());
+        assertEquals("Result", eventual.get());
+        assertNull(callbackValue.get());
+        verify(wrappedPromise, never()).complete(TestResult.SUCCESS, "Result");
+        assertEquals(1, tasks.size());
+
+        tasks.get(0).run();
+
+        assertEquals("Result", callbackValue.get());
+        verify(wrappedPromise).complete(TestResult.SUCCESS, "Result");
+    }
+
+    @Test
+    public void nothingIsSubmittedWhenThereAreNoCallbacks() {
+        final List<Runnable> tasks = new ArrayList<>();
+        Eventual<TestResult, String> eventual = new Eventual<>();
+        eventual.setCallbackExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                tasks.add(command);
+            }
+        });
+
+        eventual.complete(TestResult.SUCCESS, "Result");
+
+        assertTrue(tasks.isEmpty());
+    }
+
+    @Test
+    public void throwingCallbackDoesNotPreventOtherCallbacksOrWrappedCompletion() {
+        Eventual<TestResult, String> eventual = new Eventual<>(wrappedPromise);
+        final AtomicBoolean secondRan = new AtomicBoolean(false);
+        eventual.onComplete(new PrecipiceFunction<TestResult, PrecipiceFuture<TestResult, String>>() {
+            @Override
+            public void apply(TestResult result, PrecipiceFuture<TestResult, String> future) {
+                throw new IllegalStateException("Callback failure");
+            }
+        });
+        eventual.onSuccess(new PrecipiceFunction<TestResult, String>() {
+            @Override
+            public void apply(TestResult result, String value) {
+                secondRan.set(true);
+            }
+        });
+
+        assertTrue(eventual.complete(TestResult.SUCCESS, "done"));
+
+        assertTrue(secondRan.get());
+        verify(wrappedPromise).complete(TestResult.SUCCESS, "done");
+    }
+
+    @Test
+    public void timedOutWaitersAreUnlinked() throws Exception {
+        Eventual<TestResult, String> eventual = new Eventual<>();
+        eventual.onSuccess(new PrecipiceFunction<TestResult, String>() {
+            @Override
+            public void apply(TestResult result, String value) {
+            }
+        });
+
+        for (int i = 0; i < 100; ++i) {
+            try {
+                eventual.get(1, TimeUnit.MICROSECONDS);
+                fail("Should have timed out");
+            } catch (TimeoutException e) {
+            }
+        }
+
+        assertEquals(1, eventual.stackSize());
+        eventual.complete(TestResult.SUCCESS, "done");
+        assertEquals("done", eventual.get(1, TimeUnit.MICROSECONDS));
+    }
+
+    @Test
+    public void interruptedWaiterIsUnlinked() throws Exception {
+        Eventual<TestResult, String> eventual = new Eventual<>();
+
+        Thread.currentThread().interrupt();
+        try {
+            eventual.get();
+            fail("Should have been interrupted");
+        } catch (InterruptedException e) {
+        }
+
+        assertEquals(0, eventual.stackSize());
+    }
+
+    @Test
+    public void cancelledCompletionIsReportedAsCancellation() throws Exception {
+        Eventual<TimeoutableResult, String> eventual = new Eventual<>();
+        final AtomicBoolean successCalled = new AtomicBoolean(false);
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        eventual.onSuccess(new PrecipiceFunction<TimeoutableResult, String>() {
+            @Override
+            public void apply(TimeoutableResult result, String argument) {
+                successCalled.set(true);
+            }
+        });
+        eventual.onError(new PrecipiceFunction<TimeoutableResult, Throwable>() {
+            @Override
+            public void apply(TimeoutableResult result, Throwable argument) {
+                error.set(argument);
+            }
+        });
+
+        CancellationException exception = new CancellationException();
+        assertTrue(eventual.completeExceptionally(TimeoutableResult.CANCELLED, exception));
+        eventual.onSuccess(new PrecipiceFunction<TimeoutableResult, String>() {
+            @Override
+            public void apply(TimeoutableResult result, String argument) {
+                successCalled.set(true);
+            }
+        });
+
+        assertFalse(successCalled.get());
+        assertSame(exception, error.get());
+        try {
+            eventual.get();
+            fail("Expected cancellation");
+        } catch (CancellationException e) {
+        }
+    }
+
+    @Test
+    public void failingCallbackIsReportedToUncaughtExceptionHandler() throws Exception {
+        final Eventual<TestResult, String> eventual = new Eventual<>();
+        final RuntimeException exception = new RuntimeException();
+        final AtomicReference<String> value = new AtomicReference<>();
+        eventual.onSuccess(new PrecipiceFunction<TestResult, String>() {
+            @Override
+            public void apply(TestResult result, String argument) {
+                throw exception;
+            }
+        });
+        eventual.onSuccess(new PrecipiceFunction<TestResult, String>() {
+            @Override
+            public void apply(TestResult result, String argument) {
+                value.set(argument);
+            }
+        });
+
+        final AtomicReference<Throwable> reported = new AtomicReference<>();
+        Thread completer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                eventual.complete(TestResult.SUCCESS, "done");
+            }
+        });
+        completer.setUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+            @Override
+            public void uncaughtException(Thread t, Throwable e) {
+                reported.set(e);
+            }
+        });
+        completer.start();
+        completer.join();
+
+        assertSame(exception, reported.get());
+        assertEquals("done", value.get());
+    }
 }
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2016 Timothy Brooks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.uncontended.precipice.metrics.latency;
+
+import net.uncontended.precipice.result.TimeoutableResult;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+public class LatencyTest {
+
+    @Test
+    public void rollingPercentileIsReadFromMergedIntervals() {
+        long nanoTime = System.nanoTime();
+        long nextInterval = nanoTime + TimeUnit.SECONDS.toNanos(1);
+        RollingLatency<TimeoutableResult> latency = new RollingLatency<>(TimeoutableResult.class, 10,
+                TimeUnit.SECONDS.toNanos(1));
+        latency.write(TimeoutableResult.SUCCESS, 90L, TimeUnit.MILLISECONDS.toNanos(10), nanoTime);
+        latency.write(TimeoutableResult.SUCCESS, 10L, TimeUnit.MILLISECONDS.toNanos(500), nextInterval);
+
+        long p95 = Latency.rollingPercentile(latency, TimeoutableResult.SUCCESS, 95.0, nextInterval);
+        long p50 = Latency.rollingPercentile(latency, TimeoutableResult.SUCCESS, 50.0, nextInterval);
+
+        assertEquals(500, TimeUnit.NANOSECONDS.toMillis(p95), 5);
+        assertEquals(10, TimeUnit.NANOSECONDS.toMillis(p50), 1);
+        assertEquals(0, Latency.rollingPercentile(latency, TimeoutableResult.ERROR, 95.0, nextInterval));
+    }
+}
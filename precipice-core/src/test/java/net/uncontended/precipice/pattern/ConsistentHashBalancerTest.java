@@ -0,0 +1,85 @@
+/*
+ * Copyright 2016 Timothy Brooks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.uncontended.precipice.pattern;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class ConsistentHashBalancerTest {
+
+    private final List<String> names = Arrays.asList("a", "b", "c", "d", "e");
+
+    @Test
+    public void sameKeyRoutesToSameDistinctMembers() {
+        ConsistentHashBalancer strategy = new ConsistentHashBalancer(names, 1, 3, 100);
+        int[] first = new int[strategy.maxIndices()];
+        int[] second = new int[strategy.maxIndices()];
+
+        for (int key = 0; key < 1000; ++key) {
+            assertEquals(3, strategy.nextIndices("key-" + key, first));
+            strategy.nextIndices("key-" + key, second);
+            assertArrayEquals(first, second);
+
+            Set<Integer> distinct = new HashSet<>();
+            for (int index : first) {
+                distinct.add(index);
+            }
+            assertEquals(3, distinct.size());
+        }
+    }
+
+    @Test
+    public void removingMemberOnlyMovesItsKeys() {
+        List<String> remaining = Arrays.asList("a", "b", "d", "e");
+        ConsistentHashBalancer before = new ConsistentHashBalancer(names);
+        ConsistentHashBalancer after = new ConsistentHashBalancer(remaining);
+        int[] indices = new int[names.size()];
+
+        int[] counts = new int[names.size()];
+        for (int key = 0; key < 10000; ++key) {
+            String value = "key-" + key;
+            before.nextIndices(value, indices);
+            String owner = names.get(indices[0]);
+            String fallback = names.get(indices[1]);
+            counts[indices[0]]++;
+
+            after.nextIndices(value, indices);
+            String newOwner = remaining.get(indices[0]);
+            if (owner.equals("c")) {
+                assertEquals(fallback, newOwner);
+            } else {
+                assertEquals(owner, newOwner);
+            }
+        }
+
+        for (int count : counts) {
+            assertTrue("Concerning distribution of keys: " + Arrays.toString(counts), count > 1000 && count < 3000);
+        }
+    }
+
+    @Test
+    public void defaultFallThroughIsBounded() {
+        assertEquals(3, new ConsistentHashBalancer(names).maxIndices());
+        assertEquals(2, new ConsistentHashBalancer(Arrays.asList("a", "b")).maxIndices());
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2016 Timothy Brooks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.uncontended.precipice.pattern;
+
+import net.uncontended.precipice.rejected.Rejected;
+import net.uncontended.precipice.test_utils.TestResult;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class EwmaScoreTest {
+
+    private final long start = 0L;
+
+    @Test
+    public void higherLatencyReplacesAverageImmediately() {
+        EwmaScore<Rejected> score = new EwmaScore<>(10, TimeUnit.SECONDS, 1, TimeUnit.MILLISECONDS, start);
+
+        score.acquirePermit(1L, start);
+        score.releasePermit(1L, TestResult.SUCCESS, start, start + TimeUnit.MILLISECONDS.toNanos(50));
+
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(50), score.latencyNanos(), 0.001);
+        assertEquals(0, score.outstanding());
+    }
+
+    @Test
+    public void lowerLatencyDecaysAverageOverTime() {
+        EwmaScore<Rejected> score = new EwmaScore<>(1, TimeUnit.SECONDS, 100, TimeUnit.MILLISECONDS, start);
+        long oneSecond = TimeUnit.SECONDS.toNanos(1);
+
+        score.acquirePermit(1L, oneSecond);
+        score.releasePermit(1L, TestResult.SUCCESS, oneSecond, oneSecond);
+
+        double expected = TimeUnit.MILLISECONDS.toNanos(100) * Math.exp(-1.0);
+        assertEquals(expected, score.latencyNanos(), 1.0);
+    }
+
+    @Test
+    public void outstandingRequestsAndFailuresIncreaseCost() {
+        EwmaScore<Rejected> score = new EwmaScore<>(1, TimeUnit.SECONDS, 1, TimeUnit.MILLISECONDS, start);
+        double idleCost = score.cost();
+
+        score.acquirePermit(2L, start);
+        assertEquals(idleCost * 3, score.cost(), 0.001);
+
+        score.releasePermit(1L, TestResult.ERROR, TimeUnit.SECONDS.toNanos(1));
+        assertTrue(score.failureRate() > 0.5);
+        assertTrue(score.cost() > idleCost * 2);
+
+        score.releasePermit(1L, start);
+        assertEquals(0, score.outstanding());
+    }
+}
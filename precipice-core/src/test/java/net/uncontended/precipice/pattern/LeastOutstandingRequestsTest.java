@@ -0,0 +1,86 @@
+/*
+ * Copyright 2016 Timothy Brooks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.uncontended.precipice.pattern;
+
+import net.uncontended.precipice.rejected.Rejected;
+import net.uncontended.precipice.semaphore.LongSemaphore;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.function.LongSupplier;
+
+import static org.junit.Assert.*;
+
+public class LeastOutstandingRequestsTest {
+
+    @Test
+    public void lessLoadedOfTwoIsTriedFirst() {
+        LongSemaphore<Rejected> idle = new LongSemaphore<>(Rejected.MAX_CONCURRENCY_LEVEL_EXCEEDED, 10);
+        LongSemaphore<Rejected> busy = new LongSemaphore<>(Rejected.MAX_CONCURRENCY_LEVEL_EXCEEDED, 10);
+        busy.acquirePermit(3, 0L);
+
+        PatternStrategy strategy = new LeastOutstandingRequests(Arrays.asList(busy, idle));
+
+        for (int i = 0; i < 100; ++i) {
+            Iterator<Integer> indices = strategy.nextIndices().iterator();
+            assertEquals(1, indices.next().intValue());
+            assertEquals(0, indices.next().intValue());
+            assertFalse(indices.hasNext());
+        }
+    }
+
+    @Test
+    public void mostLoadedIsNeverTriedFirstAndAllIndicesAreReturned() {
+        List<LongSemaphore<Rejected>> semaphores = Arrays.asList(
+                new LongSemaphore<>(Rejected.MAX_CONCURRENCY_LEVEL_EXCEEDED, 10),
+                new LongSemaphore<>(Rejected.MAX_CONCURRENCY_LEVEL_EXCEEDED, 10),
+                new LongSemaphore<>(Rejected.MAX_CONCURRENCY_LEVEL_EXCEEDED, 10),
+                new LongSemaphore<>(Rejected.MAX_CONCURRENCY_LEVEL_EXCEEDED, 10));
+        semaphores.get(2).acquirePermit(5, 0L);
+
+        PatternStrategy strategy = new LeastOutstandingRequests(semaphores, 2);
+        assertEquals(2, strategy.acquireCount());
+
+        for (int i = 0; i < 1000; ++i) {
+            Set<Integer> seen = new HashSet<>();
+            Iterator<Integer> indices = strategy.nextIndices().iterator();
+            int first = indices.next();
+            assertNotEquals(2, first);
+            seen.add(first);
+            while (indices.hasNext()) {
+                seen.add(indices.next());
+            }
+            assertEquals(4, seen.size());
+        }
+    }
+
+    @Test
+    public void latencyEstimatesWeightLoad() {
+        LongSemaphore<Rejected> slow = new LongSemaphore<>(Rejected.MAX_CONCURRENCY_LEVEL_EXCEEDED, 10);
+        LongSemaphore<Rejected> fast = new LongSemaphore<>(Rejected.MAX_CONCURRENCY_LEVEL_EXCEEDED, 10);
+        fast.acquirePermit(2, 0L);
+
+        List<LongSupplier> latencies = Arrays.<LongSupplier>asList(() -> 100L, () -> 10L);
+        PatternStrategy strategy = new LeastOutstandingRequests(Arrays.asList(slow, fast), latencies, 1);
+
+        assertEquals(1, strategy.nextIndices().iterator().next().intValue());
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2016 Timothy Brooks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.uncontended.precipice.pattern;
+
+import net.uncontended.precipice.GuardRail;
+import net.uncontended.precipice.GuardRailBuilder;
+import net.uncontended.precipice.Precipice;
+import net.uncontended.precipice.metrics.counts.RollingCounts;
+import net.uncontended.precipice.metrics.counts.TotalCounts;
+import net.uncontended.precipice.metrics.latency.RollingLatency;
+import net.uncontended.precipice.rejected.Rejected;
+import net.uncontended.precipice.test_utils.TestResult;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class OutlierEjectorTest {
+
+    private final List<Precipice<TestResult, Rejected>> members = new ArrayList<>();
+    private Pattern<TestResult, Precipice<TestResult, Rejected>> pattern;
+    private long nanoTime;
+
+    @Before
+    public void setUp() {
+        nanoTime = System.nanoTime();
+        for (int i = 0; i < 4; ++i) {
+            final GuardRail<TestResult, Rejected> guardRail = new GuardRailBuilder<TestResult, Rejected>()
+                    .name("member" + i)
+                    .resultCounts(new RollingCounts<>(TestResult.class, 10, TimeUnit.SECONDS.toNanos(1)))
+                    .rejectedCounts(new TotalCounts<>(Rejected.class))
+                    .resultLatency(new RollingLatency<>(TestResult.class, 10, TimeUnit.SECONDS.toNanos(1)))
+                    .build();
+            members.add(() -> guardRail);
+        }
+        pattern = new Pattern<>(members, new RoundRobinLoadBalancer(4));
+    }
+
+    @Test
+    public void failureOutlierIsEjectedSkippedAndRestored() {
+        for (int i = 0; i < members.size(); ++i) {
+            record(i, TestResult.SUCCESS, 20, 1000);
+        }
+        record(2, TestResult.ERROR, 10, 1000);
+
+        OutlierEjectionConfig config = new OutlierEjectionConfigBuilder().ejectionMillis(1000).build();
+        OutlierEjector<TestResult, Precipice<TestResult, Rejected>> ejector = new OutlierEjector<>(pattern, config);
+        ejector.tick(nanoTime);
+
+        assertTrue(ejector.isEjected(members.get(2)));
+        assertTrue(pattern.isEjected(members.get(2)));
+        for (int i = 0; i < 20; ++i) {
+            assertNotSame(members.get(2), pattern.getPrecipices(1L, nanoTime).iterator().next());
+        }
+
+        ejector.tick(nanoTime + TimeUnit.MILLISECONDS.toNanos(1000));
+
+        assertFalse(ejector.isEjected(members.get(2)));
+        assertFalse(pattern.isEjected(members.get(2)));
+    }
+
+    @Test
+    public void latencyOutlierIsEjected() {
+        for (int i = 0; i < members.size(); ++i) {
+            record(i, TestResult.SUCCESS, 20, i == 1 ? 50000 : 1000);
+        }
+
+        OutlierEjector<TestResult, Precipice<TestResult, Rejected>> ejector =
+                new OutlierEjector<>(pattern, new OutlierEjectionConfigBuilder().build());
+        ejector.tick(nanoTime);
+
+        assertTrue(pattern.isEjected(members.get(1)));
+        assertFalse(pattern.isEjected(members.get(0)));
+    }
+
+    @Test
+    public void maxEjectedPercentageIsObserved() {
+        for (int i = 0; i < members.size(); ++i) {
+            record(i, TestResult.SUCCESS, 20, 1000);
+        }
+        record(0, TestResult.ERROR, 20, 1000);
+        record(3, TestResult.ERROR, 10, 1000);
+
+        OutlierEjectionConfig config = new OutlierEjectionConfigBuilder().maxEjectedPercentage(25).build();
+        OutlierEjector<TestResult, Precipice<TestResult, Rejected>> ejector = new OutlierEjector<>(pattern, config);
+        ejector.tick(nanoTime);
+
+        assertTrue(pattern.isEjected(members.get(0)));
+        assertFalse(pattern.isEjected(members.get(3)));
+    }
+
+    @Test
+    public void membersBelowSampleSizeAreNotEjected() {
+        for (int i = 0; i < members.size(); ++i) {
+            record(i, TestResult.SUCCESS, 20, 1000);
+        }
+        record(1, TestResult.ERROR, 20, 1000);
+
+        OutlierEjectionConfig config = new OutlierEjectionConfigBuilder().sampleSizeThreshold(50).build();
+        OutlierEjector<TestResult, Precipice<TestResult, Rejected>> ejector = new OutlierEjector<>(pattern, config);
+        ejector.tick(nanoTime);
+
+        assertFalse(pattern.isEjected(members.get(1)));
+    }
+
+    @Test
+    public void membersWithoutSuccessesAreLeftOutOfLatencyMedian() {
+        record(0, TestResult.ERROR, 20, 1000);
+        record(1, TestResult.ERROR, 20, 1000);
+        record(2, TestResult.SUCCESS, 20, 1000);
+        record(3, TestResult.SUCCESS, 20, 4000);
+
+        OutlierEjectionConfig config = new OutlierEjectionConfigBuilder().failurePercentageDelta(100)
+                .maxEjectedPercentage(100).build();
+        OutlierEjector<TestResult, Precipice<TestResult, Rejected>> ejector = new OutlierEjector<>(pattern, config);
+        ejector.tick(nanoTime);
+
+        for (int i = 0; i < members.size(); ++i) {
+            assertFalse(pattern.isEjected(members.get(i)));
+        }
+    }
+
+    @Test
+    public void removedMemberIsForgotten() {
+        for (int i = 0; i < members.size(); ++i) {
+            record(i, TestResult.SUCCESS, 20, 1000);
+        }
+        record(2, TestResult.ERROR, 10, 1000);
+
+        OutlierEjector<TestResult, Precipice<TestResult, Rejected>> ejector =
+                new OutlierEjector<>(pattern, new OutlierEjectionConfigBuilder().build());
+        ejector.tick(nanoTime);
+        assertTrue(ejector.isEjected(members.get(2)));
+
+        List<Precipice<TestResult, Rejected>> remaining = new ArrayList<>(members);
+        remaining.remove(2);
+        pattern.updatePrecipices(remaining, new RoundRobinLoadBalancer(3));
+        ejector.tick(nanoTime + 1);
+
+        assertFalse(ejector.isEjected(members.get(2)));
+    }
+
+    private void record(int member, TestResult result, int count, long latencyNanos) {
+        GuardRail<TestResult, Rejected> guardRail = members.get(member).guardRail();
+        for (int i = 0; i < count; ++i) {
+            guardRail.releasePermits(1L, result, nanoTime - latencyNanos, nanoTime);
+        }
+    }
+}
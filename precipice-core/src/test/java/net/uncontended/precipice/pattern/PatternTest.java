@@ -84,6 +84,65 @@ public class PatternTest {
         assertEquals(precipice3, all.get(2));
     }
 
+    @Test
+    public void updatePrecipicesSwapsMembersAndReturnsRemoved() {
+        RoundRobinLoadBalancer roundRobin = new RoundRobinLoadBalancer(3, 1);
+        pattern = new Pattern<>(Arrays.asList(precipice1, precipice2, precipice3), roundRobin);
+        when(guardRail1.acquirePermits(1L, nanoTime)).thenReturn(null);
+        when(guardRail3.acquirePermits(1L, nanoTime)).thenReturn(null);
+
+        assertSame(precipice1, pattern.getPrecipices(1L, nanoTime).iterator().next());
+
+        List<Precipice<TimeoutableResult, Rejected>> removed =
+                pattern.updatePrecipices(Arrays.asList(precipice3, precipice1), roundRobin.resize(2));
+
+        assertEquals(Arrays.asList(precipice2), removed);
+        assertEquals(Arrays.asList(precipice3, precipice1), pattern.getAllPrecipices());
+        // The counter is shared, so the rotation continues from where it left off.
+        assertSame(precipice1, pattern.getPrecipices(1L, nanoTime).iterator().next());
+        assertSame(precipice3, pattern.getPrecipices(1L, nanoTime).iterator().next());
+        verifyZeroInteractions(guardRail2);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void updatePrecipicesRejectsStrategyThatDoesNotFit() {
+        pattern.updatePrecipices(Arrays.asList(precipice1), new Shotgun(1, 2));
+    }
+
+    @Test
+    public void ejectedPrecipicesAreSkippedUnlessNeededToMeetAcquireCount() {
+        assertTrue(pattern.setEjected(precipice1, true));
+        assertTrue(pattern.isEjected(precipice1));
+
+        when(strategy.nextIndices()).thenAnswer(new Answer() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                return getIterable(new Integer[]{0, 1, 2});
+            }
+        });
+        when(guardRail1.acquirePermits(1L, nanoTime)).thenReturn(null);
+        when(guardRail2.acquirePermits(1L, nanoTime)).thenReturn(null);
+        when(guardRail3.acquirePermits(1L, nanoTime)).thenReturn(null);
+
+        List<Precipice<TimeoutableResult, Rejected>> controllableList = new ArrayList<>();
+        for (Precipice<TimeoutableResult, Rejected> item : pattern.getPrecipices(1L, nanoTime)) {
+            controllableList.add(item);
+        }
+        assertEquals(Arrays.asList(precipice2, precipice3), controllableList);
+        verifyZeroInteractions(guardRail1);
+
+        when(guardRail2.acquirePermits(1L, nanoTime)).thenReturn(Rejected.MAX_CONCURRENCY_LEVEL_EXCEEDED);
+
+        controllableList.clear();
+        for (Precipice<TimeoutableResult, Rejected> item : pattern.getPrecipices(1L, nanoTime)) {
+            controllableList.add(item);
+        }
+        assertEquals(Arrays.asList(precipice3, precipice1), controllableList);
+
+        assertTrue(pattern.setEjected(precipice1, false));
+        assertFalse(pattern.isEjected(precipice1));
+    }
+
     @Test
     public void getReturnsCorrectPrecipices() {
         Integer[] indices = {0, 1, 2};
@@ -152,6 +211,71 @@ public class PatternTest {
         assertSame(precipice2, controllableList.get(0));
     }
 
+    @Test
+    public void intStrategyWritesIndicesIntoReusedBuffer() {
+        List<Precipice<TimeoutableResult, Rejected>> controllables = Arrays.asList(precipice1, precipice2, precipice3);
+        IntPatternStrategy intStrategy = mock(IntPatternStrategy.class);
+        when(intStrategy.acquireCount()).thenReturn(2);
+        when(intStrategy.maxIndices()).thenReturn(3);
+        final List<int[]> buffers = new ArrayList<>();
+        when(intStrategy.nextIndices(any(int[].class))).thenAnswer(new Answer<Integer>() {
+            @Override
+            public Integer answer(InvocationOnMock invocation) throws Throwable {
+                int[] buffer = (int[]) invocation.getArguments()[0];
+                buffers.add(buffer);
+                buffer[0] = 2;
+                buffer[1] = 0;
+                buffer[2] = 1;
+                return 3;
+            }
+        });
+        when(guardRail3.acquirePermits(1L, nanoTime)).thenReturn(null);
+        when(guardRail1.acquirePermits(1L, nanoTime)).thenReturn(Rejected.CIRCUIT_OPEN);
+        when(guardRail2.acquirePermits(1L, nanoTime)).thenReturn(null);
+
+        pattern = new Pattern<>(controllables, intStrategy);
+
+        for (int i = 0; i < 2; ++i) {
+            List<Precipice<TimeoutableResult, Rejected>> controllableList = new ArrayList<>();
+            for (Precipice<TimeoutableResult, Rejected> item : pattern.getPrecipices(1L, nanoTime)) {
+                controllableList.add(item);
+            }
+            assertEquals(2, controllableList.size());
+            assertSame(precipice3, controllableList.get(0));
+            assertSame(precipice2, controllableList.get(1));
+        }
+
+        verify(intStrategy, never()).nextIndices();
+        assertEquals(2, buffers.size());
+        assertSame(buffers.get(0), buffers.get(1));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void keyedSelectionRequiresKeyedStrategy() {
+        pattern.getPrecipices("key", 1L, nanoTime);
+    }
+
+    @Test
+    public void keyedSelectionUsesKeyedStrategy() {
+        List<Precipice<TimeoutableResult, Rejected>> controllables = Arrays.asList(precipice1, precipice2, precipice3);
+        ConsistentHashBalancer keyed = new ConsistentHashBalancer(Arrays.asList("1", "2", "3"), 1, 3, 10);
+        int[] expected = new int[3];
+        keyed.nextIndices("key", expected);
+        List<GuardRail<TimeoutableResult, Rejected>> guardRails = Arrays.asList(guardRail1, guardRail2, guardRail3);
+        when(guardRails.get(expected[0]).acquirePermits(1L, nanoTime)).thenReturn(Rejected.CIRCUIT_OPEN);
+        when(guardRails.get(expected[1]).acquirePermits(1L, nanoTime)).thenReturn(null);
+
+        pattern = new Pattern<>(controllables, keyed);
+
+        List<Precipice<TimeoutableResult, Rejected>> controllableList = new ArrayList<>();
+        for (Precipice<TimeoutableResult, Rejected> item : pattern.getPrecipices("key", 1L, nanoTime)) {
+            controllableList.add(item);
+        }
+        assertEquals(1, controllableList.size());
+        assertSame(controllables.get(expected[1]), controllableList.get(0));
+        verifyZeroInteractions(guardRails.get(expected[2]));
+    }
+
     @Test
     public void threadLocalFactoryMeansIteratorIsReusedAndThreadLocal() throws Exception {
         List<Precipice<TimeoutableResult, Rejected>> controllables = Arrays.asList(precipice1, precipice2, precipice3);
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2016 Timothy Brooks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.uncontended.precipice.pattern;
+
+import net.uncontended.precipice.rejected.Rejected;
+import net.uncontended.precipice.test_utils.TestResult;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class PeakEwmaBalancerTest {
+
+    @Test
+    public void fasterMembersAreSelectedMoreOften() {
+        EwmaScore<Rejected> fast = new EwmaScore<>(10, TimeUnit.SECONDS, 1, TimeUnit.MILLISECONDS, 0L);
+        EwmaScore<Rejected> slow = new EwmaScore<>(10, TimeUnit.SECONDS, 1, TimeUnit.MILLISECONDS, 0L);
+        slow.acquirePermit(1L, 0L);
+        slow.releasePermit(1L, TestResult.SUCCESS, 0L, TimeUnit.MILLISECONDS.toNanos(9));
+
+        PeakEwmaBalancer strategy = new PeakEwmaBalancer(Arrays.asList(fast, slow));
+
+        int[] indices = new int[strategy.maxIndices()];
+        int fastFirst = 0;
+        for (int i = 0; i < 10000; ++i) {
+            assertEquals(2, strategy.nextIndices(indices));
+            Set<Integer> seen = new HashSet<>();
+            seen.add(indices[0]);
+            seen.add(indices[1]);
+            assertEquals(2, seen.size());
+            if (indices[0] == 0) {
+                ++fastFirst;
+            }
+        }
+
+        // Weights are 1/1ms and 1/9ms, so the fast member should be first about 90% of the time.
+        assertTrue("Fast member selected " + fastFirst + " times", fastFirst > 8500 && fastFirst < 9500);
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2016 Timothy Brooks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.uncontended.precipice.rate;
+
+import net.uncontended.precipice.rejected.Rejected;
+import net.uncontended.precipice.test_utils.TestResult;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class RetryBudgetTest {
+
+    private RetryBudget<Rejected> budget;
+    private long nanoTime;
+
+    @Before
+    public void setUp() {
+        budget = new RetryBudget<>(Rejected.RETRY_BUDGET_EXCEEDED, 0.2, 1, 10, TimeUnit.SECONDS);
+        nanoTime = System.nanoTime();
+    }
+
+    @Test
+    public void firstAttemptsAreNeverRejected() {
+        for (int i = 0; i < 100; ++i) {
+            assertNull(budget.acquirePermit(1, nanoTime));
+            budget.releasePermit(1, TestResult.ERROR, nanoTime);
+        }
+    }
+
+    @Test
+    public void retriesAreBoundedByRatioOfSuccesses() {
+        assertNull(budget.acquireRetryPermit(1, nanoTime));
+        assertEquals(Rejected.RETRY_BUDGET_EXCEEDED, budget.acquireRetryPermit(1, nanoTime));
+
+        for (int i = 0; i < 10; ++i) {
+            budget.releasePermit(1, TestResult.SUCCESS, nanoTime);
+        }
+
+        assertNull(budget.acquireRetryPermit(1, nanoTime));
+        assertNull(budget.acquireRetryPermit(1, nanoTime));
+        assertEquals(Rejected.RETRY_BUDGET_EXCEEDED, budget.acquireRetryPermit(1, nanoTime));
+    }
+
+    @Test
+    public void budgetRecoversAsRetriesLeaveTheWindow() {
+        assertNull(budget.acquireRetryPermit(1, nanoTime));
+        assertEquals(Rejected.RETRY_BUDGET_EXCEEDED, budget.acquireRetryPermit(1, nanoTime));
+
+        long later = nanoTime + TimeUnit.SECONDS.toNanos(11);
+        assertNull(budget.acquireRetryPermit(1, later));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeRatioIsRejected() {
+        new RetryBudget<>(Rejected.RETRY_BUDGET_EXCEEDED, -1, 0, 10, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2016 Timothy Brooks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.uncontended.precipice.timeout;
+
+import net.uncontended.precipice.GuardRail;
+import net.uncontended.precipice.GuardRailBuilder;
+import net.uncontended.precipice.metrics.counts.TotalCounts;
+import net.uncontended.precipice.metrics.latency.RollingLatency;
+import net.uncontended.precipice.rejected.Rejected;
+import net.uncontended.precipice.test_utils.TestResult;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class DeadlineBackPressureTest {
+
+    private GuardRail<TestResult, Rejected> guardRail;
+    private long nanoTime;
+    private long previousDeadline;
+
+    @Before
+    public void setUp() {
+        nanoTime = System.nanoTime();
+        RollingLatency<TestResult> latency = new RollingLatency<>(TestResult.class, 10, TimeUnit.SECONDS.toNanos(1));
+        guardRail = new GuardRailBuilder<TestResult, Rejected>()
+                .name("deadline")
+                .resultCounts(new TotalCounts<>(TestResult.class))
+                .rejectedCounts(new TotalCounts<>(Rejected.class))
+                .resultLatency(latency)
+                .addBackPressure(new DeadlineBackPressure<>(Rejected.DEADLINE_EXCEEDED))
+                .build();
+        previousDeadline = Deadline.current();
+    }
+
+    @After
+    public void tearDown() {
+        Deadline.restore(previousDeadline);
+    }
+
+    @Test
+    public void acquireSucceedsWithoutDeadline() {
+        assertEquals(Deadline.NONE, Deadline.current());
+        assertNull(guardRail.acquirePermits(1L, nanoTime));
+    }
+
+    @Test
+    public void acquireRejectedWhenDeadlineHasPassed() {
+        Deadline.set(nanoTime - 1);
+
+        assertEquals(Rejected.DEADLINE_EXCEEDED, guardRail.acquirePermits(1L, nanoTime));
+    }
+
+    @Test
+    public void acquireRejectedWhenRemainingBudgetIsBelowMedianLatency() {
+        for (int i = 0; i < 10; ++i) {
+            guardRail.getResultLatency().write(TestResult.SUCCESS, 1L, TimeUnit.MILLISECONDS.toNanos(50), nanoTime);
+        }
+
+        Deadline.set(nanoTime + TimeUnit.MILLISECONDS.toNanos(20));
+        assertEquals(Rejected.DEADLINE_EXCEEDED, guardRail.acquirePermits(1L, nanoTime));
+
+        Deadline.restore(Deadline.NONE);
+        Deadline.set(nanoTime + TimeUnit.MILLISECONDS.toNanos(100));
+        assertNull(guardRail.acquirePermits(1L, nanoTime));
+    }
+
+    @Test
+    public void latencyEstimateIsRefreshedOncePerInterval() {
+        Deadline.set(nanoTime + TimeUnit.MILLISECONDS.toNanos(20));
+        assertNull(guardRail.acquirePermits(1L, nanoTime));
+
+        for (int i = 0; i < 10; ++i) {
+            guardRail.getResultLatency().write(TestResult.SUCCESS, 1L, TimeUnit.MILLISECONDS.toNanos(50), nanoTime);
+        }
+        assertNull(guardRail.acquirePermits(1L, nanoTime));
+
+        long nextInterval = nanoTime + TimeUnit.SECONDS.toNanos(1);
+        Deadline.restore(Deadline.NONE);
+        Deadline.set(nextInterval + TimeUnit.MILLISECONDS.toNanos(20));
+        assertEquals(Rejected.DEADLINE_EXCEEDED, guardRail.acquirePermits(1L, nextInterval));
+    }
+
+    @Test
+    public void nestedDeadlinesInheritTheEarlierDeadline() {
+        long parent = Deadline.set(nanoTime + 100);
+        long child = Deadline.set(nanoTime + 1000);
+
+        assertEquals(nanoTime + 100, Deadline.current());
+        assertEquals(0L, Deadline.boundTimeout(50L, nanoTime));
+
+        Deadline.restore(child);
+        assertEquals(nanoTime + 100, Deadline.current());
+        Deadline.restore(parent);
+        assertEquals(Deadline.NONE, Deadline.current());
+    }
+}
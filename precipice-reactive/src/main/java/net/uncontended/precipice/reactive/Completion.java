@@ -0,0 +1,32 @@
+/*
+ * Copyright 2016 Timothy Brooks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.uncontended.precipice.reactive;
+
+import net.uncontended.precipice.Failable;
+
+@FunctionalInterface
+public interface Completion<Result extends Failable> {
+
+    /**
+     * Records the result of processing a single stream element. This releases the element's permit
+     * (possibly in a batch with other elements).
+     *
+     * @param result of processing the element
+     */
+    void complete(Result result);
+}
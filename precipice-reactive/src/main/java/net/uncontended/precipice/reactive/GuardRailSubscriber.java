@@ -0,0 +1,351 @@
+/*
+ * Copyright 2016 Timothy Brooks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.uncontended.precipice.reactive;
+
+import net.uncontended.precipice.BackPressure;
+import net.uncontended.precipice.Failable;
+import net.uncontended.precipice.GuardRail;
+import net.uncontended.precipice.rejected.RejectedException;
+import net.uncontended.precipice.semaphore.PrecipiceSemaphore;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A Reactive Streams subscriber that admits elements through a guard rail in batches. Demand is only
+ * signalled upstream after permits for it have been acquired, so a single {@code acquirePermits(n)}
+ * call admits {@code n} elements. The window of held permits is capped at {@code maxBatch} and, if the
+ * guard rail has a {@link PrecipiceSemaphore}, by its remaining capacity.
+ * <p>
+ * Completed elements are grouped by batch and result and released with one {@code releasePermits} call
+ * per group once half of the window has completed (or nothing is in flight or outstanding). The latency
+ * recorded for an element is the time since the batch that admitted it was acquired.
+ * <p>
+ * If permits cannot be acquired while none are held, no demand is signalled and acquisition is retried
+ * with exponential backoff, starting at {@code initialBackoffMillis}. Once {@code maxRetries} retries have
+ * been rejected, the subscription is cancelled and {@link #completion()} fails with a
+ * {@link RejectedException}. Cancelling a subscriber while it is backing off fails it the same way. If the
+ * handler throws, the subscription is cancelled and {@link #completion()} fails with the exception.
+ */
+public class GuardRailSubscriber<Result extends Enum<Result> & Failable, Rejected extends Enum<Rejected>, T>
+        implements Subscriber<T> {
+
+    private static final long DEFAULT_INITIAL_BACKOFF_MILLIS = 1;
+    private static final int DEFAULT_MAX_RETRIES = 10;
+    private static final ScheduledExecutorService RETRY_SCHEDULER = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "precipice-subscriber-retry");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    private static final AtomicIntegerFieldUpdater<ItemCompletion> DONE =
+            AtomicIntegerFieldUpdater.newUpdater(ItemCompletion.class, "done");
+
+    private final GuardRail<Result, Rejected> guardRail;
+    private final ItemHandler<T, Result> handler;
+    private final PrecipiceSemaphore semaphore;
+    private final Result[] results;
+    private final long maxBatch;
+    private final long releaseThreshold;
+    private final AtomicLong undelivered = new AtomicLong(0);
+    private final AtomicLong inFlight = new AtomicLong(0);
+    private final AtomicLong pendingCount = new AtomicLong(0);
+    private final ConcurrentLinkedQueue<Batch> deliveringBatches = new ConcurrentLinkedQueue<>();
+    private final List<Batch> openBatches = new ArrayList<>();
+    private final CompletableFuture<Void> completion = new CompletableFuture<>();
+    private Subscription subscription;
+    private long permitsHeld = 0;
+    private final long initialBackoffMillis;
+    private final int maxRetries;
+    private Rejected lastRejected;
+    private int retries = 0;
+    private boolean retryScheduled = false;
+    private volatile boolean upstreamDone = false;
+    private volatile Throwable upstreamError;
+
+    public GuardRailSubscriber(GuardRail<Result, Rejected> guardRail, ItemHandler<T, Result> handler, int maxBatch) {
+        this(guardRail, handler, maxBatch, DEFAULT_INITIAL_BACKOFF_MILLIS, DEFAULT_MAX_RETRIES);
+    }
+
+    public GuardRailSubscriber(GuardRail<Result, Rejected> guardRail, ItemHandler<T, Result> handler, int maxBatch,
+                               long initialBackoffMillis, int maxRetries) {
+        if (maxBatch < 1) {
+            throw new IllegalArgumentException("Max batch must be positive. Found: " + maxBatch);
+        } else if (initialBackoffMillis < 1) {
+            throw new IllegalArgumentException("Initial backoff must be positive. Found: " + initialBackoffMillis);
+        } else if (maxRetries < 0 || maxRetries > 30) {
+            throw new IllegalArgumentException("Max retries must be between 0 and 30. Found: " + maxRetries);
+        }
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxRetries = maxRetries;
+        this.guardRail = guardRail;
+        this.handler = handler;
+        this.maxBatch = maxBatch;
+        this.releaseThreshold = Math.max(1, maxBatch / 2);
+        this.semaphore = findSemaphore(guardRail);
+        this.results = guardRail.getResultCounts().getMetricClazz().getEnumConstants();
+    }
+
+    @Override
+    public void onSubscribe(Subscription subscription) {
+        synchronized (this) {
+            if (this.subscription != null) {
+                subscription.cancel();
+                return;
+            }
+            this.subscription = subscription;
+            requestMore();
+        }
+    }
+
+    @Override
+    public void onNext(T item) {
+        for (; ; ) {
+            long current = undelivered.get();
+            if (current <= 0) {
+                // Demand was withdrawn by a cancellation and its permit already released
+                return;
+            } else if (undelivered.compareAndSet(current, current - 1)) {
+                break;
+            }
+        }
+        // Demand is signalled batch by batch, so elements arrive in batch order
+        Batch batch = deliveringBatches.peek();
+        if (++batch.delivered == batch.size) {
+            deliveringBatches.poll();
+        }
+        inFlight.incrementAndGet();
+
+        ItemCompletion<Result> itemCompletion = new ItemCompletion<>(this, batch);
+        try {
+            handler.onItem(item, itemCompletion);
+        } catch (Exception e) {
+            if (DONE.compareAndSet(itemCompletion, 0, 1)) {
+                batch.abandoned.incrementAndGet();
+                inFlight.decrementAndGet();
+            }
+            if (upstreamError == null) {
+                upstreamError = e;
+            }
+            cancel();
+        }
+    }
+
+    @Override
+    public void onError(Throwable t) {
+        upstreamError = t;
+        upstreamDone = true;
+        drain();
+    }
+
+    @Override
+    public void onComplete() {
+        upstreamDone = true;
+        drain();
+    }
+
+    /**
+     * Cancels the upstream subscription. Elements already admitted still complete normally.
+     */
+    public void cancel() {
+        Subscription subscription;
+        synchronized (this) {
+            subscription = this.subscription;
+            if (lastRejected != null && upstreamError == null) {
+                upstreamError = new RejectedException(lastRejected);
+            }
+        }
+        if (subscription != null) {
+            subscription.cancel();
+        }
+        upstreamDone = true;
+        drain();
+    }
+
+    /**
+     * Returns a future that completes when the upstream has terminated and every admitted element has
+     * completed and released its permit.
+     *
+     * @return the completion future
+     */
+    public CompletableFuture<Void> completion() {
+        return completion;
+    }
+
+    private void completed(Batch batch, Result result) {
+        batch.pendingByResult.incrementAndGet(result.ordinal());
+        long pending = pendingCount.incrementAndGet();
+        long stillInFlight = inFlight.decrementAndGet();
+        if (pending >= releaseThreshold || (stillInFlight == 0 && (upstreamDone || undelivered.get() == 0))) {
+            drain();
+        }
+    }
+
+    private synchronized void drain() {
+        long nanoTime = guardRail.getClock().nanoTime();
+        long released = 0;
+        long abandoned = 0;
+        for (Iterator<Batch> iterator = openBatches.iterator(); iterator.hasNext(); ) {
+            Batch batch = iterator.next();
+            for (int i = 0; i < results.length; ++i) {
+                long count = batch.pendingByResult.getAndSet(i, 0);
+                if (count != 0) {
+                    guardRail.releasePermits(count, results[i], batch.startNanos, nanoTime);
+                    batch.outstanding -= count;
+                    released += count;
+                }
+            }
+            long dropped = batch.abandoned.getAndSet(0);
+            batch.outstanding -= dropped;
+            abandoned += dropped;
+            if (batch.outstanding == 0) {
+                iterator.remove();
+            }
+        }
+        if (abandoned != 0) {
+            guardRail.releasePermitsWithoutResult(abandoned, nanoTime);
+        }
+        pendingCount.addAndGet(-released);
+        permitsHeld -= released + abandoned;
+
+        if (upstreamDone) {
+            long unused = undelivered.getAndSet(0);
+            if (unused != 0) {
+                guardRail.releasePermitsWithoutResult(unused, nanoTime);
+                permitsHeld -= unused;
+            }
+            if (permitsHeld == 0 && !completion.isDone()) {
+                openBatches.clear();
+                deliveringBatches.clear();
+                if (upstreamError != null) {
+                    completion.completeExceptionally(upstreamError);
+                } else {
+                    completion.complete(null);
+                }
+            }
+        } else {
+            requestMore();
+        }
+    }
+
+    private void requestMore() {
+        if (subscription == null || upstreamDone || permitsHeld >= maxBatch) {
+            return;
+        }
+
+        long number = maxBatch - permitsHeld;
+        if (semaphore != null) {
+            number = Math.max(1, Math.min(number, semaphore.remainingCapacity()));
+        }
+
+        long nanoTime = guardRail.getClock().nanoTime();
+        Rejected rejected = guardRail.acquirePermits(number, nanoTime);
+        if (rejected == null) {
+            permitsHeld += number;
+            lastRejected = null;
+            retries = 0;
+            Batch batch = new Batch(number, nanoTime, results.length);
+            openBatches.add(batch);
+            deliveringBatches.add(batch);
+            undelivered.addAndGet(number);
+            subscription.request(number);
+        } else if (permitsHeld == 0) {
+            lastRejected = rejected;
+            if (retries == maxRetries) {
+                upstreamError = new RejectedException(rejected);
+                upstreamDone = true;
+                subscription.cancel();
+                completion.completeExceptionally(upstreamError);
+            } else if (!retryScheduled) {
+                retryScheduled = true;
+                long backoff = initialBackoffMillis << retries++;
+                RETRY_SCHEDULER.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        synchronized (GuardRailSubscriber.this) {
+                            retryScheduled = false;
+                        }
+                        drain();
+                    }
+                }, backoff, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    private static <Rejected extends Enum<Rejected>> PrecipiceSemaphore
+    findSemaphore(GuardRail<?, Rejected> guardRail) {
+        for (BackPressure<Rejected> backPressure : guardRail.getBackPressure().values()) {
+            if (backPressure instanceof PrecipiceSemaphore) {
+                return (PrecipiceSemaphore) backPressure;
+            }
+        }
+        return null;
+    }
+
+    private static class Batch {
+        private final long size;
+        private final long startNanos;
+        private final AtomicLongArray pendingByResult;
+        private final AtomicLong abandoned = new AtomicLong(0);
+        // Only accessed by the thread delivering elements
+        private long delivered = 0;
+        // Guarded by the subscriber
+        private long outstanding;
+
+        private Batch(long size, long startNanos, int resultCount) {
+            this.size = size;
+            this.startNanos = startNanos;
+            this.outstanding = size;
+            this.pendingByResult = new AtomicLongArray(resultCount);
+        }
+    }
+
+    private static class ItemCompletion<Result extends Enum<Result> & Failable> implements Completion<Result> {
+        private final GuardRailSubscriber<Result, ?, ?> subscriber;
+        private final Batch batch;
+        volatile int done = 0;
+
+        private ItemCompletion(GuardRailSubscriber<Result, ?, ?> subscriber, Batch batch) {
+            this.subscriber = subscriber;
+            this.batch = batch;
+        }
+
+        @Override
+        public void complete(Result result) {
+            if (DONE.compareAndSet(this, 0, 1)) {
+                subscriber.completed(batch, result);
+            }
+        }
+    }
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright 2016 Timothy Brooks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.uncontended.precipice.reactive;
+
+import net.uncontended.precipice.Failable;
+
+@FunctionalInterface
+public interface ItemHandler<T, Result extends Failable> {
+
+    /**
+     * Processes an element that has been admitted by the guard rail. The completion must be called
+     * exactly once when processing finishes. It may be called from any thread.
+     *
+     * @param item       the element
+     * @param completion to record the result with
+     */
+    void onItem(T item, Completion<Result> completion);
+}
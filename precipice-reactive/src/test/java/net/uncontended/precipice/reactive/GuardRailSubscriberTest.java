@@ -0,0 +1,279 @@
+/*
+ * Copyright 2016 Timothy Brooks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.uncontended.precipice.reactive;
+
+import net.uncontended.precipice.GuardRail;
+import net.uncontended.precipice.GuardRailBuilder;
+import net.uncontended.precipice.metrics.counts.TotalCounts;
+import net.uncontended.precipice.metrics.latency.WritableLatency;
+import net.uncontended.precipice.reactive.test_utils.TestResult;
+import net.uncontended.precipice.rejected.Rejected;
+import net.uncontended.precipice.rejected.RejectedException;
+import net.uncontended.precipice.semaphore.LongSemaphore;
+import net.uncontended.precipice.time.Clock;
+import org.junit.Before;
+import org.junit.Test;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class GuardRailSubscriberTest {
+
+    private LongSemaphore<Rejected> semaphore;
+    private TotalCounts<TestResult> resultCounts;
+    private GuardRail<TestResult, Rejected> guardRail;
+
+    @Before
+    public void setUp() {
+        semaphore = new LongSemaphore<>(Rejected.MAX_CONCURRENCY_LEVEL_EXCEEDED, 10);
+        resultCounts = new TotalCounts<>(TestResult.class);
+        guardRail = new GuardRailBuilder<TestResult, Rejected>()
+                .name("stream")
+                .resultCounts(resultCounts)
+                .rejectedCounts(new TotalCounts<>(Rejected.class))
+                .addBackPressure(semaphore)
+                .build();
+    }
+
+    @Test
+    public void elementsAreAdmittedInBatches() throws Exception {
+        RangePublisher publisher = new RangePublisher(100);
+        GuardRailSubscriber<TestResult, Rejected, Integer> subscriber = new GuardRailSubscriber<>(guardRail,
+                (item, completion) -> completion.complete(item % 10 == 0 ? TestResult.ERROR : TestResult.SUCCESS), 8);
+
+        publisher.subscribe(subscriber);
+
+        subscriber.completion().get();
+        assertEquals(100, resultCounts.total());
+        assertEquals(10, resultCounts.getCount(TestResult.ERROR));
+        assertEquals(0, semaphore.currentConcurrencyLevel());
+        assertTrue(publisher.requests.size() < 100);
+        for (long request : publisher.requests) {
+            assertTrue(request <= 8);
+        }
+    }
+
+    @Test
+    public void demandIsBoundedByHeldPermits() throws Exception {
+        RangePublisher publisher = new RangePublisher(20);
+        final List<Completion<TestResult>> completions = new ArrayList<>();
+        GuardRailSubscriber<TestResult, Rejected, Integer> subscriber = new GuardRailSubscriber<>(guardRail,
+                (item, completion) -> completions.add(completion), 8);
+
+        publisher.subscribe(subscriber);
+
+        assertEquals(8, completions.size());
+        assertEquals(8, semaphore.currentConcurrencyLevel());
+
+        while (!completions.isEmpty()) {
+            completions.remove(0).complete(TestResult.SUCCESS);
+        }
+
+        subscriber.completion().get();
+        assertEquals(20, resultCounts.total());
+        assertEquals(0, semaphore.currentConcurrencyLevel());
+    }
+
+    @Test
+    public void rejectedStreamIsRetriedWithBackoff() throws Exception {
+        assertNull(semaphore.acquirePermit(10, System.nanoTime()));
+        RangePublisher publisher = new RangePublisher(5);
+        GuardRailSubscriber<TestResult, Rejected, Integer> subscriber = new GuardRailSubscriber<>(guardRail,
+                (item, completion) -> completion.complete(TestResult.SUCCESS), 8);
+
+        publisher.subscribe(subscriber);
+
+        assertFalse(publisher.cancelled);
+        assertTrue(publisher.requests.isEmpty());
+        assertFalse(subscriber.completion().isDone());
+
+        semaphore.releasePermit(10, System.nanoTime());
+
+        subscriber.completion().get(10, TimeUnit.SECONDS);
+        assertEquals(5, resultCounts.total());
+        assertEquals(0, semaphore.currentConcurrencyLevel());
+    }
+
+    @Test
+    public void streamFailsOnceRetriesAreExhausted() throws Exception {
+        assertNull(semaphore.acquirePermit(10, System.nanoTime()));
+        RangePublisher publisher = new RangePublisher(5);
+        GuardRailSubscriber<TestResult, Rejected, Integer> subscriber = new GuardRailSubscriber<>(guardRail,
+                (item, completion) -> completion.complete(TestResult.SUCCESS), 8, 1, 2);
+
+        publisher.subscribe(subscriber);
+
+        try {
+            subscriber.completion().get(10, TimeUnit.SECONDS);
+            fail("Should have been rejected");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RejectedException);
+            assertEquals(Rejected.MAX_CONCURRENCY_LEVEL_EXCEEDED, ((RejectedException) e.getCause()).reason);
+        }
+        assertTrue(publisher.cancelled);
+        assertTrue(publisher.requests.isEmpty());
+    }
+
+    @Test
+    public void cancellingRejectedStreamFailsCompletion() throws Exception {
+        assertNull(semaphore.acquirePermit(10, System.nanoTime()));
+        RangePublisher publisher = new RangePublisher(5);
+        GuardRailSubscriber<TestResult, Rejected, Integer> subscriber = new GuardRailSubscriber<>(guardRail,
+                (item, completion) -> completion.complete(TestResult.SUCCESS), 8);
+
+        publisher.subscribe(subscriber);
+        subscriber.cancel();
+
+        assertTrue(publisher.cancelled);
+        try {
+            subscriber.completion().get();
+            fail("Should have been rejected");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RejectedException);
+        }
+    }
+
+    @Test
+    public void latencyIsMeasuredFromTheBatchThatAdmittedTheElement() throws Exception {
+        final AtomicLong nanoTime = new AtomicLong(100);
+        Clock clock = new Clock() {
+            @Override
+            public long currentTimeMillis() {
+                return nanoTime.get() / 1000000;
+            }
+
+            @Override
+            public long nanoTime() {
+                return nanoTime.get();
+            }
+        };
+        @SuppressWarnings("unchecked")
+        WritableLatency<TestResult> latency = mock(WritableLatency.class);
+        guardRail = new GuardRailBuilder<TestResult, Rejected>()
+                .name("stream")
+                .resultCounts(resultCounts)
+                .rejectedCounts(new TotalCounts<>(Rejected.class))
+                .resultLatency(latency)
+                .addBackPressure(semaphore)
+                .clock(clock)
+                .build();
+        RangePublisher publisher = new RangePublisher(6);
+        final List<Completion<TestResult>> completions = new ArrayList<>();
+        GuardRailSubscriber<TestResult, Rejected, Integer> subscriber = new GuardRailSubscriber<>(guardRail,
+                (item, completion) -> completions.add(completion), 4);
+
+        publisher.subscribe(subscriber);
+        assertEquals(4, completions.size());
+
+        nanoTime.set(200);
+        completions.get(0).complete(TestResult.SUCCESS);
+        completions.get(1).complete(TestResult.SUCCESS);
+        assertEquals(6, completions.size());
+
+        nanoTime.set(300);
+        completions.get(2).complete(TestResult.SUCCESS);
+        completions.get(3).complete(TestResult.SUCCESS);
+        completions.get(4).complete(TestResult.SUCCESS);
+        completions.get(5).complete(TestResult.SUCCESS);
+
+        subscriber.completion().get();
+        verify(latency).write(TestResult.SUCCESS, 2, 100, 200);
+        verify(latency).write(TestResult.SUCCESS, 2, 200, 300);
+        verify(latency).write(TestResult.SUCCESS, 2, 100, 300);
+    }
+
+    @Test
+    public void handlerExceptionCancelsStreamAndReleasesPermit() throws Exception {
+        RangePublisher publisher = new RangePublisher(20);
+        final RuntimeException exception = new RuntimeException("Handler failure");
+        GuardRailSubscriber<TestResult, Rejected, Integer> subscriber = new GuardRailSubscriber<>(guardRail,
+                (item, completion) -> {
+                    if (item == 3) {
+                        throw exception;
+                    }
+                    completion.complete(TestResult.SUCCESS);
+                }, 8);
+
+        publisher.subscribe(subscriber);
+
+        assertTrue(publisher.cancelled);
+        try {
+            subscriber.completion().get();
+            fail("Should have failed");
+        } catch (ExecutionException e) {
+            assertSame(exception, e.getCause());
+        }
+        assertEquals(3, resultCounts.total());
+        assertEquals(0, semaphore.currentConcurrencyLevel());
+    }
+
+    private static class RangePublisher implements Publisher<Integer> {
+
+        private final int count;
+        private final List<Long> requests = new CopyOnWriteArrayList<>();
+        private volatile boolean cancelled = false;
+
+        private RangePublisher(int count) {
+            this.count = count;
+        }
+
+        @Override
+        public void subscribe(final Subscriber<? super Integer> subscriber) {
+            subscriber.onSubscribe(new Subscription() {
+                private int next = 0;
+                private long demand = 0;
+                private boolean emitting = false;
+
+                @Override
+                public void request(long n) {
+                    requests.add(n);
+                    demand += n;
+                    if (emitting) {
+                        return;
+                    }
+                    emitting = true;
+                    while (demand > 0 && next < count && !cancelled) {
+                        --demand;
+                        subscriber.onNext(next++);
+                    }
+                    emitting = false;
+                    if (next == count && !cancelled) {
+                        cancelled = true;
+                        subscriber.onComplete();
+                    }
+                }
+
+                @Override
+                public void cancel() {
+                    cancelled = true;
+                }
+            });
+        }
+    }
+}
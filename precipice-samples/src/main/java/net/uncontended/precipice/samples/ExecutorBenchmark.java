@@ -0,0 +1,105 @@
+/*
+ * Copyright 2016 Timothy Brooks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.uncontended.precipice.samples;
+
+import net.uncontended.precipice.GuardRail;
+import net.uncontended.precipice.GuardRailBuilder;
+import net.uncontended.precipice.metrics.counts.TotalCounts;
+import net.uncontended.precipice.rejected.Rejected;
+import net.uncontended.precipice.rejected.RejectedException;
+import net.uncontended.precipice.result.TimeoutableResult;
+import net.uncontended.precipice.semaphore.LongSemaphore;
+import net.uncontended.precipice.threadpool.ThreadPoolService;
+import net.uncontended.precipice.threadpool.utils.PrecipiceExecutors;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares the throughput of short guarded tasks on a ThreadPoolExecutor backed by an ArrayBlockingQueue
+ * with the work stealing executor. Usage: ExecutorBenchmark [threads] [producers] [tasksPerProducer].
+ */
+public final class ExecutorBenchmark {
+
+    private static final int QUEUE_SIZE = 1024;
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int producers = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int tasksPerProducer = args.length > 2 ? Integer.parseInt(args[2]) : 500000;
+
+        for (int round = 0; round < 3; ++round) {
+            run("ThreadPoolExecutor", PrecipiceExecutors.threadPoolExecutor("tpe", threads, QUEUE_SIZE),
+                    producers, tasksPerProducer);
+            run("WorkStealing", PrecipiceExecutors.workStealingExecutor("ws", threads, QUEUE_SIZE),
+                    producers, tasksPerProducer);
+        }
+    }
+
+    private static void run(String name, ExecutorService executor, int producers, final int tasksPerProducer)
+            throws InterruptedException {
+        GuardRail<TimeoutableResult, Rejected> guardRail = new GuardRailBuilder<TimeoutableResult, Rejected>()
+                .name(name)
+                .resultCounts(new TotalCounts<>(TimeoutableResult.class))
+                .rejectedCounts(new TotalCounts<>(Rejected.class))
+                .addBackPressure(new LongSemaphore<>(Rejected.MAX_CONCURRENCY_LEVEL_EXCEEDED, QUEUE_SIZE))
+                .build();
+        final ThreadPoolService<Rejected> service = new ThreadPoolService<>(executor, guardRail);
+        final AtomicLong completed = new AtomicLong();
+        final long total = (long) producers * tasksPerProducer;
+        final CountDownLatch done = new CountDownLatch(1);
+        final Callable<Long> task = new Callable<Long>() {
+            @Override
+            public Long call() {
+                if (completed.incrementAndGet() == total) {
+                    done.countDown();
+                }
+                return 1L;
+            }
+        };
+
+        long start = System.nanoTime();
+        for (int i = 0; i < producers; ++i) {
+            Thread producer = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < tasksPerProducer; ++j) {
+                        for (; ; ) {
+                            try {
+                                service.submit(task);
+                                break;
+                            } catch (RejectedException e) {
+                                Thread.yield();
+                            }
+                        }
+                    }
+                }
+            });
+            producer.start();
+        }
+        done.await();
+        long elapsed = System.nanoTime() - start;
+        service.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+
+        System.out.printf("%-20s %,15d tasks/s%n", name, total * TimeUnit.SECONDS.toNanos(1) / elapsed);
+    }
+}
@@ -20,6 +20,8 @@ package net.uncontended.precipice.threadpool;
 import net.uncontended.precipice.Cancellable;
 import net.uncontended.precipice.Failable;
 import net.uncontended.precipice.concurrent.PrecipicePromise;
+import net.uncontended.precipice.metrics.latency.WritableLatency;
+import net.uncontended.precipice.time.Clock;
 
 import java.util.concurrent.Callable;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -36,6 +38,9 @@ public class CancellableTask<Status extends Enum<Status> & Failable, T> implemen
     private final Callable<T> callable;
     private final AtomicInteger state = new AtomicInteger(PENDING);
     private volatile Thread runner;
+    private WritableLatency<ExecutionPhase> phaseLatency;
+    private Clock clock;
+    private long submitNanos;
 
     public CancellableTask(ResultToStatus<Status, T> resultToStatus, ThrowableToStatus<Status> throwableToStatus,
                            Callable<T> callable, PrecipicePromise<Status, T> promise) {
@@ -51,7 +56,12 @@ public class CancellableTask<Status extends Enum<Status> & Failable, T> implemen
             int state = this.state.get();
             if (state == PENDING && !promise.future().isDone()) {
                 runner = Thread.currentThread();
-                T result = callable.call();
+                T result;
+                if (phaseLatency == null) {
+                    result = callable.call();
+                } else {
+                    result = timedCall();
+                }
                 safeSetSuccess(result);
             } else if (state == INTERRUPTING) {
                 waitForInterruption();
@@ -64,6 +74,31 @@ public class CancellableTask<Status extends Enum<Status> & Failable, T> implemen
         }
     }
 
+    /**
+     * Records the queue and service time of this task to the latency passed. This must be called
+     * before the task is handed to an executor.
+     *
+     * @param phaseLatency the latency to record to
+     * @param clock        the clock used for time
+     * @param submitNanos  the time that the task was submitted
+     */
+    public void recordPhases(WritableLatency<ExecutionPhase> phaseLatency, Clock clock, long submitNanos) {
+        this.phaseLatency = phaseLatency;
+        this.clock = clock;
+        this.submitNanos = submitNanos;
+    }
+
+    private T timedCall() throws Exception {
+        long startNanos = clock.nanoTime();
+        phaseLatency.write(ExecutionPhase.QUEUE, 1L, startNanos - submitNanos, startNanos);
+        try {
+            return callable.call();
+        } finally {
+            long endNanos = clock.nanoTime();
+            phaseLatency.write(ExecutionPhase.SERVICE, 1L, endNanos - startNanos, endNanos);
+        }
+    }
+
     @Override
     public void cancel() {
         cancel(null, null);
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2016 Timothy Brooks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.uncontended.precipice.threadpool;
+
+import net.uncontended.precipice.GuardRail;
+import net.uncontended.precipice.metrics.IntervalIterator;
+import net.uncontended.precipice.metrics.counts.PartitionedCount;
+import net.uncontended.precipice.metrics.counts.RollingCounts;
+import net.uncontended.precipice.metrics.counts.WritableCounts;
+import net.uncontended.precipice.metrics.latency.Latency;
+import net.uncontended.precipice.metrics.latency.RollingLatency;
+import net.uncontended.precipice.metrics.latency.WritableLatency;
+import net.uncontended.precipice.rejected.Rejected;
+import net.uncontended.precipice.result.TimeoutableResult;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically resizes a thread pool using Little's law: the number of threads needed is the arrival
+ * rate multiplied by the time each task spends on a thread, divided by the target utilization so that
+ * some headroom remains. The arrival rate is taken from the rolling result counts of the guard rail plus
+ * the rolling counts of capacity rejections (by default {@link Rejected#MAX_CONCURRENCY_LEVEL_EXCEEDED}
+ * and {@link Rejected#QUEUE_FULL}). Other rejections, such as an open circuit, do not indicate demand the
+ * pool could have served and are ignored. The service time is the mean of the rolling
+ * {@link ExecutionPhase#SERVICE} latency, which excludes time spent queued. Little's law holds for means,
+ * and the target utilization already provides the headroom. The size is kept within the configured bounds.
+ */
+public class ElasticPoolSizer {
+
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "precipice-pool-sizer");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    private final ThreadPoolExecutor executor;
+    private final GuardRail<TimeoutableResult, ?> guardRail;
+    private final RollingLatency<ExecutionPhase> phaseLatency;
+    private final int minSize;
+    private final int maxSize;
+    private final double targetUtilization;
+    private final Collection<? extends Enum<?>> capacityRejections;
+    private volatile ScheduledFuture<?> scheduled;
+
+    public ElasticPoolSizer(ThreadPoolExecutor executor, GuardRail<TimeoutableResult, ?> guardRail,
+                            WritableLatency<ExecutionPhase> phaseLatency, int minSize, int maxSize) {
+        this(executor, guardRail, phaseLatency, minSize, maxSize, 0.8,
+                Arrays.asList(Rejected.MAX_CONCURRENCY_LEVEL_EXCEEDED, Rejected.QUEUE_FULL));
+    }
+
+    public ElasticPoolSizer(ThreadPoolExecutor executor, GuardRail<TimeoutableResult, ?> guardRail,
+                            WritableLatency<ExecutionPhase> phaseLatency, int minSize, int maxSize,
+                            double targetUtilization, Collection<? extends Enum<?>> capacityRejections) {
+        if (minSize < 1 || maxSize < minSize) {
+            throw new IllegalArgumentException("Pool bounds must satisfy 1 <= min <= max. Found: " + minSize
+                    + " and " + maxSize);
+        } else if (targetUtilization <= 0 || targetUtilization > 1) {
+            throw new IllegalArgumentException("Target utilization must be in (0, 1]. Found: " + targetUtilization);
+        } else if (!(guardRail.getResultCounts() instanceof RollingCounts)) {
+            throw new IllegalArgumentException("Elastic sizing requires rolling result counts.");
+        } else if (!(phaseLatency instanceof RollingLatency)) {
+            throw new IllegalArgumentException("Elastic sizing requires rolling phase latency.");
+        }
+        this.executor = executor;
+        this.guardRail = guardRail;
+        this.phaseLatency = (RollingLatency<ExecutionPhase>) phaseLatency;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.targetUtilization = targetUtilization;
+        this.capacityRejections = new ArrayList<>(capacityRejections);
+    }
+
+    public void start(long interval, TimeUnit unit) {
+        scheduled = SCHEDULER.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                resize(guardRail.getClock().nanoTime());
+            }
+        }, interval, interval, unit);
+    }
+
+    public void stop() {
+        ScheduledFuture<?> scheduled = this.scheduled;
+        if (scheduled != null) {
+            scheduled.cancel(false);
+        }
+    }
+
+    /**
+     * Computes the target size from the current metrics and applies it to the executor.
+     *
+     * @param nanoTime the current nano time
+     * @return the new pool size
+     */
+    public int resize(long nanoTime) {
+        int target = targetSize(nanoTime);
+        if (target > executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(target);
+            executor.setCorePoolSize(target);
+        } else {
+            executor.setCorePoolSize(target);
+            executor.setMaximumPoolSize(target);
+        }
+        return target;
+    }
+
+    int targetSize(long nanoTime) {
+        double arrivalsPerNano = arrivalRate((RollingCounts<TimeoutableResult>) guardRail.getResultCounts(), nanoTime);
+        WritableCounts<?> rejected = guardRail.getRejectedCounts();
+        if (rejected instanceof RollingCounts) {
+            arrivalsPerNano += rejectionRate((RollingCounts<?>) rejected, capacityRejections, nanoTime);
+        }
+        double needed = Math.ceil(arrivalsPerNano * serviceTimeNanos(nanoTime) / targetUtilization);
+        return (int) Math.max(minSize, Math.min(maxSize, needed));
+    }
+
+    private double serviceTimeNanos(long nanoTime) {
+        return Latency.rollingMean(phaseLatency, ExecutionPhase.SERVICE, nanoTime);
+    }
+
+    private static <T extends Enum<T>> double rejectionRate(RollingCounts<T> counts,
+                                                            Collection<? extends Enum<?>> reasons, long nanoTime) {
+        Class<T> clazz = counts.getMetricClazz();
+        List<T> counted = new ArrayList<>(reasons.size());
+        for (Enum<?> reason : reasons) {
+            if (clazz.isInstance(reason)) {
+                counted.add(clazz.cast(reason));
+            }
+        }
+        if (counted.isEmpty()) {
+            return 0;
+        }
+
+        IntervalIterator<PartitionedCount<T>> intervals = counts.intervals(nanoTime);
+        long windowNanos = -intervals.intervalStart();
+        long total = 0;
+        while (intervals.hasNext()) {
+            PartitionedCount<T> interval = intervals.next();
+            for (T reason : counted) {
+                total += interval.getCount(reason);
+            }
+        }
+        return windowNanos > 0 ? (double) total / windowNanos : 0;
+    }
+
+    private static <T extends Enum<T>> double arrivalRate(RollingCounts<T> counts, long nanoTime) {
+        IntervalIterator<PartitionedCount<T>> intervals = counts.intervals(nanoTime);
+        long windowNanos = -intervals.intervalStart();
+        long total = 0;
+        while (intervals.hasNext()) {
+            total += intervals.next().total();
+        }
+        return windowNanos > 0 ? (double) total / windowNanos : 0;
+    }
+}
@@ -0,0 +1,28 @@
+/*
+ * Copyright 2016 Timothy Brooks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.uncontended.precipice.threadpool;
+
+/**
+ * The phases of a task executed by a {@link ThreadPoolService}. Queue time is measured from submission
+ * until a worker thread starts the task; service time is measured from that point until the task's
+ * callable returns.
+ */
+public enum ExecutionPhase {
+    QUEUE,
+    SERVICE
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2016 Timothy Brooks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.uncontended.precipice.threadpool;
+
+import net.uncontended.precipice.GuardRail;
+import net.uncontended.precipice.concurrent.PrecipicePromise;
+import net.uncontended.precipice.factories.Asynchronous;
+import net.uncontended.precipice.result.TimeoutableResult;
+import net.uncontended.precipice.threadpool.utils.TaskFactory;
+import net.uncontended.precipice.timeout.Timeout;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Launches the backup attempt of a hedged request once the hedge delay has elapsed. The permit for the
+ * backup service is only acquired when the hedge fires, so the backup capacity is not held while the
+ * primary attempt may still succeed. If the backup rejects the permit, no hedge is launched.
+ */
+class HedgeTimeout<T> implements Timeout {
+
+    private static final int PENDING = 0;
+    private static final int LAUNCHING = 1;
+    private static final int LAUNCHED = 2;
+    private static final int CANCEL_REQUESTED = 3;
+    private static final int ABANDONED = 4;
+
+    private final AtomicInteger state = new AtomicInteger(PENDING);
+    private final ThreadPoolService<?> backup;
+    private final Callable<T> callable;
+    private final PrecipicePromise<TimeoutableResult, T> parent;
+    private final long timeoutMillis;
+    private final long startNanos;
+    private final long deadlineNanos;
+    private volatile CancellableTask<TimeoutableResult, T> backupTask;
+
+    HedgeTimeout(ThreadPoolService<?> backup, Callable<T> callable, PrecipicePromise<TimeoutableResult, T> parent,
+                 long timeoutMillis, long startNanos, long deadlineNanos) {
+        this.backup = backup;
+        this.callable = callable;
+        this.parent = parent;
+        this.timeoutMillis = timeoutMillis;
+        this.startNanos = startNanos;
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    @Override
+    public void timeout() {
+        if (!state.compareAndSet(PENDING, LAUNCHING)) {
+            return;
+        }
+        GuardRail<TimeoutableResult, ?> guardRail = backup.guardRail();
+        long nanoTime = guardRail.getClock().nanoTime();
+        if (guardRail.acquirePermits(1L, nanoTime) != null) {
+            state.set(ABANDONED);
+            return;
+        }
+        PrecipicePromise<TimeoutableResult, T> internal = Asynchronous.getPromise(guardRail, 1L, nanoTime, parent);
+        CancellableTask<TimeoutableResult, T> task = TaskFactory.createTask(callable, internal, deadlineNanos);
+        ThreadPoolService.recordPhases(backup, task, nanoTime);
+        backupTask = task;
+        try {
+            backup.getExecutor().execute(task);
+        } catch (RejectedExecutionException e) {
+            state.set(ABANDONED);
+            guardRail.releasePermitsWithoutResult(1L, nanoTime);
+            return;
+        }
+        backup.getTimeoutService().scheduleTimeout(new ThreadPoolTimeout<>(task), timeoutMillis, startNanos);
+        if (!state.compareAndSet(LAUNCHING, LAUNCHED)) {
+            task.cancel(TimeoutableResult.CANCELLED, new CancellationException());
+        }
+    }
+
+    void cancel() {
+        for (; ; ) {
+            int current = state.get();
+            if (current == PENDING && state.compareAndSet(PENDING, ABANDONED)) {
+                return;
+            } else if (current == LAUNCHING && state.compareAndSet(LAUNCHING, CANCEL_REQUESTED)) {
+                // The launching thread will cancel the task once it has been handed to the executor.
+                return;
+            } else if (current == LAUNCHED) {
+                backupTask.cancel(TimeoutableResult.CANCELLED, new CancellationException());
+                return;
+            } else if (current == CANCEL_REQUESTED || current == ABANDONED) {
+                return;
+            }
+        }
+    }
+}
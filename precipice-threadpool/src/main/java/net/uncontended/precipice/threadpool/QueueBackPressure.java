@@ -0,0 +1,95 @@
+/*
+ * Copyright 2016 Timothy Brooks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.uncontended.precipice.threadpool;
+
+import net.uncontended.precipice.BackPressure;
+import net.uncontended.precipice.Failable;
+import net.uncontended.precipice.GuardRail;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A back pressure mechanism that makes the queue of a thread pool part of admission. A permit is taken
+ * for every task that is about to be queued and returned when a worker thread dequeues it, so a full
+ * queue is rejected by the guard rail with its own reason instead of by the executor after permits have
+ * been acquired.
+ * <p>
+ * Executors created by {@link net.uncontended.precipice.threadpool.utils.PrecipiceExecutors#admittedExecutor}
+ * report dequeues back to this mechanism. Each task uses one permit.
+ */
+public class QueueBackPressure<Rejected extends Enum<Rejected>> implements BackPressure<Rejected> {
+
+    private final Rejected reason;
+    private final long capacity;
+    private final AtomicLong queued = new AtomicLong(0);
+
+    public QueueBackPressure(Rejected reason, long capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Queue capacity must be positive. Found: " + capacity);
+        }
+        this.reason = reason;
+        this.capacity = capacity;
+    }
+
+    @Override
+    public Rejected acquirePermit(long number, long nanoTime) {
+        for (; ; ) {
+            long current = queued.get();
+            long proposed = current + number;
+            if (proposed > capacity) {
+                return reason;
+            } else if (queued.compareAndSet(current, proposed)) {
+                return null;
+            }
+        }
+    }
+
+    @Override
+    public void releasePermit(long number, long nanoTime) {
+        // Permits released without a result belong to tasks that were never queued.
+        queued.getAndAdd(-number);
+    }
+
+    @Override
+    public void releasePermit(long number, Failable result, long nanoTime) {
+        // The permit was already returned when the task was dequeued.
+    }
+
+    @Override
+    public <Result extends Enum<Result> & Failable> void registerGuardRail(GuardRail<Result, Rejected> guardRail) {
+    }
+
+    /**
+     * Called by the executor when a worker thread takes a task off the queue.
+     */
+    public void dequeued() {
+        queued.getAndDecrement();
+    }
+
+    public Rejected reason() {
+        return reason;
+    }
+
+    public long capacity() {
+        return capacity;
+    }
+
+    public long queuedCount() {
+        return queued.get();
+    }
+}
@@ -18,28 +18,42 @@ package net.uncontended.precipice.threadpool;
 
 import net.uncontended.precipice.GuardRail;
 import net.uncontended.precipice.Precipice;
+import net.uncontended.precipice.concurrent.Eventual;
 import net.uncontended.precipice.concurrent.PrecipiceFuture;
 import net.uncontended.precipice.concurrent.PrecipicePromise;
 import net.uncontended.precipice.factories.Asynchronous;
 import net.uncontended.precipice.metrics.counts.WritableCounts;
+import net.uncontended.precipice.metrics.latency.Latency;
+import net.uncontended.precipice.metrics.latency.RollingLatency;
+import net.uncontended.precipice.metrics.latency.WritableLatency;
 import net.uncontended.precipice.pattern.Pattern;
 import net.uncontended.precipice.pattern.PatternStrategy;
 import net.uncontended.precipice.pattern.Sequence;
 import net.uncontended.precipice.rejected.RejectedException;
 import net.uncontended.precipice.result.TimeoutableResult;
 import net.uncontended.precipice.threadpool.utils.TaskFactory;
+import net.uncontended.precipice.timeout.Deadline;
 import net.uncontended.precipice.timeout.DelayQueueTimeoutService;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 public class ThreadPoolPattern<C> implements Precipice<TimeoutableResult, PatternRejected> {
 
     private final GuardRail<TimeoutableResult, PatternRejected> guardRail;
     private final WritableCounts<PatternRejected> rejectedCounts;
     private final Pattern<TimeoutableResult, ThreadPoolService<?>> pattern;
-    private final Map<ThreadPoolService<?>, C> serviceToContext;
+    private final Map<ThreadPoolService<?>, HedgeDelay> hedgeDelays = new ConcurrentHashMap<>();
+    private volatile Map<ThreadPoolService<?>, C> serviceToContext;
 
 
     public ThreadPoolPattern(Map<ThreadPoolService<?>, C> serviceToContext, GuardRail<TimeoutableResult,
@@ -50,7 +64,7 @@ public class ThreadPoolPattern<C> implements Precipice<TimeoutableResult, Patter
     public ThreadPoolPattern(Map<ThreadPoolService<?>, C> serviceToContext,
                              GuardRail<TimeoutableResult, PatternRejected> guardRail,
                              Pattern<TimeoutableResult, ThreadPoolService<?>> pattern) {
-        this.serviceToContext = serviceToContext;
+        this.serviceToContext = snapshot(serviceToContext);
         this.guardRail = guardRail;
         this.rejectedCounts = guardRail.getRejectedCounts();
         this.pattern = pattern;
@@ -69,24 +83,139 @@ public class ThreadPoolPattern<C> implements Precipice<TimeoutableResult, Patter
         if (services.isEmpty()) {
             return handleAllReject(nanoTime);
         }
+        Map<ThreadPoolService<?>, C> contexts = serviceToContext;
 
-        PrecipicePromise<TimeoutableResult, T> promise = Asynchronous.getPromise(guardRail, 1L, nanoTime);
-        long adjustedTimeout = DelayQueueTimeoutService.adjustTimeout(millisTimeout);
+        Eventual<TimeoutableResult, T> promise = Asynchronous.getPromise(guardRail, 1L, nanoTime);
+        long adjustedTimeout = Deadline.boundTimeout(DelayQueueTimeoutService.adjustTimeout(millisTimeout), nanoTime);
+        long deadline = Deadline.fromTimeout(adjustedTimeout, nanoTime);
+        List<ThreadPoolService<?>> selected = new ArrayList<>(4);
+        List<CancellableTask<TimeoutableResult, T>> tasks = new ArrayList<>(4);
         for (ThreadPoolService<?> service : services) {
+            if (!contexts.containsKey(service)) {
+                // Removed by a concurrent update after the strategy selected it
+                service.guardRail().releasePermitsWithoutResult(1L, nanoTime);
+                continue;
+            }
             PrecipicePromise<TimeoutableResult, T> internal = Asynchronous.getPromise(service.guardRail(), 1L, nanoTime, promise);
+            Callable<T> callable = new CallableWithContext<>(action, contexts.get(service));
+            selected.add(service);
+            CancellableTask<TimeoutableResult, T> task = TaskFactory.createTask(callable, internal, deadline);
+            ThreadPoolService.recordPhases(service, task, nanoTime);
+            tasks.add(task);
+        }
+
+        List<CancellableTask<TimeoutableResult, T>> launched = new ArrayList<>(tasks.size());
+        for (int i = 0; i < tasks.size(); ++i) {
+            ThreadPoolService<?> service = selected.get(i);
+            CancellableTask<TimeoutableResult, T> task = tasks.get(i);
+            if (execute(service, task, nanoTime)) {
+                launched.add(task);
+                service.getTimeoutService().scheduleTimeout(new ThreadPoolTimeout<>(task), adjustedTimeout, nanoTime);
+            }
+        }
+        if (launched.isEmpty()) {
+            return handleAllReject(nanoTime);
+        }
+
+        if (launched.size() > 1) {
+            // The first execution to complete wins. The others are cancelled so that they stop consuming threads
+            // and release their permits immediately. Rejected tasks already released their permits in execute,
+            // so they must not be cancelled here.
+            promise.onComplete((result, future) -> {
+                for (CancellableTask<TimeoutableResult, T> task : launched) {
+                    task.cancel(TimeoutableResult.CANCELLED, new CancellationException());
+                }
+            });
+        }
+        return promise.future();
+    }
+
+    /**
+     * Submits the action to the first service returned by the strategy. If that attempt has not completed
+     * once the rolling p95 latency of the first service has elapsed, a second attempt is launched against
+     * the next service. Whichever attempt completes first wins and the other is cancelled.
+     * <p>
+     * The strategy must acquire at least two services for a hedge to be possible. The permit the strategy
+     * acquired for the second service is released immediately and acquired again only if the hedge fires.
+     * If the first service has no recorded latency (or does not use a {@link RollingLatency}), no hedge is
+     * launched. The hedge delay is recomputed once per rolling interval of the first service.
+     *
+     * @param action        the action to run
+     * @param millisTimeout the overall timeout, shared by both attempts
+     * @param <T>           the result type
+     * @return a future completed by the winning attempt
+     */
+    public <T> PrecipiceFuture<TimeoutableResult, T> submitHedged(final PatternCallable<T, C> action, long millisTimeout) {
+        long nanoTime = acquirePermit();
 
-            final C context = serviceToContext.get(service);
-            ExecutorService executor = service.getExecutor();
-            DelayQueueTimeoutService timeoutService = service.getTimeoutService();
+        Sequence<ThreadPoolService<?>> services = pattern.getPrecipices(1L, nanoTime);
+
+        Map<ThreadPoolService<?>, C> contexts = serviceToContext;
+        Iterator<ThreadPoolService<?>> iterator = services.iterator();
+        ThreadPoolService<?> primary = nextMember(iterator, contexts, nanoTime);
+        if (primary == null) {
+            return handleAllReject(nanoTime);
+        }
+        ThreadPoolService<?> backup = nextMember(iterator, contexts, nanoTime);
+        if (backup != null) {
+            backup.guardRail().releasePermitsWithoutResult(1L, nanoTime);
+        }
+        while (iterator.hasNext()) {
+            iterator.next().guardRail().releasePermitsWithoutResult(1L, nanoTime);
+        }
+
+        Eventual<TimeoutableResult, T> promise = Asynchronous.getPromise(guardRail, 1L, nanoTime);
+        long adjustedTimeout = Deadline.boundTimeout(DelayQueueTimeoutService.adjustTimeout(millisTimeout), nanoTime);
+        long deadline = Deadline.fromTimeout(adjustedTimeout, nanoTime);
+        PrecipicePromise<TimeoutableResult, T> internal = Asynchronous.getPromise(primary.guardRail(), 1L, nanoTime, promise);
+        CancellableTask<TimeoutableResult, T> task = TaskFactory.createTask(
+                new CallableWithContext<>(action, contexts.get(primary)), internal, deadline);
+        ThreadPoolService.recordPhases(primary, task, nanoTime);
+
+        if (!execute(primary, task, nanoTime)) {
+            return handleAllReject(nanoTime);
+        }
 
-            Callable<T> callable = new CallableWithContext<>(action, context);
-            CancellableTask<TimeoutableResult, T> task = TaskFactory.createTask(callable, internal);
-            executor.execute(task);
-            timeoutService.scheduleTimeout(new ThreadPoolTimeout<>(task), adjustedTimeout, nanoTime);
+        if (backup != null) {
+            long hedgeMillis = hedgeDelayMillis(primary, nanoTime);
+            if (hedgeMillis > 0 && hedgeMillis < adjustedTimeout) {
+                Callable<T> backupCallable = new CallableWithContext<>(action, contexts.get(backup));
+                HedgeTimeout<T> hedge = new HedgeTimeout<>(backup, backupCallable, promise, adjustedTimeout, nanoTime,
+                        deadline);
+                promise.onComplete((result, future) -> {
+                    task.cancel(TimeoutableResult.CANCELLED, new CancellationException());
+                    hedge.cancel();
+                });
+                primary.getTimeoutService().scheduleTimeout(hedge, hedgeMillis, nanoTime);
+            }
         }
+
+        primary.getTimeoutService().scheduleTimeout(new ThreadPoolTimeout<>(task), adjustedTimeout, nanoTime);
         return promise.future();
     }
 
+    private static <C> ThreadPoolService<?> nextMember(Iterator<ThreadPoolService<?>> iterator,
+                                                       Map<ThreadPoolService<?>, C> contexts, long nanoTime) {
+        while (iterator.hasNext()) {
+            ThreadPoolService<?> service = iterator.next();
+            if (contexts.containsKey(service)) {
+                return service;
+            }
+            service.guardRail().releasePermitsWithoutResult(1L, nanoTime);
+        }
+        return null;
+    }
+
+    private static boolean execute(ThreadPoolService<?> service, Runnable task, long nanoTime) {
+        try {
+            service.getExecutor().execute(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            service.guardRail().releasePermitsWithoutResult(1L, nanoTime);
+            return false;
+        }
+    }
+
     private <T> PrecipiceFuture<TimeoutableResult, T> handleAllReject(long nanoTime) {
         guardRail.releasePermitsWithoutResult(1L, nanoTime);
         rejectedCounts.write(PatternRejected.ALL_REJECTED, 1L, nanoTime);
@@ -102,9 +231,66 @@ public class ThreadPoolPattern<C> implements Precipice<TimeoutableResult, Patter
         return nanoTime;
     }
 
+    private long hedgeDelayMillis(ThreadPoolService<?> service, long nanoTime) {
+        WritableLatency<TimeoutableResult> latency = service.guardRail().getResultLatency();
+        if (!(latency instanceof RollingLatency)) {
+            return 0;
+        }
+        RollingLatency<TimeoutableResult> rolling = (RollingLatency<TimeoutableResult>) latency;
+        Object interval = rolling.current(nanoTime);
+        HedgeDelay cached = hedgeDelays.get(service);
+        if (cached != null && cached.interval == interval) {
+            return cached.millis;
+        }
+        long p95 = Latency.rollingPercentile(rolling, TimeoutableResult.SUCCESS, 95.0, nanoTime);
+        long millis = p95 == 0 ? 0 : Math.max(1, TimeUnit.NANOSECONDS.toMillis(p95));
+        if (serviceToContext.containsKey(service)) {
+            hedgeDelays.put(service, new HedgeDelay(interval, millis));
+        }
+        return millis;
+    }
+
+    /**
+     * Atomically replace the services used by this pattern. Services that are no longer members stop
+     * receiving new submissions but are not shut down, as tasks may still be queued or running on them.
+     * The caller owns the returned services and should shut them down once they have drained.
+     * <p>
+     * The strategy must index the services in the iteration order of the map.
+     *
+     * @param serviceToContext the new services and their contexts
+     * @param strategy         the strategy for the new services
+     * @return the removed services
+     */
+    public synchronized List<ThreadPoolService<?>> updateServices(Map<ThreadPoolService<?>, C> serviceToContext,
+                                                                  PatternStrategy strategy) {
+        // New members must have contexts before the strategy can select them
+        Map<ThreadPoolService<?>, C> merged = new LinkedHashMap<>(this.serviceToContext);
+        merged.putAll(serviceToContext);
+        this.serviceToContext = Collections.unmodifiableMap(merged);
+
+        List<ThreadPoolService<?>> removed = pattern.updatePrecipices(serviceToContext.keySet(), strategy);
+        this.serviceToContext = snapshot(serviceToContext);
+        hedgeDelays.keySet().retainAll(serviceToContext.keySet());
+        return removed;
+    }
+
     public void shutdown() {
         for (ThreadPoolService service : serviceToContext.keySet()) {
             service.shutdown();
         }
     }
+
+    private static <C> Map<ThreadPoolService<?>, C> snapshot(Map<ThreadPoolService<?>, C> serviceToContext) {
+        return Collections.unmodifiableMap(new LinkedHashMap<>(serviceToContext));
+    }
+
+    private static class HedgeDelay {
+        private final Object interval;
+        private final long millis;
+
+        private HedgeDelay(Object interval, long millis) {
+            this.interval = interval;
+            this.millis = millis;
+        }
+    }
 }
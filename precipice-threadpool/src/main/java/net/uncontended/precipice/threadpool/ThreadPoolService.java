@@ -17,34 +17,137 @@
 
 package net.uncontended.precipice.threadpool;
 
+import net.uncontended.precipice.BackPressure;
 import net.uncontended.precipice.GuardRail;
 import net.uncontended.precipice.Precipice;
 import net.uncontended.precipice.concurrent.PrecipiceFuture;
 import net.uncontended.precipice.concurrent.PrecipicePromise;
 import net.uncontended.precipice.factories.Asynchronous;
+import net.uncontended.precipice.metrics.latency.WritableLatency;
+import net.uncontended.precipice.rejected.RejectedException;
 import net.uncontended.precipice.result.TimeoutableResult;
+import net.uncontended.precipice.semaphore.PrecipiceSemaphore;
 import net.uncontended.precipice.threadpool.utils.PrecipiceExecutors;
 import net.uncontended.precipice.threadpool.utils.TaskFactory;
+import net.uncontended.precipice.timeout.Deadline;
 import net.uncontended.precipice.timeout.DelayQueueTimeoutService;
 
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 public class ThreadPoolService<Rejected extends Enum<Rejected>> implements Precipice<TimeoutableResult, Rejected> {
     private final ExecutorService executorService;
     private final DelayQueueTimeoutService timeoutService;
     private final GuardRail<TimeoutableResult, Rejected> guardRail;
+    private final WritableLatency<ExecutionPhase> phaseLatency;
+    private final Rejected queueRejectedReason;
+    private ElasticPoolSizer sizer;
 
     public ThreadPoolService(int poolSize, int queueSize, GuardRail<TimeoutableResult, Rejected> guardRail) {
         this(PrecipiceExecutors.threadPoolExecutor(guardRail.getName(), poolSize, queueSize), guardRail);
     }
 
     public ThreadPoolService(ExecutorService executorService, GuardRail<TimeoutableResult, Rejected> guardRail) {
+        this(executorService, guardRail, null);
+    }
+
+    /**
+     * Creates a service that additionally records how long tasks wait in the executor's queue and how
+     * long they run. The guard rail's latency covers both phases, so comparing the two shows whether
+     * slow results come from a saturated pool or from a slow backend.
+     * <p>
+     * If the guard rail has a {@link QueueBackPressure}, the executor must be the one created for it by
+     * {@link PrecipiceExecutors#admittedExecutor}, as only that executor returns its permits.
+     *
+     * @param executorService the executor
+     * @param guardRail       the guard rail
+     * @param phaseLatency    the latency that queue and service time are recorded to
+     */
+    public ThreadPoolService(ExecutorService executorService, GuardRail<TimeoutableResult, Rejected> guardRail,
+                             WritableLatency<ExecutionPhase> phaseLatency) {
         this.guardRail = guardRail;
         this.executorService = executorService;
+        this.phaseLatency = phaseLatency;
+        QueueBackPressure<Rejected> queue = queueBackPressure(guardRail);
+        if (queue != null && !PrecipiceExecutors.isAdmittedExecutor(executorService, queue)) {
+            throw new IllegalArgumentException("A queue back pressure requires an executor created by "
+                    + "PrecipiceExecutors.admittedExecutor for that back pressure.");
+        }
+        this.queueRejectedReason = queue != null ? queue.reason() : null;
         timeoutService = DelayQueueTimeoutService.DEFAULT_TIMEOUT_SERVICE;
     }
 
+    /**
+     * Creates a service whose queue capacity is enforced by the guard rail. Tasks are rejected with the
+     * reason of the {@link QueueBackPressure} before any work is queued, and the executor never rejects
+     * admitted tasks.
+     *
+     * @param poolSize   the number of threads
+     * @param guardRail  the guard rail, which must have a {@link QueueBackPressure}
+     * @param <Rejected> the rejected reason type
+     * @return the service
+     */
+    public static <Rejected extends Enum<Rejected>> ThreadPoolService<Rejected>
+    admitted(int poolSize, GuardRail<TimeoutableResult, Rejected> guardRail) {
+        QueueBackPressure<Rejected> queue = queueBackPressure(guardRail);
+        if (queue == null) {
+            throw new IllegalArgumentException("Admitted mode requires a queue back pressure.");
+        }
+        return new ThreadPoolService<>(PrecipiceExecutors.admittedExecutor(guardRail.getName(), poolSize, queue),
+                guardRail);
+    }
+
+    /**
+     * Creates a service that runs every task on its own thread (a virtual thread when the JDK supports
+     * them). Concurrency is bounded by the semaphore on the guard rail rather than by a pool size, and
+     * timeouts interrupt the task's thread as usual.
+     *
+     * @param guardRail the guard rail, which must have a {@link PrecipiceSemaphore} back pressure
+     * @param <Rejected> the rejected reason type
+     * @return the service
+     */
+    public static <Rejected extends Enum<Rejected>> ThreadPoolService<Rejected>
+    threadPerTask(GuardRail<TimeoutableResult, Rejected> guardRail) {
+        boolean hasSemaphore = false;
+        for (BackPressure<Rejected> backPressure : guardRail.getBackPressure().values()) {
+            hasSemaphore |= backPressure instanceof PrecipiceSemaphore;
+        }
+        if (!hasSemaphore) {
+            throw new IllegalArgumentException("Thread per task mode requires a semaphore to bound concurrency.");
+        }
+        return new ThreadPoolService<>(PrecipiceExecutors.threadPerTaskExecutor(guardRail.getName()), guardRail);
+    }
+
+    /**
+     * Creates a service whose pool is resized periodically from measured load using Little's law. The
+     * guard rail must use {@link net.uncontended.precipice.metrics.counts.RollingCounts} for results so
+     * that the arrival rate can be measured. Service time is read from the phase latency, which must be
+     * a {@link net.uncontended.precipice.metrics.latency.RollingLatency}.
+     *
+     * @param minSize        the minimum number of threads
+     * @param maxSize        the maximum number of threads
+     * @param queueSize      the queue size
+     * @param guardRail      the guard rail
+     * @param phaseLatency   the latency that queue and service time are recorded to
+     * @param resizeInterval how often to resize
+     * @param unit           the unit of the resize interval
+     * @param <Rejected>     the rejected reason type
+     * @return the service
+     */
+    public static <Rejected extends Enum<Rejected>> ThreadPoolService<Rejected>
+    elastic(int minSize, int maxSize, int queueSize, GuardRail<TimeoutableResult, Rejected> guardRail,
+            WritableLatency<ExecutionPhase> phaseLatency, long resizeInterval, TimeUnit unit) {
+        ThreadPoolExecutor executor = PrecipiceExecutors.elasticExecutor(guardRail.getName(), minSize, queueSize);
+        ElasticPoolSizer sizer = new ElasticPoolSizer(executor, guardRail, phaseLatency, minSize, maxSize);
+        ThreadPoolService<Rejected> service = new ThreadPoolService<>(executor, guardRail, phaseLatency);
+        service.sizer = sizer;
+        sizer.start(resizeInterval, unit);
+        return service;
+    }
+
     @Override
     public GuardRail<TimeoutableResult, Rejected> guardRail() {
         return guardRail;
@@ -52,7 +155,7 @@ public class ThreadPoolService<Rejected extends Enum<Rejected>> implements Preci
 
     public <T> PrecipiceFuture<TimeoutableResult, T> submit(Callable<T> callable) {
         PrecipicePromise<TimeoutableResult, T> promise = Asynchronous.acquirePermitsAndPromise(guardRail, 1L);
-        internalComplete(callable, promise);
+        internalComplete(callable, promise, true);
         return promise.future();
     }
 
@@ -63,7 +166,7 @@ public class ThreadPoolService<Rejected extends Enum<Rejected>> implements Preci
     }
 
     public <T> void complete(Callable<T> callable, PrecipicePromise<TimeoutableResult, T> promise) {
-        internalComplete(callable, promise);
+        internalComplete(callable, promise, false);
     }
 
     public <T> void complete(Callable<T> callable, PrecipicePromise<TimeoutableResult, T> promise, long millisTimeout) {
@@ -71,19 +174,58 @@ public class ThreadPoolService<Rejected extends Enum<Rejected>> implements Preci
         internalComplete(callable, internalPromise, millisTimeout);
     }
 
-    private <T> void internalComplete(Callable<T> callable, PrecipicePromise<TimeoutableResult, T> promise) {
-        executorService.execute(TaskFactory.createTask(callable, promise));
+    private <T> void internalComplete(Callable<T> callable, PrecipicePromise<TimeoutableResult, T> promise,
+                                      boolean permitsAcquired) {
+        CancellableTask<TimeoutableResult, T> task = TaskFactory.createTask(callable, promise, Deadline.current());
+        long nanoTime = guardRail.getClock().nanoTime();
+        recordPhases(this, task, nanoTime);
+        execute(task, nanoTime, permitsAcquired);
     }
 
     private <T> void internalComplete(Callable<T> callable, PrecipicePromise<TimeoutableResult, T> promise, long millisTimeout) {
         long startNanos = guardRail.getClock().nanoTime();
-        long adjustedTimeout = DelayQueueTimeoutService.adjustTimeout(millisTimeout);
-        CancellableTask<TimeoutableResult, T> task = TaskFactory.createTask(callable, promise);
+        long adjustedTimeout = Deadline.boundTimeout(DelayQueueTimeoutService.adjustTimeout(millisTimeout), startNanos);
+        long deadline = Deadline.fromTimeout(adjustedTimeout, startNanos);
+        CancellableTask<TimeoutableResult, T> task = TaskFactory.createTask(callable, promise, deadline);
+        recordPhases(this, task, startNanos);
         ThreadPoolTimeout<T> timeoutTask = new ThreadPoolTimeout<>(task);
-        executorService.execute(task);
+        execute(task, startNanos, true);
         timeoutService.scheduleTimeout(timeoutTask, adjustedTimeout, startNanos);
     }
 
+    private void execute(Runnable task, long nanoTime, boolean permitsAcquired) {
+        try {
+            executorService.execute(task);
+        } catch (RejectedExecutionException e) {
+            // The permits were acquired for a task that will never run.
+            if (permitsAcquired) {
+                guardRail.releasePermitsWithoutResult(1L, nanoTime);
+            }
+            if (queueRejectedReason != null) {
+                guardRail.getRejectedCounts().write(queueRejectedReason, 1L, nanoTime);
+                throw new RejectedException(queueRejectedReason);
+            }
+            throw e;
+        }
+    }
+
+    private static <Rejected extends Enum<Rejected>> QueueBackPressure<Rejected>
+    queueBackPressure(GuardRail<TimeoutableResult, Rejected> guardRail) {
+        for (BackPressure<Rejected> backPressure : guardRail.getBackPressure().values()) {
+            if (backPressure instanceof QueueBackPressure) {
+                return (QueueBackPressure<Rejected>) backPressure;
+            }
+        }
+        return null;
+    }
+
+    static void recordPhases(ThreadPoolService<?> service, CancellableTask<?, ?> task, long submitNanos) {
+        WritableLatency<ExecutionPhase> phaseLatency = service.getPhaseLatency();
+        if (phaseLatency != null) {
+            task.recordPhases(phaseLatency, service.guardRail().getClock(), submitNanos);
+        }
+    }
+
     public ExecutorService getExecutor() {
         return executorService;
     }
@@ -92,7 +234,14 @@ public class ThreadPoolService<Rejected extends Enum<Rejected>> implements Preci
         return timeoutService;
     }
 
+    public WritableLatency<ExecutionPhase> getPhaseLatency() {
+        return phaseLatency;
+    }
+
     public void shutdown() {
+        if (sizer != null) {
+            sizer.stop();
+        }
         executorService.shutdown();
     }
 
@@ -17,115 +17,281 @@
 
 package net.uncontended.precipice.threadpool.experimental;
 
-import java.util.Comparator;
-import java.util.NavigableSet;
-import java.util.TreeSet;
-import java.util.concurrent.Executor;
+import net.uncontended.precipice.threadpool.utils.ThreadAffinity;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadLocalRandom;
-import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * A fixed size pool where every worker thread owns a bounded {@link ExchangingQueue}. Submitting threads
+ * prefer idle workers and otherwise place the task on the first worker queue with space. Workers that
+ * run out of local work steal from the queues of other workers before parking. A submitter that places a task
+ * on the queue of a busy worker wakes one parked worker so that it can steal the task.
+ * <p>
+ * The queues accept many producers but a single consumer, so each worker queue is guarded by a consumer
+ * try-lock. The owner is normally the only consumer; the lock is contended only while a thief is stealing
+ * from it. Owners drain their queue in small batches to amortize the lock.
+ * <p>
+ * After shutdown, workers only exit once no submission is in progress and every queue is empty, so a task
+ * accepted by {@link #execute(Runnable)} is always run.
+ */
+public class ActionThreadPool extends AbstractExecutorService {
 
-public class ActionThreadPool implements Executor {
+    // Idle workers are woken by submitters and by shutdown, so the timeout is only a backstop.
+    private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final int BATCH_SIZE = 16;
 
-    private final NavigableSet<ThreadManager> pool;
-    private final ThreadLocalRandom random = ThreadLocalRandom.current();
+    private final Worker[] workers;
+    private final CountDownLatch terminated;
+    private final AtomicInteger submitting = new AtomicInteger(0);
+    private volatile boolean isShutdown = false;
 
     public ActionThreadPool(String actionName, int threadCount) {
+        this(actionName, threadCount, 1024);
+    }
+
+    public ActionThreadPool(String actionName, int threadCount, int queueCapacity) {
+        this(actionName, threadCount, queueCapacity, null);
+    }
+
+    public ActionThreadPool(String actionName, int threadCount, int queueCapacity, ThreadAffinity affinity) {
         if (threadCount < 1) {
             throw new IllegalArgumentException("Cannot have fewer than 1 thread");
+        } else if (queueCapacity < 1) {
+            throw new IllegalArgumentException("Queue capacity must be positive");
+        }
+        workers = new Worker[threadCount];
+        terminated = new CountDownLatch(threadCount);
+        for (int i = 0; i < threadCount; ++i) {
+            workers[i] = new Worker(actionName + "-" + i, i, queueCapacity, affinity);
+        }
+        for (Worker worker : workers) {
+            worker.thread.start();
+        }
+    }
+
+    @Override
+    public void execute(Runnable action) {
+        if (action == null) {
+            throw new NullPointerException("Cannot execute null action");
         }
-        pool = new TreeSet<>(new Comparator<ThreadManager>() {
-            @Override
-            public int compare(ThreadManager o1, ThreadManager o2) {
-                int scheduledCount1 = o1.getScheduledCount();
-                int scheduledCount2 = o2.getScheduledCount();
-                if (scheduledCount1 > scheduledCount2) {
-                    return 1;
-                } else if (scheduledCount2 > scheduledCount1) {
-                    return -1;
-                } else if (random.nextBoolean()) {
-                    return 1;
-                } else {
-                    return -1;
-                }
 
+        // Workers do not terminate while a submission is in progress, so the shutdown check and the offer
+        // cannot be separated by termination.
+        submitting.incrementAndGet();
+        try {
+            if (isShutdown) {
+                throw new RejectedExecutionException("Pool has been shutdown");
+            }
+            offer(action);
+        } finally {
+            if (submitting.decrementAndGet() == 0 && isShutdown) {
+                signalAll();
             }
-        });
+        }
+    }
 
-        for (int i = 0; i < threadCount; ++i) {
-            pool.add(new ThreadManager(actionName + "-" + i));
+    private void offer(Runnable action) {
+        int workerCount = workers.length;
+        int start = workerCount == 1 ? 0 : ThreadLocalRandom.current().nextInt(workerCount);
+        for (int i = 0; i < workerCount; ++i) {
+            Worker worker = workers[(start + i) % workerCount];
+            if (worker.queue.isConsumerParked() && worker.queue.offer(action)) {
+                return;
+            }
+        }
+        for (int i = 0; i < workerCount; ++i) {
+            Worker worker = workers[(start + i) % workerCount];
+            if (worker.queue.offer(action)) {
+                signalThief(worker);
+                return;
+            }
+        }
+        throw new RejectedExecutionException("All worker queues are full");
+    }
+
+    private void signalThief(Worker owner) {
+        for (Worker worker : workers) {
+            if (worker != owner && worker.idle) {
+                worker.queue.signalConsumer();
+                return;
+            }
         }
+    }
 
+    private void signalAll() {
+        for (Worker worker : workers) {
+            worker.queue.signalConsumer();
+        }
     }
 
     @Override
-    public void execute(Runnable action) {
-        ThreadManager nextThread = pool.pollFirst();
-        boolean submitted = nextThread.submit(action);
-        pool.add(nextThread);
-        if (!submitted) {
-            throw new RejectedExecutionException();
+    public void shutdown() {
+        isShutdown = true;
+        signalAll();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        shutdown();
+        List<Runnable> pending = new ArrayList<>();
+        for (Worker worker : workers) {
+            worker.thread.interrupt();
+            Runnable task;
+            while ((task = worker.poll()) != null) {
+                pending.add(task);
+            }
         }
+        return pending;
     }
 
-    public void signalTaskComplete(ThreadManager threadManager) {
-        threadManager.decrementScheduledCount();
-        pool.remove(threadManager);
-        pool.add(threadManager);
+    @Override
+    public boolean isShutdown() {
+        return isShutdown;
     }
 
-    public void shutdown() {
-        for (ThreadManager manager : pool) {
-            manager.shutdown();
+    @Override
+    public boolean isTerminated() {
+        return terminated.getCount() == 0;
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return terminated.await(timeout, unit);
+    }
+
+    private boolean isQuiescent() {
+        if (submitting.get() != 0) {
+            return false;
+        }
+        for (Worker worker : workers) {
+            if (!worker.queue.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Runnable steal(int thiefIndex) {
+        int workerCount = workers.length;
+        for (int i = 1; i < workerCount; ++i) {
+            Runnable task = workers[(thiefIndex + i) % workerCount].poll();
+            if (task != null) {
+                return task;
+            }
         }
+        return null;
     }
 
-    private static class ThreadManager {
-        private final ExchangingQueue<Runnable> queue = new ExchangingQueue<>(10);
+    private class Worker implements Runnable {
+
+        private final ExchangingQueue<Runnable> queue;
+        private final AtomicBoolean consumerLock = new AtomicBoolean(false);
+        private final Runnable[] batch = new Runnable[BATCH_SIZE];
+        private final Consumer<Runnable> batchAppender;
+        private int batchCount = 0;
+        private volatile boolean idle = false;
         private final Thread thread;
-        private int scheduledCount = 0;
-
-        private ThreadManager(String threadName) {
-            thread = new Thread(new Runnable() {
-                @Override
-                public void run() {
-                    for (; ; ) {
-                        Runnable runnable;
+        private final int index;
+        private final ThreadAffinity affinity;
+
+        private Worker(String threadName, int index, int queueCapacity, ThreadAffinity affinity) {
+            this.index = index;
+            this.affinity = affinity;
+            this.queue = new ExchangingQueue<>(queueCapacity);
+            this.batchAppender = task -> batch[batchCount++] = task;
+            this.thread = new Thread(this, threadName);
+        }
+
+        @Override
+        public void run() {
+            try {
+                if (affinity != null) {
+                    affinity.bindCurrentThread(index);
+                }
+                for (; ; ) {
+                    int count = drainBatch();
+                    for (int i = 0; i < count; ++i) {
+                        Runnable task = batch[i];
+                        batch[i] = null;
+                        runTask(task);
+                    }
+                    if (count != 0) {
+                        continue;
+                    }
+
+                    // The idle flag is published before scanning for work to steal. A submitter enqueues before
+                    // it reads the flag, so either this scan finds the task or the submitter signals this worker.
+                    idle = true;
+                    Runnable task = steal(index);
+                    if (task != null) {
+                        idle = false;
+                        runTask(task);
+                    } else if (isShutdown && isQuiescent()) {
+                        // Workers that parked while this one drained its queue need to see quiescence too.
+                        signalAll();
+                        return;
+                    } else {
                         try {
-                            runnable = queue.blockingPoll();
+                            queue.awaitNotEmpty(PARK_NANOS, TimeUnit.NANOSECONDS);
                         } catch (InterruptedException e) {
-                            return;
-                        }
-                        runnable.run();
-                        // Need to explore this strategy more.
-                        if (thread.isInterrupted()) {
-                            return;
+                            // Only shutdownNow is expected to interrupt an idle worker. Any other interrupt has
+                            // been cleared by the exception and the worker keeps running.
+                            if (isShutdown) {
+                                return;
+                            }
                         }
+                        idle = false;
                     }
                 }
-            }, threadName);
-            thread.start();
-        }
-
-        private boolean submit(Runnable task) {
-            boolean offered = queue.offer(task);
-            if (offered) {
-                ++scheduledCount;
+            } finally {
+                terminated.countDown();
             }
-            return offered;
         }
 
-        private void decrementScheduledCount() {
-            --scheduledCount;
+        private void runTask(Runnable task) {
+            try {
+                task.run();
+            } catch (Throwable t) {
+                Thread.UncaughtExceptionHandler handler = thread.getUncaughtExceptionHandler();
+                handler.uncaughtException(thread, t);
+            } finally {
+                // A cancelled task may have interrupted this thread. The interrupt was meant for the task.
+                if (!isShutdown) {
+                    Thread.interrupted();
+                }
+            }
         }
 
-        private int getScheduledCount() {
-            return scheduledCount;
+        private int drainBatch() {
+            if (consumerLock.compareAndSet(false, true)) {
+                try {
+                    batchCount = 0;
+                    return queue.drain(batchAppender, BATCH_SIZE);
+                } finally {
+                    consumerLock.set(false);
+                }
+            }
+            return 0;
         }
 
-        private void shutdown() {
-            thread.interrupt();
-            LockSupport.unpark(thread);
+        private Runnable poll() {
+            if (consumerLock.compareAndSet(false, true)) {
+                try {
+                    return queue.poll();
+                } finally {
+                    consumerLock.set(false);
+                }
+            }
+            return null;
         }
     }
 }
@@ -17,57 +17,134 @@
 
 package net.uncontended.precipice.threadpool.experimental;
 
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
 
+/**
+ * A bounded multi-producer, single-consumer ring. Producers claim a slot by CAS'ing the tail and then
+ * publish the element into it; the consumer frees slots by advancing the head.
+ * <p>
+ * A consumer waiting for elements spins, then yields, then parks. Producers only unpark the consumer
+ * when it has actually parked, so offering to a busy or spinning consumer costs no syscall. A waiting
+ * consumer can also be woken without an element by {@link #signalConsumer()}.
+ */
 public class ExchangingQueue<T> {
 
-    private final T[] queue;
+    private static final int DEFAULT_SPINS = 100;
+    private static final int DEFAULT_YIELDS = 10;
+
+    private final AtomicReferenceArray<T> queue;
     private final int capacity;
     private final int mask;
-    private final AtomicInteger head = new AtomicInteger(0);
-    private final AtomicInteger tail = new AtomicInteger(0);
+    private final int spins;
+    private final int yields;
+    private final AtomicLong head = new AtomicLong(0);
+    private final AtomicLong tail = new AtomicLong(0);
     private volatile Thread waiter = null;
+    private volatile boolean signalled = false;
 
-    @SuppressWarnings("unchecked")
     public ExchangingQueue(final int capacity) {
+        this(capacity, DEFAULT_SPINS, DEFAULT_YIELDS);
+    }
+
+    public ExchangingQueue(final int capacity, int spins, int yields) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        } else if (spins < 0 || yields < 0) {
+            throw new IllegalArgumentException("Spins and yields cannot be negative");
+        }
         int adjustedCapacity = 1 << 32 - Integer.numberOfLeadingZeros(capacity - 1);
         this.capacity = adjustedCapacity;
+        this.spins = spins;
+        this.yields = yields;
         mask = adjustedCapacity - 1;
-        queue = (T[]) new Object[adjustedCapacity];
+        queue = new AtomicReferenceArray<>(adjustedCapacity);
     }
 
     public boolean offer(final T element) {
         if (null == element) {
             throw new NullPointerException("Cannot put null in the queue");
         }
-        final int currentTail = tail.get();
-        final int wrapPoint = currentTail - capacity;
+        long currentTail;
+        do {
+            currentTail = tail.get();
+            if (currentTail - head.get() >= capacity) {
+                return false;
+            }
+        } while (!tail.compareAndSet(currentTail, currentTail + 1));
 
-        if (head.get() <= wrapPoint) {
-            return false;
-        }
-        queue[currentTail & mask] = element;
-        tail.lazySet(currentTail + 1);
-        if (waiter != null) {
-            LockSupport.unpark(waiter);
+        queue.lazySet((int) currentTail & mask, element);
+        Thread parked = waiter;
+        if (parked != null) {
+            LockSupport.unpark(parked);
         }
         return true;
     }
 
     public T poll() {
-        final int currentHead = head.get();
-
-        if (currentHead >= tail.get()) {
-            return null;
+        final long currentHead = head.get();
+        final int index = (int) currentHead & mask;
+        T element = queue.get(index);
+        if (element == null) {
+            if (currentHead == tail.get()) {
+                return null;
+            }
+            // A producer has claimed the slot but has not published the element yet.
+            while ((element = queue.get(index)) == null) {
+                Thread.yield();
+            }
         }
-
-        int index = currentHead & mask;
-        final T element = queue[index];
-        queue[index] = null;
+        queue.lazySet(index, null);
         head.lazySet(currentHead + 1);
         return element;
+    }
+
+    /**
+     * Removes up to limit elements and passes them to the consumer. This must only be called by the
+     * consumer thread.
+     *
+     * @param consumer the consumer of the elements
+     * @param limit    the maximum number of elements to drain
+     * @return the number of elements drained
+     */
+    public int drain(Consumer<? super T> consumer, int limit) {
+        int drained = 0;
+        while (drained < limit) {
+            T element = poll();
+            if (element == null) {
+                break;
+            }
+            consumer.accept(element);
+            ++drained;
+        }
+        return drained;
+    }
+
+    public boolean isEmpty() {
+        return head.get() == tail.get();
+    }
 
+    public int size() {
+        return (int) (tail.get() - head.get());
+    }
+
+    public boolean isConsumerParked() {
+        return waiter != null;
+    }
+
+    /**
+     * Wakes the consumer if it is waiting in {@link #awaitNotEmpty(long, TimeUnit)}, which then returns false
+     * even though the queue is empty. If the consumer is not waiting, its next wait returns immediately.
+     */
+    public void signalConsumer() {
+        signalled = true;
+        Thread parked = waiter;
+        if (parked != null) {
+            LockSupport.unpark(parked);
+        }
     }
 
     public T blockingPoll() throws InterruptedException {
@@ -76,13 +153,70 @@ public class ExchangingQueue<T> {
             if (element != null) {
                 return element;
             }
-            waiter = Thread.currentThread();
-            LockSupport.park();
-            waiter = null;
-            if (Thread.currentThread().isInterrupted()) {
-                throw new InterruptedException();
-            }
+            awaitNotEmpty(Long.MAX_VALUE);
         }
     }
 
+    /**
+     * Waits until the queue is not empty, the timeout elapses, or the consumer is signalled. The consumer
+     * spins, then yields, and finally parks until a producer wakes it.
+     *
+     * @param timeout the maximum time to wait
+     * @param unit    the unit of the timeout
+     * @return true if the queue is not empty
+     * @throws InterruptedException if the consumer is interrupted while waiting
+     */
+    public boolean awaitNotEmpty(long timeout, TimeUnit unit) throws InterruptedException {
+        return awaitNotEmpty(unit.toNanos(timeout));
+    }
+
+    private boolean awaitNotEmpty(long timeoutNanos) throws InterruptedException {
+        for (int i = 0; i < spins; ++i) {
+            if (!isEmpty()) {
+                return true;
+            } else if (signalled) {
+                signalled = false;
+                return false;
+            }
+        }
+        for (int i = 0; i < yields; ++i) {
+            if (!isEmpty()) {
+                return true;
+            } else if (signalled) {
+                signalled = false;
+                return false;
+            }
+            Thread.yield();
+        }
+
+        long deadline = System.nanoTime() + timeoutNanos;
+        Thread current = Thread.currentThread();
+        waiter = current;
+        try {
+            for (; ; ) {
+                // The waiter is published before the tail is rechecked. A producer CAS's the tail before
+                // it reads the waiter, so at least one side sees the other and no wakeup is lost. Signals
+                // are published the same way.
+                if (!isEmpty()) {
+                    return true;
+                } else if (signalled) {
+                    signalled = false;
+                    return false;
+                } else if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                if (timeoutNanos == Long.MAX_VALUE) {
+                    LockSupport.park(this);
+                } else {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    LockSupport.parkNanos(this, remaining);
+                }
+            }
+        } finally {
+            waiter = null;
+        }
+    }
 }
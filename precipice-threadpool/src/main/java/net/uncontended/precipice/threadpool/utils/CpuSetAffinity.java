@@ -0,0 +1,83 @@
+/*
+ * Copyright 2016 Timothy Brooks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.uncontended.precipice.threadpool.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.regex.Pattern;
+
+/**
+ * Binds threads to a CPU list (for example the CPUs of one socket, "0-15,32-47") without JNI. On Linux the
+ * native id of the current thread is read from /proc/thread-self and the binding is applied with
+ * taskset. Where that is not possible the thread is left unbound.
+ */
+public class CpuSetAffinity implements ThreadAffinity {
+
+    private static final Pattern CPU_LIST = Pattern.compile("\\d+(-\\d+)?(,\\d+(-\\d+)?)*");
+    private static final Path THREAD_SELF = Paths.get("/proc/thread-self");
+
+    private final String cpuList;
+
+    public CpuSetAffinity(String cpuList) {
+        if (cpuList == null || !CPU_LIST.matcher(cpuList).matches()) {
+            throw new IllegalArgumentException("Invalid cpu list: " + cpuList);
+        }
+        this.cpuList = cpuList;
+    }
+
+    @Override
+    public void bindCurrentThread(int threadIndex) {
+        bind();
+    }
+
+    /**
+     * Binds the current thread to the cpu list.
+     *
+     * @return true if the thread was bound
+     */
+    public boolean bind() {
+        try {
+            if (!Files.exists(THREAD_SELF)) {
+                return false;
+            }
+            // The link resolves to "<pid>/task/<tid>".
+            String tid = Files.readSymbolicLink(THREAD_SELF).getFileName().toString();
+            Process process = new ProcessBuilder("taskset", "-p", "-c", cpuList, tid)
+                    .redirectErrorStream(true)
+                    .start();
+            try (InputStream output = process.getInputStream()) {
+                byte[] buffer = new byte[256];
+                while (output.read(buffer) != -1) {
+                }
+            }
+            return process.waitFor() == 0;
+        } catch (IOException | UnsupportedOperationException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    public String getCpuList() {
+        return cpuList;
+    }
+}
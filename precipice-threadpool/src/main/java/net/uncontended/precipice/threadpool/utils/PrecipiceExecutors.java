@@ -17,18 +17,161 @@
 
 package net.uncontended.precipice.threadpool.utils;
 
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
+import net.uncontended.precipice.threadpool.QueueBackPressure;
+import net.uncontended.precipice.threadpool.experimental.ActionThreadPool;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.*;
 
 public final class PrecipiceExecutors {
 
+    private static final Method OF_VIRTUAL;
+    private static final Method BUILDER_NAME;
+    private static final Method BUILDER_FACTORY;
+    private static final Method NEW_THREAD_PER_TASK_EXECUTOR;
+
+    static {
+        Method ofVirtual = null;
+        Method builderName = null;
+        Method builderFactory = null;
+        Method newThreadPerTaskExecutor = null;
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            builderName = builderClass.getMethod("name", String.class, long.class);
+            builderFactory = builderClass.getMethod("factory");
+            newThreadPerTaskExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+        } catch (ReflectiveOperationException e) {
+            ofVirtual = null;
+        }
+        OF_VIRTUAL = ofVirtual;
+        BUILDER_NAME = builderName;
+        BUILDER_FACTORY = builderFactory;
+        NEW_THREAD_PER_TASK_EXECUTOR = newThreadPerTaskExecutor;
+    }
+
     private PrecipiceExecutors() {
     }
 
     public static ExecutorService threadPoolExecutor(String name, int poolSize, long queueSize) {
+        return threadPoolExecutor(name, poolSize, queueSize, null);
+    }
+
+    /**
+     * Returns a fixed size executor whose threads are bound by the affinity hook when they start. Binding
+     * the pool of a guard rail to the CPUs of one socket also keeps the metric updates made by those
+     * threads on that socket.
+     *
+     * @param name      prefix for thread names
+     * @param poolSize  number of threads
+     * @param queueSize the queue size
+     * @param affinity  the affinity hook, or null for unbound threads
+     * @return the executor
+     */
+    public static ExecutorService threadPoolExecutor(String name, int poolSize, long queueSize,
+                                                     ThreadAffinity affinity) {
         return new ThreadPoolExecutor(poolSize, poolSize, Long.MAX_VALUE, TimeUnit.DAYS,
-                new ArrayBlockingQueue<Runnable>((int) queueSize), new ServiceThreadFactory(name));
+                new ArrayBlockingQueue<Runnable>((int) queueSize), new ServiceThreadFactory(name, affinity));
+    }
+
+    /**
+     * Returns an executor whose size is expected to be changed while it runs. Threads above the core size
+     * are retired after being idle for thirty seconds.
+     *
+     * @param name      prefix for thread names
+     * @param poolSize  initial number of threads
+     * @param queueSize the queue size
+     * @return the executor
+     */
+    public static ThreadPoolExecutor elasticExecutor(String name, int poolSize, int queueSize) {
+        return new ThreadPoolExecutor(poolSize, poolSize, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(queueSize), new ServiceThreadFactory(name));
+    }
+
+    /**
+     * Returns a fixed size executor whose queue is bounded by the guard rail rather than by the executor.
+     * The queue back pressure is told whenever a worker thread takes a task off the queue, so a task is
+     * only queued after the guard rail has admitted it.
+     *
+     * @param name     prefix for thread names
+     * @param poolSize number of threads
+     * @param queue    the queue back pressure of the guard rail submitting to the executor
+     * @return the executor
+     */
+    public static ExecutorService admittedExecutor(String name, int poolSize, QueueBackPressure<?> queue) {
+        return new AdmittedExecutor(name, poolSize, queue);
+    }
+
+    /**
+     * Returns true if the executor was created by {@link #admittedExecutor} for this queue back pressure,
+     * and so reports dequeues back to it.
+     *
+     * @param executor the executor
+     * @param queue    the queue back pressure
+     * @return whether the executor is admitted by the queue
+     */
+    public static boolean isAdmittedExecutor(ExecutorService executor, QueueBackPressure<?> queue) {
+        return executor instanceof AdmittedExecutor && ((AdmittedExecutor) executor).queue == queue;
+    }
+
+    /**
+     * Returns a fixed size executor where every thread owns a bounded queue and idle threads steal
+     * queued work from busy ones. The queue size is split between the threads.
+     *
+     * @param name      prefix for thread names
+     * @param poolSize  number of threads
+     * @param queueSize total number of tasks that can be queued
+     * @return the executor
+     */
+    public static ExecutorService workStealingExecutor(String name, int poolSize, int queueSize) {
+        return workStealingExecutor(name, poolSize, queueSize, null);
+    }
+
+    public static ExecutorService workStealingExecutor(String name, int poolSize, int queueSize,
+                                                       ThreadAffinity affinity) {
+        return new ActionThreadPool(name, poolSize, Math.max(1, queueSize / Math.max(1, poolSize)), affinity);
+    }
+
+    /**
+     * Returns an executor that starts a new thread for every task. On a JDK with virtual threads
+     * (21 or later) those threads are virtual. On older JDKs an unbounded cached pool of platform threads
+     * is used instead. The executor does not bound concurrency; that is left to the back pressure of the
+     * guard rail submitting to it.
+     *
+     * @param name prefix for thread names
+     * @return the executor
+     */
+    public static ExecutorService threadPerTaskExecutor(String name) {
+        if (virtualThreadsAvailable()) {
+            try {
+                Object builder = BUILDER_NAME.invoke(OF_VIRTUAL.invoke(null), name + '-', 0L);
+                ThreadFactory factory = (ThreadFactory) BUILDER_FACTORY.invoke(builder);
+                return (ExecutorService) NEW_THREAD_PER_TASK_EXECUTOR.invoke(null, factory);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Unable to create virtual thread executor", e);
+            }
+        }
+        return new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+                new ServiceThreadFactory(name));
+    }
+
+    public static boolean virtualThreadsAvailable() {
+        return OF_VIRTUAL != null;
+    }
+
+    private static class AdmittedExecutor extends ThreadPoolExecutor {
+
+        private final QueueBackPressure<?> queue;
+
+        private AdmittedExecutor(String name, int poolSize, QueueBackPressure<?> queue) {
+            super(poolSize, poolSize, Long.MAX_VALUE, TimeUnit.DAYS,
+                    new ArrayBlockingQueue<Runnable>((int) queue.capacity()), new ServiceThreadFactory(name));
+            this.queue = queue;
+        }
+
+        @Override
+        protected void beforeExecute(Thread t, Runnable r) {
+            queue.dequeued();
+        }
     }
 }
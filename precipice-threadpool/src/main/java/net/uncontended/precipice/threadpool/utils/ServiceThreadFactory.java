@@ -24,14 +24,32 @@ public class ServiceThreadFactory implements ThreadFactory {
 
     private final AtomicInteger count = new AtomicInteger(0);
     private final String name;
-
+    private final ThreadAffinity affinity;
 
     public ServiceThreadFactory(String name) {
+        this(name, null);
+    }
+
+    /**
+     * Creates a factory whose threads are bound by the affinity hook when they start.
+     *
+     * @param name     prefix for thread names
+     * @param affinity the affinity hook, or null for unbound threads
+     */
+    public ServiceThreadFactory(String name, ThreadAffinity affinity) {
         this.name = name;
+        this.affinity = affinity;
     }
 
     @Override
-    public Thread newThread(Runnable r) {
-        return new Thread(r, name + '-' + count.getAndIncrement());
+    public Thread newThread(final Runnable r) {
+        final int index = count.getAndIncrement();
+        if (affinity == null) {
+            return new Thread(r, name + '-' + index);
+        }
+        return new Thread(() -> {
+            affinity.bindCurrentThread(index);
+            r.run();
+        }, name + '-' + index);
     }
 }
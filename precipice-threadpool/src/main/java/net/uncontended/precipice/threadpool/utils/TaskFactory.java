@@ -20,6 +20,7 @@ package net.uncontended.precipice.threadpool.utils;
 import net.uncontended.precipice.concurrent.PrecipicePromise;
 import net.uncontended.precipice.result.TimeoutableResult;
 import net.uncontended.precipice.threadpool.CancellableTask;
+import net.uncontended.precipice.timeout.Deadline;
 
 import java.util.concurrent.Callable;
 import java.util.concurrent.TimeoutException;
@@ -36,6 +37,39 @@ public class TaskFactory {
         return new CancellableTask<>(castedResultToStatus, throwableToStatus, callable, promise);
     }
 
+    /**
+     * Creates a task that runs the callable with the given {@link Deadline} installed on the executing
+     * thread, so that guard rails used by the callable see the remaining budget.
+     */
+    public static <T> CancellableTask<TimeoutableResult, T>
+    createTask(Callable<T> callable, PrecipicePromise<TimeoutableResult, T> promise, long deadlineNanos) {
+        if (deadlineNanos == Deadline.NONE) {
+            return createTask(callable, promise);
+        }
+        return createTask(new DeadlineCallable<>(callable, deadlineNanos), promise);
+    }
+
+    private static class DeadlineCallable<T> implements Callable<T> {
+
+        private final Callable<T> callable;
+        private final long deadlineNanos;
+
+        private DeadlineCallable(Callable<T> callable, long deadlineNanos) {
+            this.callable = callable;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        @Override
+        public T call() throws Exception {
+            long previous = Deadline.set(deadlineNanos);
+            try {
+                return callable.call();
+            } finally {
+                Deadline.restore(previous);
+            }
+        }
+    }
+
     private static class Success implements CancellableTask.ResultToStatus<TimeoutableResult, Object> {
 
         @Override
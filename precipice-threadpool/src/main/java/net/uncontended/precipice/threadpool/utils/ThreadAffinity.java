@@ -0,0 +1,33 @@
+/*
+ * Copyright 2016 Timothy Brooks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.uncontended.precipice.threadpool.utils;
+
+/**
+ * A hook that binds pool worker threads to CPUs. It is invoked on each worker thread when that thread
+ * starts, before it runs any tasks.
+ */
+@FunctionalInterface
+public interface ThreadAffinity {
+
+    /**
+     * Binds the current thread.
+     *
+     * @param threadIndex the index of the worker thread in its pool
+     */
+    void bindCurrentThread(int threadIndex);
+}
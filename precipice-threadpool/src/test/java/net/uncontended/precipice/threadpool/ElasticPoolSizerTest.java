@@ -0,0 +1,154 @@
+/*
+ * Copyright 2016 Timothy Brooks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.uncontended.precipice.threadpool;
+
+import net.uncontended.precipice.GuardRail;
+import net.uncontended.precipice.GuardRailBuilder;
+import net.uncontended.precipice.metrics.counts.RollingCounts;
+import net.uncontended.precipice.metrics.latency.RollingLatency;
+import net.uncontended.precipice.metrics.latency.TotalLatency;
+import net.uncontended.precipice.rejected.Rejected;
+import net.uncontended.precipice.result.TimeoutableResult;
+import net.uncontended.precipice.threadpool.utils.PrecipiceExecutors;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class ElasticPoolSizerTest {
+
+    private ThreadPoolExecutor executor;
+    private RollingCounts<TimeoutableResult> resultCounts;
+    private RollingCounts<Rejected> rejectedCounts;
+    private RollingLatency<ExecutionPhase> phaseLatency;
+    private GuardRail<TimeoutableResult, Rejected> guardRail;
+    private ElasticPoolSizer sizer;
+
+    @Before
+    public void setUp() {
+        resultCounts = new RollingCounts<>(TimeoutableResult.class, 10, TimeUnit.SECONDS.toNanos(1));
+        phaseLatency = new RollingLatency<>(ExecutionPhase.class, 10, TimeUnit.SECONDS.toNanos(1));
+        rejectedCounts = new RollingCounts<>(Rejected.class, 10, TimeUnit.SECONDS.toNanos(1));
+        guardRail = new GuardRailBuilder<TimeoutableResult, Rejected>()
+                .name("Elastic")
+                .resultCounts(resultCounts)
+                .rejectedCounts(rejectedCounts)
+                .build();
+        executor = PrecipiceExecutors.elasticExecutor("Elastic", 4, 10);
+        sizer = new ElasticPoolSizer(executor, guardRail, phaseLatency, 2, 16);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test
+    public void poolShrinksToMinimumWithoutLoad() {
+        assertEquals(2, sizer.resize(System.nanoTime()));
+        assertEquals(2, executor.getCorePoolSize());
+        assertEquals(2, executor.getMaximumPoolSize());
+    }
+
+    @Test
+    public void poolIsSizedFromArrivalRateTimesServiceTime() {
+        long nanoTime = System.nanoTime();
+        // Roughly 50 arrivals per second over the ten second window, each running for 100 milliseconds.
+        // Five busy threads at the default 80% target utilization need seven threads.
+        for (int i = 0; i < 500; ++i) {
+            resultCounts.write(TimeoutableResult.SUCCESS, 1L, nanoTime);
+            phaseLatency.write(ExecutionPhase.SERVICE, 1L, TimeUnit.MILLISECONDS.toNanos(100), nanoTime);
+        }
+
+        int size = sizer.resize(nanoTime);
+
+        assertEquals(7, size, 1);
+        assertEquals(size, executor.getCorePoolSize());
+        assertEquals(size, executor.getMaximumPoolSize());
+    }
+
+    @Test
+    public void poolSizeIsCappedAtMaximum() {
+        long nanoTime = System.nanoTime();
+        for (int i = 0; i < 5000; ++i) {
+            resultCounts.write(TimeoutableResult.SUCCESS, 1L, nanoTime);
+            phaseLatency.write(ExecutionPhase.SERVICE, 1L, TimeUnit.MILLISECONDS.toNanos(100), nanoTime);
+        }
+
+        assertEquals(16, sizer.resize(nanoTime));
+        assertEquals(16, executor.getMaximumPoolSize());
+    }
+
+    @Test
+    public void onlyCapacityRejectionsCountAsArrivals() {
+        long nanoTime = System.nanoTime();
+        sizer = new ElasticPoolSizer(executor, guardRail, phaseLatency, 1, 64, 1.0,
+                Arrays.asList(Rejected.MAX_CONCURRENCY_LEVEL_EXCEEDED, Rejected.QUEUE_FULL));
+        for (int i = 0; i < 500; ++i) {
+            resultCounts.write(TimeoutableResult.SUCCESS, 1L, nanoTime);
+            phaseLatency.write(ExecutionPhase.SERVICE, 1L, TimeUnit.MILLISECONDS.toNanos(100), nanoTime);
+        }
+        int baseline = sizer.resize(nanoTime);
+
+        rejectedCounts.write(Rejected.CIRCUIT_OPEN, 5000L, nanoTime);
+        assertEquals(baseline, sizer.resize(nanoTime));
+
+        rejectedCounts.write(Rejected.QUEUE_FULL, 500L, nanoTime);
+        rejectedCounts.write(Rejected.MAX_CONCURRENCY_LEVEL_EXCEEDED, 500L, nanoTime);
+        assertEquals(3 * baseline, sizer.resize(nanoTime), 1);
+    }
+
+    @Test
+    public void targetUtilizationMustBeInRange() {
+        try {
+            new ElasticPoolSizer(executor, guardRail, phaseLatency, 1, 4, 0.0,
+                    Arrays.asList(Rejected.MAX_CONCURRENCY_LEVEL_EXCEEDED));
+            fail("Should have rejected a zero utilization");
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+    @Test
+    public void serviceTimeIsTheMeanNotATailPercentile() {
+        long nanoTime = System.nanoTime();
+        // 50 arrivals per second. Half run for 50 milliseconds and half for 150, so the mean service time is
+        // 100 milliseconds and seven threads are needed. The p90 would ask for ten.
+        for (int i = 0; i < 500; ++i) {
+            resultCounts.write(TimeoutableResult.SUCCESS, 1L, nanoTime);
+            long serviceMillis = i % 2 == 0 ? 50 : 150;
+            phaseLatency.write(ExecutionPhase.SERVICE, 1L, TimeUnit.MILLISECONDS.toNanos(serviceMillis), nanoTime);
+        }
+
+        assertEquals(7, sizer.resize(nanoTime), 1);
+    }
+
+    @Test
+    public void phaseLatencyMustBeRolling() {
+        try {
+            new ElasticPoolSizer(executor, guardRail, new TotalLatency<>(ExecutionPhase.class), 1, 4);
+            fail("Should have rejected a phase latency without rolling intervals");
+        } catch (IllegalArgumentException e) {
+        }
+    }
+}
@@ -18,12 +18,19 @@
 package net.uncontended.precipice.threadpool;
 
 import net.uncontended.precipice.GuardRail;
+import net.uncontended.precipice.GuardRailBuilder;
 import net.uncontended.precipice.concurrent.PrecipiceFuture;
+import net.uncontended.precipice.metrics.counts.TotalCounts;
 import net.uncontended.precipice.metrics.counts.WritableCounts;
+import net.uncontended.precipice.metrics.latency.RollingLatency;
 import net.uncontended.precipice.pattern.Pattern;
+import net.uncontended.precipice.pattern.PatternStrategy;
+import net.uncontended.precipice.pattern.RoundRobinLoadBalancer;
 import net.uncontended.precipice.pattern.WritableSequence;
+import net.uncontended.precipice.rejected.Rejected;
 import net.uncontended.precipice.rejected.RejectedException;
 import net.uncontended.precipice.result.TimeoutableResult;
+import net.uncontended.precipice.semaphore.LongSemaphore;
 import net.uncontended.precipice.semaphore.PrecipiceSemaphore;
 import net.uncontended.precipice.time.Clock;
 import net.uncontended.precipice.timeout.DelayQueueTimeoutService;
@@ -35,14 +42,20 @@ import org.mockito.Captor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
+import java.util.Collections;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import static junit.framework.TestCase.assertNull;
 import static junit.framework.TestCase.fail;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.*;
 
@@ -133,6 +146,68 @@ public class ThreadPoolPatternTest {
         this.poolPattern = new ThreadPoolPattern<>(services, guardRail, pattern);
     }
 
+    @Test
+    public void removedServicesAreReturnedWithoutShutdownWhenServicesAreUpdated() {
+        PatternStrategy strategy = new RoundRobinLoadBalancer(2);
+        Map<ThreadPoolService<?>, Object> services = new LinkedHashMap<>();
+        services.put(service1, context1);
+        services.put(service2, context2);
+        List<ThreadPoolService<?>> removed = Collections.<ThreadPoolService<?>>singletonList(service3);
+        when(pattern.updatePrecipices(services.keySet(), strategy)).thenReturn(removed);
+
+        assertEquals(removed, poolPattern.updateServices(services, strategy));
+
+        verify(service1, never()).shutdown();
+        verify(service2, never()).shutdown();
+        verify(service3, never()).shutdown();
+
+        poolPattern.shutdown();
+
+        verify(service1).shutdown();
+        verify(service2).shutdown();
+        verify(service3, never()).shutdown();
+    }
+
+    @Test
+    public void serviceRemovedAfterSelectionIsSkipped() throws Exception {
+        PatternStrategy strategy = new RoundRobinLoadBalancer(2);
+        Map<ThreadPoolService<?>, Object> services = new LinkedHashMap<>();
+        services.put(service1, context1);
+        services.put(service2, context2);
+        when(pattern.updatePrecipices(services.keySet(), strategy))
+                .thenReturn(Collections.<ThreadPoolService<?>>singletonList(service3));
+        poolPattern.updateServices(services, strategy);
+
+        WritableSequence<ThreadPoolService<?>> iterable = prepIterable(service3, service1);
+        when(guardRail.acquirePermits(1L, submitTimeNanos)).thenReturn(null);
+        when(pattern.getPrecipices(1L, submitTimeNanos)).thenReturn(iterable);
+
+        poolPattern.submit(action, 100L);
+
+        verifyZeroInteractions(executor3);
+        verify(guardRail3).releasePermitsWithoutResult(1L, submitTimeNanos);
+        verify(executor1).execute(task1Captor.capture());
+        task1Captor.getValue().run();
+        verify(action).call(context1);
+    }
+
+    @Test
+    public void servicesMayHaveNullContexts() throws Exception {
+        Map<ThreadPoolService<?>, Object> services = new LinkedHashMap<>();
+        services.put(service1, null);
+        poolPattern = new ThreadPoolPattern<>(services, guardRail, pattern);
+
+        WritableSequence<ThreadPoolService<?>> iterable = prepIterable(service1);
+        when(guardRail.acquirePermits(1L, submitTimeNanos)).thenReturn(null);
+        when(pattern.getPrecipices(1L, submitTimeNanos)).thenReturn(iterable);
+
+        poolPattern.submit(action, 100L);
+
+        verify(executor1).execute(task1Captor.capture());
+        task1Captor.getValue().run();
+        verify(action).call(null);
+    }
+
     @Test
     public void actionsSubmittedToServices() throws Exception {
         WritableSequence<ThreadPoolService<?>> iterable = prepIterable(service1, service3);
@@ -161,6 +236,163 @@ public class ThreadPoolPatternTest {
         assertEquals("Service1", f.getValue());
     }
 
+    @Test
+    public void losingTasksAreCancelledWhenFirstCompletes() throws Exception {
+        WritableSequence<ThreadPoolService<?>> iterable = prepIterable(service1, service3);
+
+        when(pattern.getPrecipices(1L, submitTimeNanos)).thenReturn(iterable);
+
+        PrecipiceFuture<TimeoutableResult, String> f = poolPattern.submit(action, 100L);
+
+        verify(executor1).execute(task1Captor.capture());
+        verify(executor3).execute(task2Captor.capture());
+        CancellableTask<TimeoutableResult, ?> winner = task1Captor.getValue();
+        CancellableTask<TimeoutableResult, ?> loser = task2Captor.getValue();
+
+        winner.run();
+        assertEquals("Service1", f.getValue());
+
+        loser.run();
+        verify(action, never()).call(context3);
+    }
+
+    @Test
+    public void rejectedMemberPermitIsReleasedOnceWhenAnotherMemberWins() throws Exception {
+        LongSemaphore<Rejected> semaphore3 = new LongSemaphore<>(Rejected.MAX_CONCURRENCY_LEVEL_EXCEEDED, 10);
+        GuardRail<TimeoutableResult, Rejected> realGuardRail3 = new GuardRailBuilder<TimeoutableResult, Rejected>()
+                .name("service3")
+                .resultCounts(new TotalCounts<>(TimeoutableResult.class))
+                .rejectedCounts(new TotalCounts<>(Rejected.class))
+                .addBackPressure(semaphore3)
+                .build();
+        when(service3.guardRail()).thenReturn(realGuardRail3);
+        // The pattern is mocked, so acquire the permit it would have acquired.
+        assertNull(realGuardRail3.acquirePermits(1L, submitTimeNanos));
+        doThrow(new RejectedExecutionException()).when(executor3).execute(any(Runnable.class));
+        when(pattern.getPrecipices(1L, submitTimeNanos)).thenReturn(prepIterable(service1, service3));
+
+        PrecipiceFuture<TimeoutableResult, String> f = poolPattern.submit(action, 100L);
+
+        assertEquals(0, semaphore3.currentConcurrencyLevel());
+        verify(executor1).execute(task1Captor.capture());
+        verifyZeroInteractions(timeoutService3);
+
+        task1Captor.getValue().run();
+        assertEquals("Service1", f.getValue());
+        assertEquals(0, semaphore3.currentConcurrencyLevel());
+    }
+
+    @Test
+    public void hedgeLaunchedAtRollingP95AndPrimaryCancelledWhenHedgeWins() throws Exception {
+        long now = System.nanoTime();
+        RollingLatency<TimeoutableResult> latency = new RollingLatency<>(TimeoutableResult.class, 10,
+                TimeUnit.SECONDS.toNanos(1));
+        for (int i = 0; i < 100; ++i) {
+            latency.write(TimeoutableResult.SUCCESS, 1L, TimeUnit.MILLISECONDS.toNanos(i < 95 ? 10 : 500), now);
+        }
+        WritableSequence<ThreadPoolService<?>> iterable = prepIterable(service1, service2);
+        when(clock.nanoTime()).thenReturn(now);
+        when(guardRail1.getResultLatency()).thenReturn(latency);
+        when(guardRail2.getClock()).thenReturn(clock);
+        when(pattern.getPrecipices(1L, now)).thenReturn(iterable);
+
+        PrecipiceFuture<TimeoutableResult, String> f = poolPattern.submitHedged(action, 1000L);
+
+        ArgumentCaptor<Long> delayCaptor = ArgumentCaptor.forClass(Long.class);
+        ArgumentCaptor<Timeout> hedgeCaptor = ArgumentCaptor.forClass(Timeout.class);
+        verify(executor1).execute(task1Captor.capture());
+        verify(timeoutService1, times(2)).scheduleTimeout(hedgeCaptor.capture(), delayCaptor.capture(), eq(now));
+        verifyZeroInteractions(executor2);
+        long hedgeDelay = delayCaptor.getAllValues().get(0);
+        assertTrue(hedgeDelay >= 9 && hedgeDelay <= 11);
+        assertEquals(1000L, (long) delayCaptor.getAllValues().get(1));
+
+        // The backup permit acquired by the strategy is not held while waiting for the hedge
+        verify(guardRail2).releasePermitsWithoutResult(1L, now);
+        verify(guardRail2, never()).acquirePermits(anyLong(), anyLong());
+
+        hedgeCaptor.getAllValues().get(0).timeout();
+        verify(guardRail2).acquirePermits(1L, now);
+        verify(executor2).execute(task2Captor.capture());
+        verify(timeoutService2).scheduleTimeout(any(ThreadPoolTimeout.class), eq(1000L), eq(now));
+
+        task2Captor.getValue().run();
+        assertEquals("Service2", f.getValue());
+
+        task1Captor.getValue().run();
+        verify(action, never()).call(context1);
+        verify(guardRail2, times(1)).releasePermitsWithoutResult(1L, now);
+    }
+
+    @Test
+    public void hedgeNotLaunchedWhenBackupRejectsWhenHedgeFires() throws Exception {
+        long now = System.nanoTime();
+        RollingLatency<TimeoutableResult> latency = new RollingLatency<>(TimeoutableResult.class, 10,
+                TimeUnit.SECONDS.toNanos(1));
+        latency.write(TimeoutableResult.SUCCESS, 1L, TimeUnit.MILLISECONDS.toNanos(10), now);
+        GuardRail<TimeoutableResult, Rejected> backupGuardRail = mock(GuardRail.class);
+        when(service2.guardRail()).thenReturn(backupGuardRail);
+        when(backupGuardRail.getClock()).thenReturn(clock);
+        when(backupGuardRail.acquirePermits(1L, now)).thenReturn(Rejected.MAX_CONCURRENCY_LEVEL_EXCEEDED);
+        when(clock.nanoTime()).thenReturn(now);
+        when(guardRail1.getResultLatency()).thenReturn(latency);
+        when(pattern.getPrecipices(1L, now)).thenReturn(prepIterable(service1, service2));
+
+        PrecipiceFuture<TimeoutableResult, String> f = poolPattern.submitHedged(action, 1000L);
+
+        ArgumentCaptor<Timeout> hedgeCaptor = ArgumentCaptor.forClass(Timeout.class);
+        verify(executor1).execute(task1Captor.capture());
+        verify(timeoutService1, times(2)).scheduleTimeout(hedgeCaptor.capture(), anyLong(), eq(now));
+
+        hedgeCaptor.getAllValues().get(0).timeout();
+        verifyZeroInteractions(executor2);
+        verifyZeroInteractions(timeoutService2);
+
+        task1Captor.getValue().run();
+        assertEquals("Service1", f.getValue());
+        verify(backupGuardRail, times(1)).releasePermitsWithoutResult(1L, now);
+    }
+
+    @Test
+    public void hedgeDelayIsCachedWithinRollingInterval() throws Exception {
+        long now = System.nanoTime();
+        RollingLatency<TimeoutableResult> latency = new RollingLatency<>(TimeoutableResult.class, 10,
+                TimeUnit.SECONDS.toNanos(1));
+        latency.write(TimeoutableResult.SUCCESS, 1L, TimeUnit.MILLISECONDS.toNanos(10), now);
+        when(clock.nanoTime()).thenReturn(now);
+        when(guardRail1.getResultLatency()).thenReturn(latency);
+        when(pattern.getPrecipices(1L, now)).thenReturn(prepIterable(service1, service2),
+                prepIterable(service1, service2));
+
+        poolPattern.submitHedged(action, 1000L);
+        for (int i = 0; i < 100; ++i) {
+            latency.write(TimeoutableResult.SUCCESS, 1L, TimeUnit.MILLISECONDS.toNanos(500), now);
+        }
+        poolPattern.submitHedged(action, 1000L);
+
+        ArgumentCaptor<Long> delayCaptor = ArgumentCaptor.forClass(Long.class);
+        verify(timeoutService1, times(4)).scheduleTimeout(any(Timeout.class), delayCaptor.capture(), eq(now));
+        List<Long> delays = delayCaptor.getAllValues();
+        assertEquals(delays.get(0), delays.get(2));
+        assertTrue(delays.get(2) <= 11);
+    }
+
+    @Test
+    public void hedgePermitReleasedWhenPrimaryHasNoLatencyData() throws Exception {
+        WritableSequence<ThreadPoolService<?>> iterable = prepIterable(service1, service2);
+        when(pattern.getPrecipices(1L, submitTimeNanos)).thenReturn(iterable);
+
+        PrecipiceFuture<TimeoutableResult, String> f = poolPattern.submitHedged(action, 100L);
+
+        verify(guardRail2).releasePermitsWithoutResult(1L, submitTimeNanos);
+        verify(executor1).execute(task1Captor.capture());
+        verify(timeoutService1, times(1)).scheduleTimeout(any(Timeout.class), anyLong(), anyLong());
+        verifyZeroInteractions(executor2);
+
+        task1Captor.getValue().run();
+        assertEquals("Service1", f.getValue());
+    }
+
     @Test
     public void ifNoServiceReturnedThenAllRejected() throws Exception {
         WritableSequence<ThreadPoolService<?>> iterable = prepIterable();
@@ -24,13 +24,16 @@ import net.uncontended.precipice.concurrent.PrecipiceFuture;
 import net.uncontended.precipice.concurrent.PrecipicePromise;
 import net.uncontended.precipice.metrics.counts.TotalCounts;
 import net.uncontended.precipice.metrics.latency.NoOpLatency;
+import net.uncontended.precipice.metrics.latency.WritableLatency;
 import net.uncontended.precipice.rejected.Rejected;
 import net.uncontended.precipice.rejected.RejectedException;
 import net.uncontended.precipice.result.TimeoutableResult;
+import net.uncontended.precipice.semaphore.LongSemaphore;
 import net.uncontended.precipice.threadpool.test_utils.TestCallable;
 import net.uncontended.precipice.threadpool.utils.PrecipiceExecutors;
 import net.uncontended.precipice.time.Clock;
 import net.uncontended.precipice.time.SystemTime;
+import net.uncontended.precipice.timeout.Deadline;
 import net.uncontended.precipice.timeout.DelayQueueTimeoutService;
 import net.uncontended.precipice.timeout.PrecipiceTimeoutException;
 import net.uncontended.precipice.util.Simulation;
@@ -38,6 +41,7 @@ import net.uncontended.precipice.util.SimulationRejected;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
@@ -48,8 +52,12 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
 import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.*;
@@ -164,6 +172,50 @@ public class ThreadPoolServiceTest {
         assertEquals(TimeoutableResult.ERROR, future.getResult());
     }
 
+    @Test
+    public void callerDeadlineIsInheritedByTask() throws Exception {
+        when(guardRail.acquirePermits(eq(1L), anyLong())).thenReturn(null);
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        long previous = Deadline.set(deadline);
+        PrecipiceFuture<TimeoutableResult, Long> f;
+        try {
+            f = service.submit(new Callable<Long>() {
+                @Override
+                public Long call() {
+                    return Deadline.current();
+                }
+            }, DelayQueueTimeoutService.MAX_TIMEOUT_MILLIS);
+        } finally {
+            Deadline.restore(previous);
+        }
+
+        long childDeadline = f.get();
+        assertTrue(childDeadline - deadline <= 0);
+        assertTrue(deadline - childDeadline < TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    @Test
+    public void queueAndServiceTimeAreRecordedSeparately() throws Exception {
+        when(guardRail.acquirePermits(eq(1L), anyLong())).thenReturn(null);
+        WritableLatency<ExecutionPhase> phaseLatency = mock(WritableLatency.class);
+        ThreadPoolService<Rejected> timedService = new ThreadPoolService<>(executorService, guardRail, phaseLatency);
+
+        PrecipiceFuture<TimeoutableResult, String> f = timedService.submit(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                Thread.sleep(20);
+                return "Success";
+            }
+        }, DelayQueueTimeoutService.MAX_TIMEOUT_MILLIS);
+
+        assertEquals("Success", f.get());
+        verify(phaseLatency).write(eq(ExecutionPhase.QUEUE), eq(1L), anyLong(), anyLong());
+        ArgumentCaptor<Long> serviceNanos = ArgumentCaptor.forClass(Long.class);
+        verify(phaseLatency).write(eq(ExecutionPhase.SERVICE), eq(1L), serviceNanos.capture(), anyLong());
+        assertTrue(serviceNanos.getValue() >= TimeUnit.MILLISECONDS.toNanos(20));
+    }
+
     @Test
     public void guardRailsClockIsUsedForStartTime() {
         long startNanos = 100L;
@@ -230,4 +282,180 @@ public class ThreadPoolServiceTest {
         Simulation<TimeoutableResult> simulation = new Simulation<>(guardRail);
         simulation.run(resultToCallable);
     }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void threadPerTaskRequiresSemaphore() {
+        GuardRail<TimeoutableResult, Rejected> guardRail = new GuardRailBuilder<TimeoutableResult, Rejected>()
+                .name("No semaphore")
+                .resultCounts(new TotalCounts<>(TimeoutableResult.class))
+                .rejectedCounts(new TotalCounts<>(Rejected.class))
+                .build();
+
+        ThreadPoolService.threadPerTask(guardRail);
+    }
+
+    @Test
+    public void threadPerTaskIsBoundedBySemaphoreAndInterruptedOnTimeout() throws Exception {
+        LongSemaphore<Rejected> semaphore = new LongSemaphore<>(Rejected.MAX_CONCURRENCY_LEVEL_EXCEEDED, 2);
+        GuardRail<TimeoutableResult, Rejected> guardRail = new GuardRailBuilder<TimeoutableResult, Rejected>()
+                .name("Thread per task")
+                .resultCounts(new TotalCounts<>(TimeoutableResult.class))
+                .rejectedCounts(new TotalCounts<>(Rejected.class))
+                .addBackPressure(semaphore)
+                .build();
+        ThreadPoolService<Rejected> threadPerTask = ThreadPoolService.threadPerTask(guardRail);
+
+        try {
+            CountDownLatch latch = new CountDownLatch(1);
+            PrecipiceFuture<TimeoutableResult, String> blocked = threadPerTask.submit(TestCallable.blocked(latch), 50);
+            PrecipiceFuture<TimeoutableResult, String> success = threadPerTask.submit(TestCallable.success(), 10000);
+            assertEquals("Success", success.get());
+
+            threadPerTask.submit(TestCallable.blocked(latch), 10000);
+            try {
+                threadPerTask.submit(TestCallable.success(), 10000);
+                fail("Should have been rejected by the semaphore");
+            } catch (RejectedException e) {
+                assertEquals(Rejected.MAX_CONCURRENCY_LEVEL_EXCEEDED, e.reason);
+            }
+
+            blocked.await();
+            assertEquals(TimeoutableResult.TIMEOUT, blocked.getResult());
+            assertEquals(1, semaphore.currentConcurrencyLevel());
+            latch.countDown();
+        } finally {
+            threadPerTask.shutdown();
+        }
+    }
+
+    @Test
+    public void threadPerTaskUsesVirtualThreadsOnJdk21() throws Exception {
+        String version = System.getProperty("java.specification.version");
+        assumeTrue(!version.startsWith("1.") && Integer.parseInt(version) >= 21);
+        assertTrue(PrecipiceExecutors.virtualThreadsAvailable());
+
+        ExecutorService executor = PrecipiceExecutors.threadPerTaskExecutor("Virtual");
+        try {
+            final AtomicReference<Thread> thread = new AtomicReference<>();
+            executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    thread.set(Thread.currentThread());
+                }
+            }).get(10, TimeUnit.SECONDS);
+
+            assertTrue((Boolean) Thread.class.getMethod("isVirtual").invoke(thread.get()));
+            assertTrue(thread.get().getName().startsWith("Virtual-"));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void admittedServiceRejectsFullQueueBeforeEnqueue() throws Exception {
+        QueueBackPressure<Rejected> queue = new QueueBackPressure<>(Rejected.QUEUE_FULL, 1);
+        TotalCounts<Rejected> rejectedCounts = new TotalCounts<>(Rejected.class);
+        GuardRail<TimeoutableResult, Rejected> guardRail = new GuardRailBuilder<TimeoutableResult, Rejected>()
+                .name("Admitted")
+                .resultCounts(new TotalCounts<>(TimeoutableResult.class))
+                .rejectedCounts(rejectedCounts)
+                .addBackPressure(queue)
+                .build();
+        ThreadPoolService<Rejected> admitted = ThreadPoolService.admitted(1, guardRail);
+
+        try {
+            CountDownLatch latch = new CountDownLatch(1);
+            PrecipiceFuture<TimeoutableResult, String> running = admitted.submit(TestCallable.blocked(latch), 10000);
+            while (queue.queuedCount() != 0) {
+                Thread.yield();
+            }
+            PrecipiceFuture<TimeoutableResult, String> queued = admitted.submit(TestCallable.success(), 10000);
+            try {
+                admitted.submit(TestCallable.success(), 10000);
+                fail("Should have been rejected by the queue");
+            } catch (RejectedException e) {
+                assertEquals(Rejected.QUEUE_FULL, e.reason);
+            }
+            assertEquals(1, rejectedCounts.getCount(Rejected.QUEUE_FULL));
+
+            latch.countDown();
+            running.await();
+            assertEquals("Success", queued.get());
+            assertEquals(0, queue.queuedCount());
+        } finally {
+            admitted.shutdown();
+        }
+    }
+
+    @Test
+    public void permitsReleasedWhenExecutorRejects() throws Exception {
+        LongSemaphore<Rejected> semaphore = new LongSemaphore<>(Rejected.MAX_CONCURRENCY_LEVEL_EXCEEDED, 10);
+        GuardRail<TimeoutableResult, Rejected> guardRail = new GuardRailBuilder<TimeoutableResult, Rejected>()
+                .name("Rejecting")
+                .resultCounts(new TotalCounts<>(TimeoutableResult.class))
+                .rejectedCounts(new TotalCounts<>(Rejected.class))
+                .addBackPressure(semaphore)
+                .build();
+        ExecutorService executor = PrecipiceExecutors.threadPoolExecutor("Rejecting", 1, 1);
+        executor.shutdown();
+        ThreadPoolService<Rejected> rejecting = new ThreadPoolService<>(executor, guardRail);
+
+        try {
+            rejecting.submit(TestCallable.success(), 100);
+            fail("Should have been rejected by the executor");
+        } catch (RejectedExecutionException e) {
+        }
+
+        assertEquals(0, semaphore.currentConcurrencyLevel());
+    }
+
+    @Test
+    public void permitsNotReleasedOnRejectionWhenCompletingCallerPromise() throws Exception {
+        LongSemaphore<Rejected> semaphore = new LongSemaphore<>(Rejected.MAX_CONCURRENCY_LEVEL_EXCEEDED, 10);
+        GuardRail<TimeoutableResult, Rejected> guardRail = new GuardRailBuilder<TimeoutableResult, Rejected>()
+                .name("Rejecting")
+                .resultCounts(new TotalCounts<>(TimeoutableResult.class))
+                .rejectedCounts(new TotalCounts<>(Rejected.class))
+                .addBackPressure(semaphore)
+                .build();
+        ExecutorService executor = PrecipiceExecutors.threadPoolExecutor("Rejecting", 1, 1);
+        executor.shutdown();
+        ThreadPoolService<Rejected> rejecting = new ThreadPoolService<>(executor, guardRail);
+
+        try {
+            rejecting.complete(TestCallable.success(), new Eventual<TimeoutableResult, String>(1L, 0L));
+            fail("Should have been rejected by the executor");
+        } catch (RejectedExecutionException e) {
+        }
+
+        assertEquals(0, semaphore.currentConcurrencyLevel());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void admittedRequiresQueueBackPressure() {
+        GuardRail<TimeoutableResult, Rejected> guardRail = new GuardRailBuilder<TimeoutableResult, Rejected>()
+                .name("No queue")
+                .resultCounts(new TotalCounts<>(TimeoutableResult.class))
+                .rejectedCounts(new TotalCounts<>(Rejected.class))
+                .build();
+
+        ThreadPoolService.admitted(1, guardRail);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void queueBackPressureRequiresAdmittedExecutor() {
+        GuardRail<TimeoutableResult, Rejected> guardRail = new GuardRailBuilder<TimeoutableResult, Rejected>()
+                .name("Queue")
+                .resultCounts(new TotalCounts<>(TimeoutableResult.class))
+                .rejectedCounts(new TotalCounts<>(Rejected.class))
+                .addBackPressure(new QueueBackPressure<>(Rejected.QUEUE_FULL, 1))
+                .build();
+        ExecutorService executor = PrecipiceExecutors.threadPoolExecutor("Queue", 1, 1);
+
+        try {
+            new ThreadPoolService<>(executor, guardRail);
+        } finally {
+            executor.shutdown();
+        }
+    }
 }
@@ -17,13 +17,21 @@
 
 package net.uncontended.precipice.threadpool.experimental;
 
+import net.uncontended.precipice.threadpool.utils.ThreadAffinity;
 import org.junit.After;
 import org.junit.Test;
 
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 public class ActionThreadPoolTest {
@@ -48,38 +56,26 @@ public class ActionThreadPoolTest {
     }
 
     @Test
-    public void testPoolPrioritizesFreeThreadsAndExecutes() {
+    public void testTasksAreExecutedOnPoolThreads() throws Exception {
         threadPool = new ActionThreadPool("Test Action", 2);
 
         final List<String> resultList = new CopyOnWriteArrayList<>();
+        final CountDownLatch latch = new CountDownLatch(1000);
 
-        for (int i = 0; i < 20; ++i) {
+        for (int i = 0; i < 1000; ++i) {
             threadPool.execute(new Runnable() {
                 @Override
                 public void run() {
                     resultList.add(Thread.currentThread().getName());
+                    latch.countDown();
                 }
             });
-
-        }
-
-        while (resultList.size() != 20) {
         }
 
-        int threadZeroCount = 0;
-        int threadOneCount = 0;
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
         for (String threadName : resultList) {
-            if ("Test Action-0".equals(threadName)) {
-                ++threadZeroCount;
-            }
-            if ("Test Action-1".equals(threadName)) {
-                ++threadOneCount;
-            }
+            assertTrue(threadName.equals("Test Action-0") || threadName.equals("Test Action-1"));
         }
-
-        assertEquals(10, threadZeroCount);
-        assertEquals(10, threadOneCount);
-
     }
 
     @Test
@@ -102,4 +98,154 @@ public class ActionThreadPoolTest {
         }
 
     }
+
+    @Test
+    public void queuedTasksRunWhileAWorkerIsBlocked() throws Exception {
+        threadPool = new ActionThreadPool("Test Action", 2, 128);
+
+        final CountDownLatch blocker = new CountDownLatch(1);
+        final CountDownLatch blockerStarted = new CountDownLatch(1);
+        threadPool.execute(new Runnable() {
+            @Override
+            public void run() {
+                blockerStarted.countDown();
+                try {
+                    blocker.await();
+                } catch (InterruptedException e) {
+                }
+            }
+        });
+        assertTrue(blockerStarted.await(10, TimeUnit.SECONDS));
+
+        final CountDownLatch latch = new CountDownLatch(100);
+        for (int i = 0; i < 100; ++i) {
+            threadPool.execute(new Runnable() {
+                @Override
+                public void run() {
+                    latch.countDown();
+                }
+            });
+        }
+
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        blocker.countDown();
+    }
+
+    @Test
+    public void shutdownRunsQueuedTasksAndRejectsNewOnes() throws Exception {
+        threadPool = new ActionThreadPool("Test Action", 2);
+
+        final CountDownLatch latch = new CountDownLatch(50);
+        for (int i = 0; i < 50; ++i) {
+            threadPool.execute(new Runnable() {
+                @Override
+                public void run() {
+                    latch.countDown();
+                }
+            });
+        }
+        threadPool.shutdown();
+
+        assertTrue(threadPool.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(0, latch.getCount());
+        try {
+            threadPool.execute(new Runnable() {
+                @Override
+                public void run() {
+                }
+            });
+            fail();
+        } catch (RejectedExecutionException e) {
+        }
+    }
+
+    @Test
+    public void strayInterruptDoesNotStopIdleWorker() throws Exception {
+        threadPool = new ActionThreadPool("Test Action", 1);
+
+        final AtomicReference<Thread> worker = new AtomicReference<>();
+        final CountDownLatch ran = new CountDownLatch(1);
+        threadPool.execute(new Runnable() {
+            @Override
+            public void run() {
+                worker.set(Thread.currentThread());
+                ran.countDown();
+            }
+        });
+        assertTrue(ran.await(10, TimeUnit.SECONDS));
+
+        for (int i = 0; i < 10; ++i) {
+            worker.get().interrupt();
+            Thread.sleep(1);
+        }
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        threadPool.execute(new Runnable() {
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        });
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertFalse(threadPool.isTerminated());
+    }
+
+    @Test
+    public void acceptedTasksRunWhenShutdownRacesSubmission() throws Exception {
+        for (int round = 0; round < 20; ++round) {
+            threadPool = new ActionThreadPool("Test Action", 2);
+            final AtomicInteger accepted = new AtomicInteger(0);
+            final AtomicInteger ran = new AtomicInteger(0);
+            final CountDownLatch start = new CountDownLatch(1);
+            Thread[] submitters = new Thread[4];
+            for (int i = 0; i < submitters.length; ++i) {
+                submitters[i] = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            start.await();
+                            for (; ; ) {
+                                threadPool.execute(new Runnable() {
+                                    @Override
+                                    public void run() {
+                                        ran.incrementAndGet();
+                                    }
+                                });
+                                accepted.incrementAndGet();
+                            }
+                        } catch (RejectedExecutionException | InterruptedException e) {
+                        }
+                    }
+                });
+                submitters[i].start();
+            }
+            start.countDown();
+            Thread.sleep(1);
+            threadPool.shutdown();
+            for (Thread submitter : submitters) {
+                submitter.join();
+            }
+
+            assertTrue(threadPool.awaitTermination(10, TimeUnit.SECONDS));
+            assertEquals(accepted.get(), ran.get());
+        }
+    }
+
+    @Test
+    public void affinityHookRunsOnEachWorkerBeforeTasks() throws Exception {
+        final List<String> bound = new CopyOnWriteArrayList<>();
+        final CountDownLatch allBound = new CountDownLatch(2);
+        threadPool = new ActionThreadPool("Test Action", 2, 16, new ThreadAffinity() {
+            @Override
+            public void bindCurrentThread(int threadIndex) {
+                bound.add(Thread.currentThread().getName() + ":" + threadIndex);
+                allBound.countDown();
+            }
+        });
+
+        assertTrue(allBound.await(10, TimeUnit.SECONDS));
+        assertTrue(bound.contains("Test Action-0:0"));
+        assertTrue(bound.contains("Test Action-1:1"));
+        assertEquals(2, bound.size());
+    }
 }
@@ -21,8 +21,12 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.concurrent.locks.LockSupport;
 
 import static org.junit.Assert.*;
@@ -114,4 +118,105 @@ public class ExchangingQueueTest {
         }
 
     }
+
+    @Test
+    public void testDrainRespectsLimit() {
+        for (int i = 0; i < 5; ++i) {
+            exchangingQueue.offer(i);
+        }
+        final List<Integer> drained = new ArrayList<>();
+
+        assertEquals(3, exchangingQueue.drain(new Consumer<Integer>() {
+            @Override
+            public void accept(Integer element) {
+                drained.add(element);
+            }
+        }, 3));
+        assertEquals(Arrays.asList(0, 1, 2), drained);
+        assertEquals(2, exchangingQueue.size());
+    }
+
+    @Test
+    public void testMultipleProducersDeliverEveryElementInProducerOrder() throws Exception {
+        final ExchangingQueue<Integer> queue = new ExchangingQueue<>(64);
+        final int producerCount = 4;
+        final int perProducer = 20000;
+
+        for (int p = 0; p < producerCount; ++p) {
+            final int producerId = p;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < perProducer; ++i) {
+                        while (!queue.offer(producerId * perProducer + i)) {
+                            Thread.yield();
+                        }
+                    }
+                }
+            }).start();
+        }
+
+        int[] lastSeen = new int[producerCount];
+        Arrays.fill(lastSeen, -1);
+        for (int received = 0; received < producerCount * perProducer; ++received) {
+            int element = queue.blockingPoll();
+            int producerId = element / perProducer;
+            int sequence = element % perProducer;
+            assertTrue(sequence > lastSeen[producerId]);
+            lastSeen[producerId] = sequence;
+        }
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testParkedConsumerIsWokenByOffer() throws Exception {
+        final ExchangingQueue<Integer> queue = new ExchangingQueue<>(4, 0, 0);
+        final CountDownLatch received = new CountDownLatch(1);
+        Thread consumer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    queue.blockingPoll();
+                    received.countDown();
+                } catch (InterruptedException e) {
+                }
+            }
+        });
+        consumer.start();
+
+        while (!queue.isConsumerParked()) {
+            Thread.yield();
+        }
+        assertTrue(queue.offer(1));
+
+        assertTrue(received.await(10, TimeUnit.SECONDS));
+        assertFalse(queue.isConsumerParked());
+    }
+
+    @Test
+    public void testSignalWakesParkedConsumerWithoutElement() throws Exception {
+        final ExchangingQueue<Integer> queue = new ExchangingQueue<>(4, 0, 0);
+        final CountDownLatch returned = new CountDownLatch(1);
+        final boolean[] result = new boolean[]{true};
+        Thread consumer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    result[0] = queue.awaitNotEmpty(1, TimeUnit.HOURS);
+                    returned.countDown();
+                } catch (InterruptedException e) {
+                }
+            }
+        });
+        consumer.start();
+
+        while (!queue.isConsumerParked()) {
+            Thread.yield();
+        }
+        queue.signalConsumer();
+
+        assertTrue(returned.await(10, TimeUnit.SECONDS));
+        assertFalse(result[0]);
+        assertFalse(queue.isConsumerParked());
+    }
 }